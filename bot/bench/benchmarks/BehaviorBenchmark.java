@@ -0,0 +1,114 @@
+package benchmarks;
+
+import bot.AgileBot;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * The parts of AgileBot on their own. Every benchmark works on the state of one getAction call,
+ * so the per-tick indexes are current and only the measured method runs
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BehaviorBenchmark {
+
+    @Param({"8", "16", "32", "64"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean crowded;
+
+    private GameState gs;
+    private PhysicalGameState pgs;
+    private Player p;
+    private AgileBot bot;
+    private Unit[] myMobileUnits;
+    private Unit myBarracks;
+    private List<Unit> myFighters = new ArrayList<>();
+
+    @Setup
+    public void setup() throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        gs = BenchmarkStates.create(utt, size, crowded);
+        pgs = gs.getPhysicalGameState();
+        p = gs.getPlayer(0);
+        bot = new AgileBot(utt);
+        // Builds the snapshot, the grid and the fields for this state
+        bot.getAction(0, gs);
+
+        List<Unit> mobile = new ArrayList<>();
+        for (Unit u : bot.getSnapshot().getMyUnits()) {
+            if (u.getType().canMove) mobile.add(u);
+            if (u.getType().canMove && !u.getType().canHarvest) myFighters.add(u);
+            if (u.getType() == utt.getUnitType("Barracks")) myBarracks = u;
+        }
+        myMobileUnits = mobile.toArray(new Unit[0]);
+    }
+
+    @Benchmark
+    public void getClosestEnemy(Blackhole bh) {
+        for (Unit u : myMobileUnits) bh.consume(bot.GetClosestEnemy(pgs, p, u));
+    }
+
+    @Benchmark
+    public void doesPathExists(Blackhole bh) {
+        for (Unit u : myMobileUnits) bh.consume(bot.DoesPathExists(bot.GetClosestEnemy(pgs, p, u), u, gs));
+    }
+
+    @Benchmark
+    public void aStarPathExists(Blackhole bh) {
+        // The path finder probe DoesPathExists used to make for every unit
+        for (Unit u : myMobileUnits) {
+            Unit e = bot.GetClosestEnemy(pgs, p, u);
+            bh.consume(bot.getPathFinding().pathToPositionInRangeExists(u, e.getPosition(pgs), 1, gs, null));
+        }
+    }
+
+    @Benchmark
+    public void stackFlowField(Blackhole bh) {
+        // Every fighter follows its group's field, then the actions are turned into moves
+        bot.setFlowFieldStacking(true);
+        bot.Stack(gs, myFighters);
+        bh.consume(bot.translateActions(0, gs));
+    }
+
+    @Benchmark
+    public void stackMove(Blackhole bh) {
+        // Every fighter gets a move to a rally cell and a path search of its own
+        bot.setFlowFieldStacking(false);
+        bot.Stack(gs, myFighters);
+        bh.consume(bot.translateActions(0, gs));
+    }
+
+    @Benchmark
+    public void workerBehavior() {
+        bot.WorkerBehavior(bot.getSnapshot().getMyWorkers(), p, gs);
+    }
+
+    @Benchmark
+    public void barracksBehavior() {
+        bot.BarracksBehavior(myBarracks, p, pgs);
+    }
+}
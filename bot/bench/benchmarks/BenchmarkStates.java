@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.Random;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Fixed game states for the benchmarks. The same size and density always give the same state
+ */
+public class BenchmarkStates {
+
+    /**
+     * Builds a state with two bases in opposite corners, resources next to them, a few walls
+     * and armies in the middle of the map
+     * @param utt Unit Type Table
+     * @param size Width and height of the map
+     * @param crowded True for a quarter of the cells holding a unit, false for a handful of units
+     * @return New game state
+     */
+    public static GameState create(UnitTypeTable utt, int size, boolean crowded) {
+        Random r = new Random(size * 31 + (crowded ? 1 : 0));
+        PhysicalGameState pgs = new PhysicalGameState(size, size);
+        pgs.addPlayer(new Player(0, 20));
+        pgs.addPlayer(new Player(1, 20));
+
+        UnitType resource = utt.getUnitType("Resource");
+        UnitType base = utt.getUnitType("Base");
+        UnitType barracks = utt.getUnitType("Barracks");
+        UnitType[] army = {utt.getUnitType("Worker"), utt.getUnitType("Light"), utt.getUnitType("Heavy"), utt.getUnitType("Ranged")};
+
+        // A wall across the middle with a gap in it
+        for (int x = 0; x < size; x++) {
+            if (x < size / 2 - 1 || x > size / 2 + 1) pgs.setTerrain(x, size / 2, PhysicalGameState.TERRAIN_WALL);
+        }
+
+        // Bases, barracks and resources in opposite corners
+        add(pgs, new Unit(-1, resource, 0, 0, 20));
+        add(pgs, new Unit(-1, resource, 0, 1, 20));
+        add(pgs, new Unit(0, base, 2, 2, 0));
+        add(pgs, new Unit(0, barracks, 4, 4, 0));
+        add(pgs, new Unit(-1, resource, size - 1, size - 1, 20));
+        add(pgs, new Unit(-1, resource, size - 1, size - 2, 20));
+        add(pgs, new Unit(1, base, size - 3, size - 3, 0));
+        add(pgs, new Unit(1, barracks, size - 5, size - 5, 0));
+
+        // Armies spread over each half of the map
+        int unitsPerPlayer = crowded ? size * size / 8 : 4 + size / 8;
+        for (int player = 0; player < 2; player++) {
+            int placed = 0;
+            int tries = 0;
+            while (placed < unitsPerPlayer && tries++ < unitsPerPlayer * 20) {
+                int x = r.nextInt(size);
+                int y = player == 0 ? r.nextInt(size / 2) : size / 2 + 1 + r.nextInt(size - size / 2 - 1);
+                if (add(pgs, new Unit(player, army[r.nextInt(army.length)], x, y, 0))) placed++;
+            }
+        }
+        return new GameState(pgs, utt);
+    }
+
+    private static boolean add(PhysicalGameState pgs, Unit u) {
+        if (pgs.getTerrain(u.getX(), u.getY()) != PhysicalGameState.TERRAIN_NONE) return false;
+        if (pgs.getUnitAt(u.getX(), u.getY()) != null) return false;
+        pgs.addUnit(u);
+        return true;
+    }
+}
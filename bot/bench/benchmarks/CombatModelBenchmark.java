@@ -0,0 +1,62 @@
+package benchmarks;
+
+import bot.CombatModel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Rollouts per millisecond of the combat model, on two lines of mixed units facing each other
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CombatModelBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int unitsPerSide;
+
+    @Param({"20", "40", "100"})
+    public int horizon;
+
+    private CombatModel model = new CombatModel();
+
+    @Setup
+    public void setup() {
+        UnitTypeTable utt = new UnitTypeTable();
+        PhysicalGameState pgs = new PhysicalGameState(12, 12);
+        pgs.addPlayer(new Player(0, 0));
+        pgs.addPlayer(new Player(1, 0));
+        UnitType[] army = {utt.getUnitType("Light"), utt.getUnitType("Heavy"), utt.getUnitType("Ranged")};
+        for (int i = 0; i < unitsPerSide; i++) {
+            pgs.addUnit(new Unit(0, army[i % army.length], 3, 2 + i, 0));
+            pgs.addUnit(new Unit(1, army[(i + 1) % army.length], 8, 2 + i, 0));
+        }
+        GameState gs = new GameState(pgs, utt);
+        model.clear(gs);
+        for (Unit u : pgs.getUnits()) model.add(u, gs);
+    }
+
+    @Benchmark
+    public int rollout() {
+        return model.rollout(horizon);
+    }
+}
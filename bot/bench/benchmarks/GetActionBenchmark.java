@@ -0,0 +1,85 @@
+package benchmarks;
+
+import bot.AgileBot;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * AgileBot.getAction end to end on games started from fixed states of several sizes.
+ * Calling getAction again on one state would mostly time the path for a tick where nothing changed, so every call
+ * gets the next tick: between calls, outside the timing, the actions of the last call and of an AgileBot opponent are
+ * issued and the game is played one cycle on. The game restarts from a copy of the fixed state every few hundred cycles
+ * or when it ends, so the measured ticks stay close to the state of the given size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetActionBenchmark {
+
+    // Cycles played from the fixed state before the game starts over
+    private static final int GAME_CYCLES = 300;
+
+    @Param({"8", "16", "32", "64"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean crowded;
+
+    private GameState start;
+    private GameState gs;
+    private AgileBot bot;
+    private AgileBot opponent;
+    // Actions of the last call, played before the next one
+    private PlayerAction last;
+
+    @Setup
+    public void setup() throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        start = BenchmarkStates.create(utt, size, crowded);
+        bot = new AgileBot(utt);
+        opponent = new AgileBot(utt);
+        restart();
+    }
+
+    /**
+     * Plays the game one cycle on from the last call, not timed
+     */
+    @Setup(Level.Invocation)
+    public void nextTick() throws Exception {
+        if (last == null) return;
+        gs.issueSafe(last);
+        gs.issueSafe(opponent.getAction(1, gs));
+        last = null;
+        if (gs.cycle() || gs.getTime() - start.getTime() >= GAME_CYCLES) restart();
+    }
+
+    private void restart() {
+        gs = start.clone();
+        bot.reset();
+        opponent.reset();
+        last = null;
+    }
+
+    @Benchmark
+    public PlayerAction getAction() throws Exception {
+        last = bot.getAction(0, gs);
+        return last;
+    }
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.PathFinding;
+import bot.HierarchicalPathFinding;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rts.GameState;
+import rts.ResourceUsage;
+import rts.units.UnitTypeTable;
+import tests.MapGenerator;
+import tests.PathFindingComparison;
+
+/**
+ * The same fixed path queries on generated maps, answered by A* and by the hierarchical path finder.
+ * The hierarchical graph is built in the setup, so only the queries are timed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathFindingBenchmark {
+
+    @Param({"astar", "hpa"})
+    public String pathFinding;
+
+    @Param({"32", "64", "128"})
+    public int size;
+
+    private GameState gs;
+    private PathFinding pf;
+    private List<PathFindingComparison.Query> queries;
+
+    @Setup
+    public void setup() {
+        UnitTypeTable utt = new UnitTypeTable();
+        MapGenerator g = new MapGenerator(size, size, 0.15, MapGenerator.ResourceLayout.SCATTERED, size * size / 100, 0);
+        g.workersPerSide = 2 + size / 16;
+        gs = new GameState(g.generate(utt), utt);
+        queries = PathFindingComparison.queries(gs, 100, 0);
+        pf = pathFinding.equals("hpa") ? new HierarchicalPathFinding() : new AStarPathFinding();
+        queries();
+    }
+
+    /**
+     * @return Summed distances, so the queries are not optimized away
+     */
+    @Benchmark
+    public int queries() {
+        int sum = 0;
+        for (PathFindingComparison.Query q : queries) {
+            sum += pf.findDistToPositionInRange(q.unit, q.target, q.range, gs, new ResourceUsage());
+        }
+        return sum;
+    }
+}
@@ -15,8 +15,8 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.function.IntConsumer;
 import rts.*;
 import rts.units.Unit;
 import rts.units.UnitType;
@@ -31,6 +31,91 @@ public class AgileBot extends AbstractionLayerAI {
     private UnitType barracks;
     private UnitType base;
     private boolean isOnTop;
+    // Sides, barracks sites and rally points of the map, worked out before the game
+    private MapAnalysis analysis;
+    // Units of both sides bucketed by type, rebuilt once per tick
+    private TickSnapshot snapshot;
+    // My light and heavy units, rebuilt once per tick
+    private List<Unit> meleeUnits = new ArrayList<Unit>();
+    // What the barracks and bases train against the enemy's units
+    private ProductionTable production;
+    // Enemy units bucketed by position, rebuilt once per tick
+    private UnitGrid enemyGrid = new UnitGrid();
+    // Connected components of the walkable cells, patched once per tick
+    private ReachabilityOracle reachability = new ReachabilityOracle();
+    // Walking distance from every cell to the closest enemy, computed once per tick
+    private DistanceField distanceField = new DistanceField();
+    // Enemy threat and my support on every cell, patched once per tick around the units that changed
+    private InfluenceMap influence = new InfluenceMap();
+    // Every game state getAction sees is written here when set, the recorder is opened on the first tick
+    private String traceFile;
+    private TraceRecorder trace;
+    // Per-tick timing, off unless the agilebot.profile system property is set
+    private TickProfiler profiler = new TickProfiler(Boolean.getBoolean("agilebot.profile"));
+    // Deadline of the current tick and how often it forced the bot to skip work
+    private TickBudget budget = new TickBudget();
+    // Fighting units out of contact with the enemy, planned last in the tick
+    private List<Unit> distantUnits = new ArrayList<Unit>();
+    // Fighting units whose last decision still holds
+    private List<Unit> keptUnits = new ArrayList<Unit>();
+    // Last decision of every unit and where the round-robin replanning is up to
+    private DecisionMemo memo = new DecisionMemo();
+    private int replanCursor = 0;
+    private int replanLimit = 16;
+    private int replanRadius = 4;
+    // Cells beyond its attack range within which a unit counts as in contact with the enemy
+    private static final int CONTACT_DISTANCE = 2;
+    // Walking distance to the rally cells of every stacking group, kept until the buildings change
+    private FlowField[] rallyFields = {new FlowField(), new FlowField(), new FlowField()};
+    private boolean flowFieldStacking = true;
+    // Attacking workers with no enemy to walk to this tick
+    private List<Unit> blockedAttackers = new ArrayList<Unit>();
+    // Jobs of my workers, kept from tick to tick
+    private WorkerRoles workerRoles = new WorkerRoles();
+    // Cells taken by the buildings ordered this tick
+    private List<Integer> reservedPositions = new ArrayList<Integer>();
+    // Fighting units in contact with the enemy, and the ones whose decision is kept this tick
+    private List<Unit> contactUnits = new ArrayList<Unit>();
+    private List<Unit> heldUnits = new ArrayList<Unit>();
+    // Fighting units to plan this tick, the contact ones first, and the decision of each one
+    private List<Unit> plannedUnits = new ArrayList<Unit>();
+    private int[] decidedKinds = new int[1];
+    private Unit[] decidedTargets = new Unit[1];
+    // Outcomes of a fighter decision
+    private static final int DECIDED_NOTHING = 0;
+    private static final int DECIDED_ATTACK = 1;
+    private static final int DECIDED_STACK = 2;
+    // A step away from the enemy melee units, plus the direction of the step
+    private static final int DECIDED_KITE = 3;
+    // Thread pool the fighter decisions run on when parallel decisions are on
+    private ParallelDecisions parallel = new ParallelDecisions(1);
+    // Decision of one planned unit on the pool, kept so a tick does not make a new one, and the state it decides on
+    private final IntConsumer decideSlot = this::DecideSlot;
+    private GameState decidingState;
+    // Plans the next tick during the opponent's turn, null when off
+    private SpeculativePlanner speculation;
+    // My units bucketed by position, for the fights played out by the combat model
+    private UnitGrid allyGrid = new UnitGrid();
+    // Play out the fights of units in contact before picking a target, off by default
+    private boolean combatSimulation = false;
+    // Most workers harvesting, and how close an enemy must walk to my workers before all of them fight back
+    private int harvestersNeeded = 2;
+    private int defenseRadius = 5;
+    // Ranged units closer than this to the closest enemy attack it where they stand
+    private int rangedAttackDistance = 3;
+    // Play practice games in preGameAnalysis until the hot paths are compiled, and how the last warm up went
+    private boolean warmUp = false;
+    private WarmUp lastWarmUp;
+    // Counter rules of the production table with parameters of their own, as many as the shipped table has
+    private static final int TUNED_COUNTERS = 4;
+    // One combat model per thread, as the decisions may run on several
+    private final ThreadLocal<CombatModel> combatModels = ThreadLocal.withInitial(CombatModel::new);
+    // Units within this distance take part in a fight, which is played out for this many cycles
+    private static final int ENGAGEMENT_RADIUS = 6;
+    private static final int ENGAGEMENT_HORIZON = 40;
+    // Most enemies tried as a focus target, and how much better than fighting a retreat must come out, in hundredths of a unit cost
+    private static final int FOCUS_CANDIDATES = 4;
+    private static final int RETREAT_MARGIN = 50;
     
     public AgileBot(UnitTypeTable utt) {
         super(new AStarPathFinding());
@@ -41,345 +126,1428 @@ public class AgileBot extends AbstractionLayerAI {
         heavy = utt.getUnitType("Heavy");
         barracks = utt.getUnitType("Barracks");
         base = utt.getUnitType("Base");
+        snapshot = new TickSnapshot(utt);
+        production = ProductionTable.loadDefault(utt);
+        setPathFinding(pf);
     }
     
 
     @Override
     public void reset() 
     {
+    	memo.clear();
+    	replanCursor = 0;
+    	analysis = null;
+    	workerRoles.clear();
+    	influence.clear();
+    	closeTrace();
+    	if (speculation != null)
+    	{
+    		speculation.cancel();
+    	}
+    }
+
+    @Override
+    public void preGameAnalysis(GameState gs, long milliseconds) throws Exception
+    {
+    	long start = System.currentTimeMillis();
+    	analysis = MapAnalysis.analyze(gs);
+    	warmUp(gs, milliseconds - (System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Reads the map analysis from the folder if this map was seen before, otherwise works it out and saves it there
+     * @param gs Game State at the start of the game
+     * @param milliseconds Time allowed
+     * @param readWriteFolder Folder the AI can keep files in
+     */
+    @Override
+    public void preGameAnalysis(GameState gs, long milliseconds, String readWriteFolder) throws Exception
+    {
+    	long start = System.currentTimeMillis();
+    	analysis = MapAnalysis.loadOrAnalyze(gs, readWriteFolder);
+    	warmUp(gs, milliseconds - (System.currentTimeMillis() - start));
+    }
+    
+    /**
+     * Plays practice games on the map until the hot paths are compiled, when the warm up is on
+     * @param gs Game State at the start of the game
+     * @param milliseconds Pre-game time left
+     */
+    private void warmUp(GameState gs, long milliseconds)
+    {
+    	if (warmUp && milliseconds > 0)
+    	{
+    		lastWarmUp = new WarmUp();
+    		lastWarmUp.run(gs, milliseconds, this);
+    	}
+    }
+
+    /**
+     * @return The map analysis of the current game, or null before the first tick
+     */
+    public MapAnalysis getMapAnalysis()
+    {
+    	return analysis;
+    }
+
+    
+    @Override
+    public AI clone() {
+        AgileBot clone = new AgileBot(utt);
+        clone.copySettings(this);
+        return clone;
+    }
+    
+    /**
+     * Takes every setting of another AgileBot, the ones getParameters lists and the path finder's setup, but none of its
+     * game state. The path finder and the production table are new ones set up like the other's, as both change during a game
+     * @param other AgileBot to copy the settings of
+     */
+    void copySettings(AgileBot other)
+    {
+    	TIME_BUDGET = other.TIME_BUDGET;
+    	profiler.setEnabled(other.profiler.isEnabled());
+    	setPathFinding(newPathFinding(other.getPathFinding()));
+    	replanLimit = other.replanLimit;
+    	replanRadius = other.replanRadius;
+    	flowFieldStacking = other.flowFieldStacking;
+    	setParallelism(other.getParallelism());
+    	setSpeculativePlanning(other.isSpeculativePlanning());
+    	combatSimulation = other.combatSimulation;
+    	production = other.production.copy();
+    	harvestersNeeded = other.harvestersNeeded;
+    	workerRoles.setResourceRadius(other.workerRoles.getResourceRadius());
+    	defenseRadius = other.defenseRadius;
+    	rangedAttackDistance = other.rangedAttackDistance;
+    	warmUp = other.warmUp;
+    	setTraceFile(other.traceFile);
+    }
+    
+    /**
+     * @param pf Path finder
+     * @return A new path finder set up like the given one, with none of its searches or caches
+     */
+    private static PathFinding newPathFinding(PathFinding pf)
+    {
+    	if (pf instanceof CachingPathFinding)
+    	{
+    		CachingPathFinding caching = (CachingPathFinding)pf;
+    		return new CachingPathFinding(newPathFinding(caching.getPathFinding()), caching.getCapacity());
+    	}
+    	if (pf instanceof HierarchicalPathFinding)
+    	{
+    		HierarchicalPathFinding hierarchical = (HierarchicalPathFinding)pf;
+    		return new HierarchicalPathFinding(newPathFinding(hierarchical.getFallback()), hierarchical.getClusterSize());
+    	}
+    	if (pf instanceof IncrementalPathFinding)
+    	{
+    		IncrementalPathFinding incremental = (IncrementalPathFinding)pf;
+    		return new IncrementalPathFinding(incremental.getCapacity(), incremental.getIdleTicks());
+    	}
+    	try
+    	{
+    		return pf.getClass().getDeclaredConstructor().newInstance();
+    	}
+    	catch (ReflectiveOperationException e)
+    	{
+    		// A path finder without a default constructor is replaced by the default one
+    		return new AStarPathFinding();
+    	}
+    }
+   
+    
+    @Override
+    /**
+     * Called every tick and is the main body of the AI
+     */
+    public PlayerAction getAction(int player, GameState gs) {
+    	if (traceFile != null)
+    	{
+    		record(player, gs);
+    	}
+    	// A prediction still running from the opponent's turn stops here, before the tick changes anything it reads
+    	if (speculation != null)
+    	{
+    		speculation.settle();
+    	}
+    	budget.begin(TIME_BUDGET);
+    	long tickStart = profiler.start();
+    	long start = profiler.start();
+    	// Build this tick's snapshot - the only full pass over the units
+    	snapshot.update(player, gs);
+        // Get our player
+        Player p = snapshot.getPlayer();
+        PhysicalGameState pgs = snapshot.getPhysicalGameState();
+        // Analyse the map now if the game didn't give us the time before it started
+        if (analysis == null || !analysis.fits(pgs))
+        {
+        	analysis = MapAnalysis.analyze(gs);
+        }
+        isOnTop = analysis.isOnTop(player);
+        // Index the enemy units for the closest enemy queries
+        enemyGrid.update(snapshot.getEnemyUnits(), pgs.getWidth(), pgs.getHeight());
+        if (combatSimulation)
+        {
+        	allyGrid.update(snapshot.getMyUnits(), pgs.getWidth(), pgs.getHeight());
+        }
+        // Patch the reachable areas to the buildings placed or destroyed since the last tick
+        reachability.update(snapshot);
+        // Patch the threat and support around the units that moved, appeared or died
+        influence.update(snapshot);
+        profiler.countNodes(influence.getCellsTouched());
+        // Take the distance field and the fighter decisions worked out during the opponent's turn if the game
+        // turned out as predicted, otherwise spread the walking distance to the enemies over the whole map now
+        if (speculation != null && speculation.take(snapshot))
+        {
+        	distanceField = speculation.swapDistanceField(distanceField);
+        	distanceField.rebind(snapshot);
+        	speculation.prepareDecisions(snapshot, memo);
+        	speculation.check(snapshot, enemyGrid, allyGrid, reachability, influence);
+        	profiler.countNodes(reachability.getCellsVisited());
+        }
+        else
+        {
+        	distanceField.update(snapshot, reachability);
+        	profiler.countNodes(reachability.getCellsVisited() + distanceField.getCellsVisited());
+        }
+        // Bring the rally fields up to date - free unless a building appeared or disappeared
+        for (int group = 0; group < rallyFields.length; group++)
+        {
+        	rallyFields[group].update(analysis.getRallyCells(player, group), reachability, pgs);
+        	profiler.countNodes(rallyFields[group].getCellsVisited());
+        }
+        
+        // Group my light and heavy units once so the melee units can stack together.
+        // They are added one by one, as addAll copies the added list into a new array
+        meleeUnits.clear();
+        addAll(meleeUnits, snapshot.getMyUnits(light));
+        addAll(meleeUnits, snapshot.getMyUnits(heavy));
+        profiler.stop(TickProfiler.Section.SNAPSHOT, start);
+        
+        // Economy first - loop through every one of my bases and barracks.
+        // Indexed loops over the snapshot lists keep the tick free of iterator garbage
+        List<Unit> myUnits = snapshot.getMyUnits();
+        for (int i = 0; i < myUnits.size(); i++) 
+        {
+        	Unit unit = myUnits.get(i);
+        	// Skip the units that are still executing an action
+        	if (gs.getActionAssignment(unit) != null)
+        	{
+        		continue;
+        	}
+        	
+        	start = profiler.start();
+        	// If it's player's base unit, call a base behavior
+        	if(unit.getType() == base)
+        	{
+        		BaseBehavior(unit, p, pgs);
+        		profiler.stop(TickProfiler.Section.BASE, start);
+        	}
+        	
+        	// If it's player's barracks unit, call a barracks behavior
+        	else if(unit.getType() == barracks)
+        	{
+        		BarracksBehavior(unit, p, pgs);
+        		profiler.stop(TickProfiler.Section.BARRACKS, start);
+        	}
+        }
+        // Call a workers behavior
+        start = profiler.start();
+        WorkerBehavior(snapshot.getMyWorkers(), p, gs);
+        profiler.stop(TickProfiler.Section.WORKER, start);
+        
+        // Then my fighting units. The ones whose last decision no longer holds are planned again,
+        // those in contact with the enemy straight away, and a round-robin slice of the others joins them
+        memo.beginTick(gs.getTime(), reachability.getVersion());
+        contactUnits.clear();
+        distantUnits.clear();
+        keptUnits.clear();
+        heldUnits.clear();
+        int slots = replanLimit;
+        for (int i = 0; i < myUnits.size(); i++)
+        {
+        	Unit unit = myUnits.get(i);
+        	if (gs.getActionAssignment(unit) != null || !isFighter(unit))
+        	{
+        		continue;
+        	}
+        	if (memo.isValid(unit, isEnemyNear(unit)))
+        	{
+        		keptUnits.add(unit);
+        		continue;
+        	}
+        	slots--;
+        	if (distanceField.getDistance(unit) <= unit.getType().attackRange + CONTACT_DISTANCE)
+        	{
+        		contactUnits.add(unit);
+        	}
+        	else
+        	{
+        		distantUnits.add(unit);
+        	}
+        }
+        int nKept = keptUnits.size();
+        int picked = Math.min(Math.max(slots, 0), nKept);
+        for (int i = 0; i < nKept; i++)
+        {
+        	Unit unit = keptUnits.get((replanCursor + i) % nKept);
+        	if (i < picked)
+        	{
+        		distantUnits.add(unit);
+        	}
+        	else
+        	{
+        		heldUnits.add(unit);
+        	}
+        }
+        replanCursor = nKept == 0 ? 0 : (replanCursor + picked) % nKept;
+        
+        // With parallel decisions on, every planned unit decides at once on the pool,
+        // and the decisions are committed below in the same order the serial mode takes them
+        boolean decided = parallel.isParallel();
+        if (decided)
+        {
+        	start = profiler.start();
+        	DecideFighters(gs);
+        	profiler.stop(TickProfiler.Section.DECIDE, start);
+        }
+        
+        for (int i = 0; i < contactUnits.size(); i++)
+        {
+        	if (decided)
+        	{
+        		CommitFighter(contactUnits.get(i), gs, i);
+        	}
+        	else
+        	{
+        		FighterBehavior(contactUnits.get(i), p, gs);
+        	}
+        }
+        for (int i = 0; i < heldUnits.size(); i++)
+        {
+        	KeepDecision(heldUnits.get(i));
+        }
+        
+        for (int i = 0; i < distantUnits.size(); i++)
+        {
+        	Unit unit = distantUnits.get(i);
+        	// Out of time - keep last tick's decision, or wait for the next tick if there is none
+        	if (budget.nearDeadline())
+        	{
+        		if (KeepDecision(unit))
+        		{
+        			budget.reuseDecision();
+        		}
+        		else
+        		{
+        			budget.deferUnit();
+        		}
+        		continue;
+        	}
+        	if (decided)
+        	{
+        		CommitFighter(unit, gs, contactUnits.size() + i);
+        	}
+        	else
+        	{
+        		FighterBehavior(unit, p, gs);
+        	}
+        }
+        
+        // Return all the actions of my player to simulate in the game
+        start = profiler.start();
+        PlayerAction pa = translateActions(player, gs);
+        profiler.stop(TickProfiler.Section.TRANSLATE, start);
+        // Start planning the next tick while the opponent plays this one
+        if (speculation != null)
+        {
+        	speculation.start(player, gs, pa);
+        }
+        profiler.stop(TickProfiler.Section.TICK, tickStart);
+        profiler.endTick();
+        budget.end();
+        return pa;
+    }
+    
+    /**
+     * Adds the units of one list to another without allocating
+     * @param to List to add to
+     * @param from Units to add
+     */
+    private static void addAll(List<Unit> to, List<Unit> from)
+    {
+    	for (int i = 0; i < from.size(); i++)
+    	{
+    		to.add(from.get(i));
+    	}
+    }
+    
+    /**
+     * Keeps the unit doing what it was last told to. Gives an attack order again if the unit lost it
+     * @param u Unit
+     * @return True if the unit has something to do
+     */
+    private boolean KeepDecision(Unit u)
+    {
+    	if (getAbstractAction(u) != null)
+    	{
+    		return true;
+    	}
+    	DecisionMemo.Decision d = memo.get(u);
+    	if (d != null && d.kind == DecisionMemo.ATTACK && d.target.getHitPoints() > 0)
+    	{
+    		super.attack(u, d.target);
+    		return true;
+    	}
+    	return false;
+    }
+    
+    /**
+     * @param u Unit
+     * @return True if an enemy is within the replan radius of the unit
+     */
+    private boolean isEnemyNear(Unit u)
+    {
+    	return enemyGrid.nearestWithin(u.getX(), u.getY(), replanRadius) != null;
+    }
+    
+    @Override
+    public void attack(Unit u, Unit target)
+    {
+    	// Remember the decision so the unit isn't planned again until something changes
+    	memo.record(u, DecisionMemo.ATTACK, target, isEnemyNear(u));
+    	super.attack(u, target);
+    }
+    
+    @Override
+    public void move(Unit u, int x, int y)
+    {
+    	memo.record(u, DecisionMemo.STACK, null, isEnemyNear(u));
+    	super.move(u, x, y);
+    }
+    
+    /**
+     * Sends the unit down a flow field instead of giving it a path of its own
+     * @param u Unit
+     * @param field Field to follow
+     */
+    public void follow(Unit u, FlowField field)
+    {
+    	memo.record(u, DecisionMemo.STACK, null, isEnemyNear(u));
+    	actions.put(u, new FollowField(u, field));
+    }
+    
+    public boolean isFlowFieldStacking()
+    {
+    	return flowFieldStacking;
+    }
+    
+    /**
+     * @param enabled True to walk stacking units down a shared flow field, false to give each one a move of its own
+     */
+    public void setFlowFieldStacking(boolean enabled)
+    {
+    	flowFieldStacking = enabled;
+    }
+    
+    /**
+     * @param group MapAnalysis.RALLY_RANGED, RALLY_WORKER or RALLY_MELEE
+     * @return The flow field of the group's rally cells
+     */
+    public FlowField getRallyField(int group)
+    {
+    	return rallyFields[group];
+    }
+    
+    public int getReplanLimit()
+    {
+    	return replanLimit;
+    }
+    
+    /**
+     * @param limit Most fighting units planned again per tick on top of the ones whose decision was invalidated
+     */
+    public void setReplanLimit(int limit)
+    {
+    	replanLimit = limit;
+    }
+    
+    public int getReplanRadius()
+    {
+    	return replanRadius;
+    }
+    
+    /**
+     * @param radius An enemy coming this close to a unit makes it plan again
+     */
+    public void setReplanRadius(int radius)
+    {
+    	replanRadius = radius;
+    }
+    
+    /**
+     * @return The last decision of every unit
+     */
+    public DecisionMemo getMemo()
+    {
+    	return memo;
+    }
+    
+    /**
+     * @param u Unit
+     * @return True if the unit is a light, heavy or ranged unit
+     */
+    private boolean isFighter(Unit u)
+    {
+    	return u.getType() == light || u.getType() == heavy || u.getType() == archer;
+    }
+    
+    /**
+     * Calls the behavior of a light, heavy or ranged unit
+     * @param u Unit
+     * @param p Player
+     * @param gs Game State
+     */
+    private void FighterBehavior(Unit u, Player p, GameState gs)
+    {
+    	long start = profiler.start();
+    	// If it's player's light or heavy unit, call a light and heavy behavior
+    	if(u.getType() == light || u.getType() == heavy)
+    	{
+    		MeleeBehavior(u, p, gs);
+    		profiler.stop(TickProfiler.Section.MELEE, start);
+    	}
+    	// If it's player's ranged unit, call a ranged behavior
+    	else if(u.getType() == archer)
+    	{
+    		RangedBehavior(u, p, gs);
+    		profiler.stop(TickProfiler.Section.RANGED, start);
+    	}
+    }
+    
+    /**
+     * @return How often the bot ran out of time and what it skipped
+     */
+    public TickBudget getBudget()
+    {
+    	return budget;
+    }
+    
+    /**
+     * @return The profiler recording where the ticks go
+     */
+    public TickProfiler getProfiler()
+    {
+    	return profiler;
+    }
+    
+    /**
+     * Turns the per-tick timing and the path finder counters on or off
+     * @param enabled True to record
+     */
+    public void setProfiling(boolean enabled)
+    {
+    	PathFinding current = getPathFinding();
+    	profiler.setEnabled(enabled);
+    	setPathFinding(current);
+    }
+    
+    @Override
+    public PathFinding getPathFinding()
+    {
+    	// Hide the counting wrapper
+    	return pf instanceof CountingPathFinding ? ((CountingPathFinding)pf).getPathFinding() : pf;
+    }
+    
+    @Override
+    public void setPathFinding(PathFinding a_pf)
+    {
+    	// Count the queries when profiling
+    	pf = profiler.isEnabled() ? new CountingPathFinding(a_pf, profiler) : a_pf;
+    }
+    
+    /**
+     * @return The path finder if it caches its answers, null otherwise
+     */
+    public CachingPathFinding getPathCache()
+    {
+    	PathFinding current = getPathFinding();
+    	return current instanceof CachingPathFinding ? (CachingPathFinding)current : null;
+    }
+    
+    /**
+     * Stops the threads of the speculative planner and the parallel decisions, and prints the profile at the end of
+     * the game when profiling. The threads start again with the next game
+     * @param winner Winner of the game
+     */
+    @Override
+    public void gameOver(int winner)
+    {
+    	closeTrace();
+    	if (speculation != null)
+    	{
+    		speculation.shutdown();
+    	}
+    	parallel.shutdown();
+    	if (profiler.isEnabled())
+    	{
+    		System.out.print(profiler.report());
+    		System.out.print(budget.report());
+    		if (getPathCache() != null)
+    		{
+    			System.out.print(getPathCache().report());
+    		}
+    		if (speculation != null)
+    		{
+    			System.out.print(speculation.report());
+    		}
+    	}
+    }
+    
+    /**
+     * @return The budget counters, and the profile so far when profiling
+     */
+    public String statisticsString()
+    {
+    	String stats = profiler.isEnabled() ? profiler.report() + budget.report() : budget.report();
+    	stats = getPathCache() != null ? stats + getPathCache().report() : stats;
+    	return speculation != null ? stats + speculation.report() : stats;
+    }
+    
+    /**
+     * @return The enemy grid of the last tick
+     */
+    public UnitGrid getEnemyGrid()
+    {
+    	return enemyGrid;
+    }
+    
+    /**
+     * @return The reachability labels of the last tick
+     */
+    public ReachabilityOracle getReachability()
+    {
+    	return reachability;
+    }
+    
+    /**
+     * @return The threat map of the last tick
+     */
+    public InfluenceMap getInfluence()
+    {
+    	return influence;
+    }
+    
+    /**
+     * @return The enemy distance field of the last tick
+     */
+    public DistanceField getDistanceField()
+    {
+    	return distanceField;
+    }
+    
+    /**
+     * @return The jobs of my workers
+     */
+    public WorkerRoles getWorkerRoles()
+    {
+    	return workerRoles;
+    }
+    
+    /**
+     * @return The snapshot of the last tick
+     */
+    public TickSnapshot getSnapshot()
+    {
+    	return snapshot;
+    }
+    
+    /**
+     * Looks for the closest enemy to attack
+     * @param pgs Physical Game State
+     * @param p Player
+     * @param u Unit
+     * @return Unit - closest enemy to the passed unit
+     */
+    public Unit GetClosestEnemy(PhysicalGameState pgs, Player p, Unit u)
+    {
+    	// Ask the enemy grid built at the start of the tick
+    	return enemyGrid.nearest(u.getX(), u.getY());
+    }
+    
+    /**
+     * Looks for the closest enemy the unit can walk to, going around walls and buildings
+     * @param u Unit
+     * @param gs Game State
+     * @return Unit - closest reachable enemy, or null if the unit cannot reach any
+     */
+    public Unit GetClosestReachableEnemy(Unit u, GameState gs)
+    {
+    	return ClosestReachableEnemy(u, gs, enemyGrid, distanceField);
+    }
+    
+    /**
+     * Base behavior. Trains workers
+     * @param u Unit - Base
+     * @param p Player
+     * @param pgs Physical Game State
+     */
+    public void BaseBehavior(Unit u, Player p, PhysicalGameState pgs)
+    {
+    	// Get my workers and barracks from the snapshot
+    	int nWorkers = snapshot.countMine(worker);
+    	int nBarracks = snapshot.countMine(barracks);
+    	int multiplier = mapMultiplier(pgs);
+    	
+    	// The production table scales the worker count to be produced with the map size
+    	int workerCount = production.getWorkerTarget(multiplier);
+    	
+    	// Train my workers if possible
+    	if(nWorkers < workerCount && p.getResources() >= worker.cost)
+    	{
+    		if(nWorkers < 2 || nBarracks >= 1 || p.getResources() >= 5 || multiplier == 0)
+    		{
+    			train(u, worker);
+    		}
+    	}
+    }
+    
+    /**
+     * Barracks behavior. Trains the units the production table picks against the enemy's units
+     * @param u Unit - barracks
+     * @param p Player
+     * @param pgs Physical Game State
+     */
+    public void BarracksBehavior(Unit u, Player p, PhysicalGameState pgs)
+    {
+    	UnitType troop = production.chooseTroop(snapshot, p.getResources());
+    	if (troop != null)
+    	{
+    		train(u, troop);
+    	}
+    }
+    
+    /**
+     * Melee unit behavior. Attack the closest enemy if reachable
+     * @param u Unit
+     * @param p Player
+     * @param gs Game State
+     */
+    public void MeleeBehavior(Unit u, Player p, GameState gs)
+    {
+    	if (!UsePrepared(u, gs, 0))
+    	{
+    		DecideMelee(u, gs, enemyGrid, distanceField, decidedKinds, decidedTargets, 0);
+    		Engage(u, gs, enemyGrid, allyGrid, decidedKinds, decidedTargets, 0);
+    	}
+    	CommitFighter(u, gs, 0);
+    }
+    
+    /**
+     * Ranged unit behavior. Attacks the closest enemy if can reach him
+     * @param u Unit
+     * @param p Plater
+     * @param gs Game State
+     */
+    public void RangedBehavior(Unit u, Player p, GameState gs)
+    {
+    	if (!UsePrepared(u, gs, 0))
+    	{
+    		DecideRanged(u, gs, enemyGrid, distanceField, influence, decidedKinds, decidedTargets, 0);
+    		Engage(u, gs, enemyGrid, allyGrid, decidedKinds, decidedTargets, 0);
+    	}
+    	CommitFighter(u, gs, 0);
+    }
+    
+    /**
+     * Takes the decision prepared for this tick during the opponent's turn, if there is one
+     * @param u Unit
+     * @param gs Game State
+     * @param slot Slot to write the decision in
+     * @return True if the unit had a prepared decision
+     */
+    private boolean UsePrepared(Unit u, GameState gs, int slot)
+    {
+    	DecisionMemo.Decision d = memo.getPrepared(u, gs.getTime());
+    	if (d == null)
+    	{
+    		return false;
+    	}
+    	decidedKinds[slot] = d.preparedKind;
+    	decidedTargets[slot] = d.preparedTarget;
+    	return true;
+    }
+    
+    /**
+     * Decides what a fighting unit does in a state, with the grid and the distance field of that state.
+     * Only reads them, the bot's settings and the thread's own combat model, so it may run on any thread as long as the field
+     * is current for the state. Otherwise it falls back to the bot's reachability and path finder, which belong to getAction
+     * @param u Unit
+     * @param gs Game State
+     * @param grid Enemy units of the state
+     * @param allies My units of the state, only read when the combat simulation is on
+     * @param field Distance field of the state
+     * @param influence Threat map of the state
+     * @param kinds Decision kinds to write in
+     * @param targets Decision targets to write in
+     * @param slot Slot to write the decision in
+     * @return False if the unit is not a fighting unit
+     */
+    boolean Decide(Unit u, GameState gs, UnitGrid grid, UnitGrid allies, DistanceField field, InfluenceMap influence, int[] kinds, Unit[] targets, int slot)
+    {
+    	if (u.getType() == archer)
+    	{
+    		DecideRanged(u, gs, grid, field, influence, kinds, targets, slot);
+    	}
+    	else if (u.getType() == light || u.getType() == heavy)
+    	{
+    		DecideMelee(u, gs, grid, field, kinds, targets, slot);
+    	}
+    	else
+    	{
+    		return false;
+    	}
+    	Engage(u, gs, grid, allies, kinds, targets, slot);
+    	return true;
+    }
+    
+    /**
+     * Plays out the fight of a unit about to attack, with the combat model, and changes the decision if the fight goes
+     * better focusing another enemy in reach, or retreating to the unit's group. Does nothing unless the combat simulation is on
+     * and the target is close
+     * @param u Unit
+     * @param gs Game State
+     * @param grid Enemy units of the state
+     * @param allies My units of the state
+     * @param kinds Decision kinds
+     * @param targets Decision targets
+     * @param slot Slot of the decision
+     */
+    private void Engage(Unit u, GameState gs, UnitGrid grid, UnitGrid allies, int[] kinds, Unit[] targets, int slot)
+    {
+    	Unit target = targets[slot];
+    	int reach = u.getType().attackRange + CONTACT_DISTANCE;
+    	if (!combatSimulation || kinds[slot] != DECIDED_ATTACK
+    			|| Math.abs(target.getX() - u.getX()) + Math.abs(target.getY() - u.getY()) > reach)
+    	{
+    		return;
+    	}
+    	CombatModel model = combatModels.get();
+    	model.load(u, gs, grid, allies, ENGAGEMENT_RADIUS);
+    	
+    	// The fight going for the chosen target first
+    	int bestTarget = -1;
+    	for (int i = 1; i < model.size(); i++)
+    	{
+    		if (model.getUnit(i) == target)
+    		{
+    			bestTarget = i;
+    		}
+    	}
+    	if (bestTarget < 0)
+    	{
+    		return;
+    	}
+    	model.setFocus(0, bestTarget);
+    	int best = model.rollout(ENGAGEMENT_HORIZON);
+    	
+    	// Then the other enemies in reach. Ties keep the chosen target
+    	int tried = 0;
+    	for (int i = 1; i < model.size() && tried < FOCUS_CANDIDATES; i++)
+    	{
+    		Unit e = model.getUnit(i);
+    		if (!model.isEnemy(i) || e == target || Math.abs(e.getX() - u.getX()) + Math.abs(e.getY() - u.getY()) > reach)
+    		{
+    			continue;
+    		}
+    		tried++;
+    		model.setFocus(0, i);
+    		int score = model.rollout(ENGAGEMENT_HORIZON);
+    		if (score > best)
+    		{
+    			best = score;
+    			bestTarget = i;
+    		}
+    	}
+    	
+    	// Falling back to the group is a stack decision
+    	model.setFocus(0, -1);
+    	model.setRetreat(0, true);
+    	if (model.rollout(ENGAGEMENT_HORIZON) > best + RETREAT_MARGIN)
+    	{
+    		kinds[slot] = DECIDED_STACK;
+    		targets[slot] = null;
+    		return;
+    	}
+    	targets[slot] = model.getUnit(bestTarget);
+    }
+    
+    /**
+     * Looks for the closest enemy the unit can walk to in a state
+     * @param u Unit
+     * @param gs Game State
+     * @param grid Enemy units of the state
+     * @param field Distance field of the state
+     * @return Unit - closest reachable enemy, or null if the unit cannot reach any
+     */
+    private Unit ClosestReachableEnemy(Unit u, GameState gs, UnitGrid grid, DistanceField field)
+    {
+    	// The distance field of this tick already knows it
+    	if (field.isCurrent(gs))
+    	{
+    		return field.getNearestEnemy(u);
+    	}
+    	// Otherwise check the closest enemy in a straight line
+    	Unit closestEnemy = grid.nearest(u.getX(), u.getY());
+    	return DoesPathExists(closestEnemy, u, gs) ? closestEnemy : null;
+    }
+    
+    /**
+     * Decides what a melee unit does, without telling it yet. Only reads the state of the tick, so it may run on any thread
+     * @param u Unit
+     * @param gs Game State
+     * @param grid Enemy units of the state
+     * @param field Distance field of the state
+     * @param kinds Decision kinds to write in
+     * @param targets Decision targets to write in
+     * @param slot Slot to write the decision in
+     */
+    private void DecideMelee(Unit u, GameState gs, UnitGrid grid, DistanceField field, int[] kinds, Unit[] targets, int slot)
+    {
+    	kinds[slot] = DECIDED_NOTHING;
+    	targets[slot] = null;
+    	// Check if there is an enemy
+    	if(!grid.isEmpty())
+    	{
+    		// Get the closest enemy we can walk to
+    		Unit closestEnemy = ClosestReachableEnemy(u, gs, grid, field);
+    		// If there is one - attack
+    		if (closestEnemy != null)
+    		{
+    			kinds[slot] = DECIDED_ATTACK;
+    			targets[slot] = closestEnemy;
+    		}
+    		// If false - stack together
+    		else
+    		{
+    			kinds[slot] = DECIDED_STACK;
+    		}
+    	}
+    }
+    
+    /**
+     * Decides what a ranged unit does, without telling it yet. Only reads the state of the tick, so it may run on any thread
+     * @param u Unit
+     * @param gs Game State
+     * @param grid Enemy units of the state
+     * @param field Distance field of the state
+     * @param influence Threat map of the state
+     * @param kinds Decision kinds to write in
+     * @param targets Decision targets to write in
+     * @param slot Slot to write the decision in
+     */
+    private void DecideRanged(Unit u, GameState gs, UnitGrid grid, DistanceField field, InfluenceMap influence, int[] kinds, Unit[] targets, int slot)
+    {
+    	kinds[slot] = DECIDED_NOTHING;
+    	targets[slot] = null;
+    	// Get the closest enemy
+    	Unit closestEnemy = grid.nearest(u.getX(), u.getY());
+    	// Check if there is an enemy
+    	if (closestEnemy != null)
+    	{
+    		// Get the distance to the enemy
+        	int distance = Math.abs(closestEnemy.getX() - u.getX()) + Math.abs(closestEnemy.getY() - u.getY());
+    		// If close enough - attacks, unless an enemy melee unit is about to reach us and we can step out of its reach
+    		if (distance < rangedAttackDistance)
+    		{
+    			int step = SafeStep(u, gs, influence);
+    			kinds[slot] = step >= 0 ? DECIDED_KITE + step : DECIDED_ATTACK;
+    			targets[slot] = step >= 0 ? null : closestEnemy;
+    		}
+    		// Otherwise attack the closest enemy we can walk to
+    		else
+    		{
+    			Unit reachableEnemy = ClosestReachableEnemy(u, gs, grid, field);
+    			if (reachableEnemy != null)
+    			{
+    				kinds[slot] = DECIDED_ATTACK;
+    				targets[slot] = reachableEnemy;
+    			}
+    			// If there is none - stack together
+    			else
+    			{
+    				kinds[slot] = DECIDED_STACK;
+    			}
+    		}
+    	}
+    }
+    
+    /**
+     * Looks for a free cell next to the unit out of the reach of the enemy melee units, if the unit is within their reach
+     * @param u Unit
+     * @param gs Game State
+     * @param influence Threat map of the state
+     * @return Direction of the step, or -1 if the unit is out of reach or has nowhere to go
+     */
+    private int SafeStep(Unit u, GameState gs, InfluenceMap influence)
+    {
+    	if (influence.getMeleeThreat(u.getX(), u.getY()) == 0)
+    	{
+    		return -1;
+    	}
+    	PhysicalGameState pgs = gs.getPhysicalGameState();
+    	for (int direction = 0; direction < 4; direction++)
+    	{
+    		int x = u.getX() + UnitAction.DIRECTION_OFFSET_X[direction];
+    		int y = u.getY() + UnitAction.DIRECTION_OFFSET_Y[direction];
+    		if (x >= 0 && y >= 0 && x < pgs.getWidth() && y < pgs.getHeight()
+    				&& influence.getMeleeThreat(x, y) == 0 && gs.free(x, y))
+    		{
+    			return direction;
+    		}
+    	}
+    	return -1;
+    }
+    
+    /**
+     * Decides what every planned fighting unit does, on the thread pool
+     * @param gs Game State
+     */
+    private void DecideFighters(GameState gs)
+    {
+    	plannedUnits.clear();
+    	addAll(plannedUnits, contactUnits);
+    	addAll(plannedUnits, distantUnits);
+    	int n = plannedUnits.size();
+    	if (decidedKinds.length < n)
+    	{
+    		decidedKinds = new int[n * 2];
+    		decidedTargets = new Unit[n * 2];
+    	}
+    	decidingState = gs;
+    	parallel.run(n, decideSlot);
+    	decidingState = null;
+    }
+    
+    /**
+     * Decides for the planned unit of the slot, on a thread of the pool
+     * @param slot Slot of the unit in plannedUnits
+     */
+    private void DecideSlot(int slot)
+    {
+    	Unit u = plannedUnits.get(slot);
+    	if (!UsePrepared(u, decidingState, slot))
+    	{
+    		Decide(u, decidingState, enemyGrid, allyGrid, distanceField, influence, decidedKinds, decidedTargets, slot);
+    	}
+    }
+    
+    /**
+     * Tells a fighting unit what it decided. Must run on the thread of getAction, as the abstraction layer is not thread safe
+     * @param u Unit
+     * @param gs Game State
+     * @param slot Slot the decision was written in
+     */
+    private void CommitFighter(Unit u, GameState gs, int slot)
+    {
+    	if (decidedKinds[slot] == DECIDED_ATTACK)
+    	{
+    		attack(u, decidedTargets[slot]);
+    	}
+    	else if (decidedKinds[slot] == DECIDED_STACK)
+    	{
+    		// Join my units of the same group stacking together. The whole group shares one flow field,
+    		// so the unit's place in its group is only looked up for the rally cell moves
+    		int i = 1;
+    		if (!flowFieldStacking)
+    		{
+    			i += u.getType() == archer ? snapshot.getMyUnits(archer).indexOf(u) : meleeUnits.indexOf(u);
+    		}
+    		StackUnit(gs, u, i);
+    	}
+    	else if (decidedKinds[slot] >= DECIDED_KITE)
+    	{
+    		// Step out of reach, and plan again as soon as the step is done. A step not taken yet is kept
+    		int direction = decidedKinds[slot] - DECIDED_KITE;
+    		DecisionMemo.Decision last = memo.get(u);
+    		boolean stepping = last != null && last.kind == DecisionMemo.KITE && getAbstractAction(u) != null;
+    		memo.record(u, DecisionMemo.KITE, null, true);
+    		if (!stepping)
+    		{
+    			super.move(u, u.getX() + UnitAction.DIRECTION_OFFSET_X[direction], u.getY() + UnitAction.DIRECTION_OFFSET_Y[direction]);
+    		}
+    	}
+    	// Don't keep the target alive in the slot until the next tick
+    	decidedTargets[slot] = null;
+    }
+    
+    /**
+     * @return Number of threads the fighter decisions run on
+     */
+    public int getParallelism()
+    {
+    	return parallel.getParallelism();
+    }
+    
+    /**
+     * Turns the parallel decisions on or off. The decisions are the same either way
+     * @param threads Number of threads, 1 to decide on the thread of getAction
+     */
+    public void setParallelism(int threads)
+    {
+    	parallel.setParallelism(threads);
+    }
+    
+    public boolean isSpeculativePlanning()
+    {
+    	return speculation != null;
+    }
+    
+    /**
+     * Turns the planning of the next tick during the opponent's turn on or off. The decisions are the same either way
+     * @param enabled True to plan ahead on a background thread
+     */
+    public void setSpeculativePlanning(boolean enabled)
+    {
+    	if (enabled && speculation == null)
+    	{
+    		speculation = new SpeculativePlanner(this, utt);
+    	}
+    	else if (!enabled && speculation != null)
+    	{
+    		speculation.shutdown();
+    		speculation = null;
+    	}
+    }
+    
+    /**
+     * @return The speculative planner with its hit rate, or null when it is off
+     */
+    public SpeculativePlanner getSpeculation()
+    {
+    	return speculation;
+    }
+    
+    public boolean isCombatSimulation()
+    {
+    	return combatSimulation;
+    }
+    
+    /**
+     * @param enabled True to play out the fights of units in contact with the combat model before picking a target
+     */
+    public void setCombatSimulation(boolean enabled)
+    {
+    	combatSimulation = enabled;
+    }
+    
+    /**
+     * @return What the barracks and bases train
+     */
+    public ProductionTable getProductionTable()
+    {
+    	return production;
+    }
+    
+    /**
+     * Reads the production table from a file instead of the one shipped with the bot.
+     * Replaces the worker, fallback and counter parameters set before
+     * @param file Path of the table, empty for the shipped one
+     * @throws IOException If the file cannot be read
+     */
+    public void setProductionTable(String file) throws IOException
+    {
+    	production = file == null || file.isEmpty() ? ProductionTable.loadDefault(utt) : ProductionTable.load(file, utt);
+    }
+    
+    public int getWorkerCount()
+    {
+    	return production.getWorkersPerBase();
+    }
+    
+    /**
+     * @param count Workers the bases train up to on the smallest maps
+     */
+    public void setWorkerCount(int count)
+    {
+    	production.setWorkers(count, production.getWorkersPerStep());
+    }
+    
+    public int getWorkersPerMapStep()
+    {
+    	return production.getWorkersPerStep();
+    }
+    
+    /**
+     * @param count Extra workers for every step of the map size
+     */
+    public void setWorkersPerMapStep(int count)
+    {
+    	production.setWorkers(production.getWorkersPerBase(), count);
+    }
+    
+    public int getHarvestersNeeded()
+    {
+    	return harvestersNeeded;
+    }
+    
+    /**
+     * @param count Most workers harvesting, the others build and attack
+     */
+    public void setHarvestersNeeded(int count)
+    {
+    	harvestersNeeded = count;
+    }
+    
+    public int getResourceRadius()
+    {
+    	return workerRoles.getResourceRadius();
+    }
+    
+    /**
+     * @param radius Resources closer than this to my base are harvested
+     */
+    public void setResourceRadius(int radius)
+    {
+    	workerRoles.setResourceRadius(radius);
+    }
+    
+    public int getDefenseRadius()
+    {
+    	return defenseRadius;
+    }
+    
+    /**
+     * @param radius All my workers attack an enemy that gets closer than this walking distance, once a barracks stands
+     */
+    public void setDefenseRadius(int radius)
+    {
+    	defenseRadius = radius;
+    }
+    
+    public int getRangedAttackDistance()
+    {
+    	return rangedAttackDistance;
+    }
+    
+    /**
+     * @param distance Ranged units closer than this to the closest enemy attack it instead of walking to one they can reach
+     */
+    public void setRangedAttackDistance(int distance)
+    {
+    	rangedAttackDistance = distance;
+    }
+    
+    public int getFallbackLimit()
+    {
+    	return production.getFallbackLimit();
+    }
+    
+    /**
+     * @param limit Most troops of the production table's fallback type trained
+     */
+    public void setFallbackLimit(int limit)
+    {
+    	production.setFallbackLimit(limit);
+    }
+    
+    /**
+     * @param rule Rule index in the production table
+     * @return Enemies of the countered type needed for the rule to fire, or -1 if the table has no such rule
+     */
+    public int getCounterNeeded(int rule)
+    {
+    	return rule < production.size() ? production.getNeeded(rule) : -1;
+    }
+    
+    /**
+     * @param rule Rule index in the production table, a rule the table lacks is left alone
+     * @param n Enemies of the countered type needed for the rule to fire
+     */
+    public void setCounterNeeded(int rule, int n)
+    {
+    	if (rule < production.size())
+    	{
+    		production.setRule(rule, n, production.getCancelled(rule));
+    	}
+    }
+    
+    /**
+     * @param rule Rule index in the production table
+     * @return Enemies each trained troop already on the field cancels, or -1 if the table has no such rule
+     */
+    public int getCounterCancelled(int rule)
+    {
+    	return rule < production.size() ? production.getCancelled(rule) : -1;
+    }
+    
+    /**
+     * @param rule Rule index in the production table, a rule the table lacks is left alone
+     * @param n Enemies each trained troop already on the field cancels
+     */
+    public void setCounterCancelled(int rule, int n)
+    {
+    	if (rule < production.size())
+    	{
+    		production.setRule(rule, production.getNeeded(rule), n);
+    	}
+    }
+    
+    // Parameters of the counter rules of the shipped table, which the front end sets through their setters
+    public int getCounter0Needed()
+    {
+    	return getCounterNeeded(0);
+    }
+    
+    public void setCounter0Needed(int n)
+    {
+    	setCounterNeeded(0, n);
+    }
+    
+    public int getCounter0Cancelled()
+    {
+    	return getCounterCancelled(0);
+    }
+    
+    public void setCounter0Cancelled(int n)
+    {
+    	setCounterCancelled(0, n);
+    }
+    
+    public int getCounter1Needed()
+    {
+    	return getCounterNeeded(1);
+    }
+    
+    public void setCounter1Needed(int n)
+    {
+    	setCounterNeeded(1, n);
+    }
+    
+    public int getCounter1Cancelled()
+    {
+    	return getCounterCancelled(1);
+    }
+    
+    public void setCounter1Cancelled(int n)
+    {
+    	setCounterCancelled(1, n);
+    }
+    
+    public int getCounter2Needed()
+    {
+    	return getCounterNeeded(2);
+    }
+    
+    public void setCounter2Needed(int n)
+    {
+    	setCounterNeeded(2, n);
+    }
+    
+    public int getCounter2Cancelled()
+    {
+    	return getCounterCancelled(2);
+    }
+    
+    public void setCounter2Cancelled(int n)
+    {
+    	setCounterCancelled(2, n);
+    }
+    
+    public int getCounter3Needed()
+    {
+    	return getCounterNeeded(3);
+    }
+    
+    public void setCounter3Needed(int n)
+    {
+    	setCounterNeeded(3, n);
+    }
+    
+    public int getCounter3Cancelled()
+    {
+    	return getCounterCancelled(3);
     }
-
     
-    @Override
-    public AI clone() {
-        return new AgileBot(utt);
+    public void setCounter3Cancelled(int n)
+    {
+    	setCounterCancelled(3, n);
     }
-   
     
-    @Override
-    /**
-     * Called every tick and is the main body of the AI
-     */
-    public PlayerAction getAction(int player, GameState gs) {
-    	// Get the physical game state
-        PhysicalGameState pgs = gs.getPhysicalGameState();
-        // Get our player
-        Player p = gs.getPlayer(player);
-        
-        // Make a list of worker units
-        List<Unit> workers = new LinkedList<Unit>();
-        // Loop through every unit in the game
-        for (Unit unit : pgs.getUnits()) 
-        {
-        	// If it's player's base unit, call a base behavior
-        	if(unit.getType() == base 
-        			&& unit.getPlayer() == player 
-        			&& gs.getActionAssignment(unit) == null)
-        	{
-        		BaseBehavior(unit, p, pgs);
-        	}
-        	
-        	// If it's player's barracks unit, call a barracks behavior
-        	else if(unit.getType() == barracks 
-        			&& unit.getPlayer() == player 
-        			&& gs.getActionAssignment(unit) == null)
-        	{
-        		BarracksBehavior(unit, p, pgs);
-        	}
-        	
-        	// If it's player's light or heavy unit, call a light and heavy behavior
-        	else if(unit.getType() == light || unit.getType() == heavy 
-        			&& unit.getPlayer() == player 
-        			&& gs.getActionAssignment(unit) == null)
-        	{
-        		MeleeBehavior(unit, p, gs);
-        	}
-        	
-        	// If it's player's ranged unit, call a ranged behavior
-        	else if(unit.getType() == archer 
-        			&& unit.getPlayer() == player 
-        			&& gs.getActionAssignment(unit) == null)
-        	{
-        		RangedBehavior(unit, p, gs);
-        	}
-        	
-        	// If it's player's worker unit, add to the list
-        	else if(unit.getPlayer() == player && unit.getType().canHarvest)
-        	{
-        		workers.add(unit);
-        	}
-        }
-        // Call a workers behavior
-        WorkerBehavior(workers, p, gs);
-        
-        // Return all the actions of my player to simulate in the game
-        return translateActions(player, gs);
+    public boolean isWarmUp()
+    {
+    	return warmUp;
     }
     
     /**
-     * Looks for the closest enemy to attack
-     * @param pgs Physical Game State
-     * @param p Player
-     * @param u Unit
-     * @return Unit - closest enemy to the passed unit
+     * @param enabled True to spend part of the pre-game time playing practice games on the map, so the first ticks
+     * run compiled code
      */
-    public Unit GetClosestEnemy(PhysicalGameState pgs, Player p, Unit u)
+    public void setWarmUp(boolean enabled)
     {
-    	Unit closestEnemy = null;
-    	int closestDistance = 0;
-    	// Loop through every unit in the game
-    	for(Unit u2:pgs.getUnits())
-    	{
-    		// Check if the unit is enemy's and not a resource
-    		if(u2.getPlayer() >= 0 && u2.getPlayer() != p.getID())
-    		{
-    			// Calculate it's distance to my unit
-    			int distance = Math.abs(u2.getX() - u.getX()) + Math.abs(u2.getY() - u.getY());
-    			// If there is no unit still assigned or the new distance is smaller than the previous one's - assign a new closest enemy
-    			if(closestEnemy == null || distance < closestDistance)
-    			{
-    				closestEnemy = u2;
-    				closestDistance = distance;
-    			}
-    		}
-    	}
-    	// Return closest enemy unit
-    	return closestEnemy;
+    	warmUp = enabled;
     }
     
     /**
-     * Base behavior. Trains workers
-     * @param u Unit - Base
-     * @param p Player
-     * @param pgs Physical Game State
+     * @return How the last warm up went, or null if there was none
      */
-    public void BaseBehavior(Unit u, Player p, PhysicalGameState pgs)
+    public WarmUp getLastWarmUp()
     {
-    	int nWorkers = 0;
-    	int nBarracks = 0;
-    	int workerCount = 5;
-    	int multiplier = mapMultiplier(pgs);
-    	
-    	// Loop through every unit in the game and increment my workers and barracks
-    	for(Unit u2 : pgs.getUnits())
-    	{
-    		if(u2.getType() == worker && u2.getPlayer() == p.getID())
-    		{
-    			nWorkers++;
-    		}
-    		
-    		if(u2.getType() == barracks && u2.getPlayer() == p.getID())
-    		{
-    			nBarracks++;
-    		}
-    	}
-    	
-    	// Multiply the worker unit count to be produced depending on the map size
-    	if (multiplier > 0)
-    	{
-    		workerCount = workerCount + (2 * multiplier);
-    	}
-    	
-    	// Train my workers if possible
-    	if(nWorkers < workerCount && p.getResources() >= worker.cost)
-    	{
-    		if(nWorkers < 2 || nBarracks >= 1 || p.getResources() >= 5 || multiplier == 0)
-    		{
-    			train(u, worker);
-    		}
-    	}
+    	return lastWarmUp;
     }
     
-    /**
-     * Barracks behavior. Trains Units
-     * @param u Unit - barracks
-     * @param p Player
-     * @param pgs Physical Game State
-     */
-    public void BarracksBehavior(Unit u, Player p, PhysicalGameState pgs)
+    public String getTraceFile()
     {
-    	// Train Ranged
-    	TrainTroops(archer, worker, u, p, pgs, 3);
-    	TrainTroops(archer, heavy, u, p, pgs, 1);
-    	// Train Light
-    	TrainTroops(light, archer, u, p, pgs, 2);
-    	// Train Heavy
-    	TrainTroops(heavy, light, u, p, pgs, 2);
+    	return traceFile;
     }
     
     /**
-     * Trains certain type of unit that is passed in. The amount of units trained depends on the amount of specific type of units enemy has
-     * @param troopToTrain Unit Type to Train
-     * @param enemyTroop Unit Type to Compare
-     * @param u Unit - barracks
-     * @param p Player
-     * @param pgs Physical Game State
-     * @param enemyAmount Number of Certain Type of Enemy Units
+     * Records every game state getAction sees from the next tick on, until the game is over or the AI is reset
+     * @param file Path of the trace, overwritten if it exists. Null or empty to stop recording
      */
-    public void TrainTroops(UnitType troopToTrain, UnitType enemyTroop, Unit u, Player p, PhysicalGameState pgs, int enemyAmount)
+    public void setTraceFile(String file)
     {
-    	// Get the amount of enemy's specific unit count
-    	int enemyTroopCount = EnemyUnitCount(p, pgs, enemyTroop, troopToTrain);
-    	int myRanged = 0;
-    	// Get all my ranged units
-    	for(Unit u2 : pgs.getUnits())
-    	{
-    		if (u2.getType() == archer && u2.getPlayer() == p.getID())
-    		{
-    			myRanged++;
-    		}
-    	}
-    	// Train units depending on the enemy unit amount
-    	if (enemyTroopCount >= enemyAmount)
-    	{
-    		if(p.getResources() >= troopToTrain.cost)
-    		{
-    			train(u, troopToTrain);
-    		}
-    	}
-    	// Else, train up to 3 ranged units
-    	else
-    	{
-    		if(p.getResources() >= archer.cost && myRanged < 3)
-    		{
-    			train(u, archer);
-    		}
-    	}
+    	closeTrace();
+    	traceFile = file == null || file.isEmpty() ? null : file;
     }
     
     /**
-     * This function checks how many certain typed enemy units there are. It scales down with the number of my units of certain type
-     * @param p Player
-     * @param pgs Physical Game State
-     * @param enemy Enemy Unit Type
-     * @param ally Allied Unit Type
-     * @return Number of certain type enemies
+     * Appends the game state to the trace, and gives up tracing if the file cannot be written
      */
-    public int EnemyUnitCount(Player p, PhysicalGameState pgs, UnitType enemy, UnitType ally)
+    private void record(int player, GameState gs)
     {
-    	int myUnitCount = 0;
-    	int enemyUnitCount = 0;
-    	
-    	for(Unit u2 : pgs.getUnits())
+    	try
     	{
-    		// Get my unit count. The type is passed in
-    		if(u2.getPlayer() == p.getID() && u2.getType() == ally)
-    		{
-    			myUnitCount++; 
-    		}
-    		
-    		// Get enemy unit count. The type is passed in
-    		if(u2.getPlayer() != p.getID() && u2.getType() == enemy)
+    		if (trace == null)
     		{
-    			enemyUnitCount++;
+    			trace = new TraceRecorder(traceFile, player);
     		}
+    		trace.record(gs);
     	}
-    	
-    	// Get enemy worker unit count
-    	if(myUnitCount > 0 && enemy == worker)
-    	{
-    		enemyUnitCount = enemyUnitCount - (myUnitCount * 3);
-    	}
-    	
-    	// Get enemy light unit count
-    	if(myUnitCount > 0 && enemy == light)
-    	{
-    		enemyUnitCount = enemyUnitCount - (myUnitCount * 2);
-    	}
-    	
-    	// Get enemy heavy unit count
-    	if(myUnitCount > 0 && enemy == heavy)
-    	{
-    		enemyUnitCount = enemyUnitCount - (myUnitCount * 1);
-    	}
-    	
-    	// Get enemy ranged unit count
-    	if(myUnitCount > 0 && enemy == archer)
+    	catch (IOException e)
     	{
-    		enemyUnitCount = enemyUnitCount - (myUnitCount * 2);
+    		// A full disk is no reason to lose the game, the trace just ends here
+    		closeTrace();
+    		traceFile = null;
     	}
-    	
-    	return enemyUnitCount;
     }
     
-    /**
-     * Melee unit behavior. Attack the closest enemy if reachable
-     * @param u Unit
-     * @param p Player
-     * @param gs Game State
-     */
-    public void MeleeBehavior(Unit u, Player p, GameState gs)
+    private void closeTrace()
     {
-    	PhysicalGameState pgs = gs.getPhysicalGameState();
-    	// Get the closest enemy
-    	Unit closestEnemy = GetClosestEnemy(pgs, p, u);
-    	// Check if there is an enemy
-    	if(closestEnemy != null)
+    	if (trace == null)
     	{
-    		// Check if can move there
-    		boolean doesPathExists = DoesPathExists(closestEnemy, u, gs);
-    		// If true - attack
-    		if (doesPathExists)
-    		{
-    			attack(u, closestEnemy);
-    		}
-    		// If false - stack together
-    		else
-    		{
-    			// List of my light and heavy units
-    			List<Unit> units = new LinkedList<Unit>();
-    			for (Unit u2 : pgs.getUnits())
-				{
-					if (u2.getPlayer() == p.getID() && u2.getType() == light || u2.getType() == heavy)
-					{
-						units.add(u2);
-					}
-				}
-    			// Stack them together
-    			Stack(gs, units);
-    		}
+    		return;
     	}
-    }
-    
-    /**
-     * Ranged unit behavior. Attacks the closest enemy if can reach him
-     * @param u Unit
-     * @param p Plater
-     * @param gs Game State
-     */
-    public void RangedBehavior(Unit u, Player p, GameState gs)
-    {
-    	PhysicalGameState pgs = gs.getPhysicalGameState();
-    	// Get the closest enemy
-    	Unit closestEnemy = GetClosestEnemy(pgs, p, u);
-    	// Check if there is an enemy
-    	if (closestEnemy != null)
+    	try
     	{
-    		// Get the distance to the enemy
-        	int distance = Math.abs(closestEnemy.getX() - u.getX()) + Math.abs(closestEnemy.getY() - u.getY());
-    		// Check if can move there
-        	boolean doesPathExists = DoesPathExists(closestEnemy, u, gs);
-			// If true - attacks
-    		if (doesPathExists || distance < 3)
-    		{
-    			attack(u, closestEnemy);
-    		}
-    		// If false - stack together
-    		else
-    		{
-    			// List of my ranged units
-    			List<Unit> units = new LinkedList<Unit>();
-    			for (Unit u2 : pgs.getUnits())
-				{
-					if (u2.getPlayer() == p.getID() && u2.getType() == archer)
-					{
-						units.add(u2);
-					}
-				}
-    			// Stack them together
-    			Stack(gs, units);
-    		}
+    		trace.close();
+    	}
+    	catch (IOException e)
+    	{
+    		// The ticks written before are still readable
     	}
+    	trace = null;
     }
     
     /**
@@ -392,23 +1560,16 @@ public class AgileBot extends AbstractionLayerAI {
     {
     	PhysicalGameState pgs = gs.getPhysicalGameState();
     	
-    	int nBases = 0;
-    	int nBarracks = 0;
-    	Unit myBase = null;
+    	// Get the number of my barracks and bases
+    	int nBases = snapshot.countMine(base);
+    	int nBarracks = snapshot.countMine(barracks);
+    	Unit myBase = snapshot.getMyBase();
     	
     	int basesToBuild = 1;
     	int barracksToBuild = 1;
-    	int harvestersNeeded = 2;
     	
     	// Get the multiplier
     	int multiplier = mapMultiplier(pgs);
-
-    	// List of different worker types - builders, harvesters and attacker
-    	List<Unit> builders = new LinkedList<Unit>();
-    	List<Unit> harvesters = new LinkedList<Unit>();
-    	List<Unit> attackers = new LinkedList<Unit>();
-    	// List of closest resources to the base
-    	List<Unit> closeResources = new LinkedList<Unit>();
     	
     	// If there are no workers passed it, return
     	if (workers.isEmpty())
@@ -416,246 +1577,131 @@ public class AgileBot extends AbstractionLayerAI {
     		return;
     	}
     	
-    	// Get the number of my barracks and bases
-    	for (Unit u2 : pgs.getUnits())
-    	{    		
-    		if(u2.getType() == base && u2.getPlayer() == p.getID())
-    		{
-    			nBases++;
-    			// Assign my base
-    			myBase = u2;
-    		}
-    		
-    		if(u2.getType() == barracks && u2.getPlayer() == p.getID())
-    		{
-    			nBarracks++;
-    		}
-    	}
-    	
-    	// Check whether we are at the top or at the bottom
-    	if(myBase != null)
-    	{
-	    	if(myBase.getX() < pgs.getWidth() / 2)
-	    	{
-	    		isOnTop = true;
-	    	}
-	    	else
-	    	{
-	    		isOnTop = false;
-	    	}
-    	}
-    	
-    	// Loop through every unit in the game
-    	for(Unit u2 : pgs.getUnits())
-    	{
-    		// Check if it's a resource
-    		if(u2.getType().isResource && myBase != null)
-    		{
-    			// Check the distance from the resource to the base
-    			int distance = Math.abs(u2.getX() - myBase.getX()) + Math.abs(u2.getY() - myBase.getY());
-    			if(distance < 5)
-    			{
-    				// If close enough - add to the close resources list
-    				closeResources.add(u2);
-    			}
-    		}
-    	}
-    	
-    	// Assign my workers for different jobs
-    	for (Unit u2 : workers)
-    	{
-	    	if (harvesters.size() < closeResources.size() && harvesters.size() < harvestersNeeded)
-	    	{
-	    		harvesters.add(u2);
-	    	}
-	    	else if (builders.size() < 1 && multiplier != 0)
-	    	{
-	    		builders.add(u2);
-	    	}
-	    	else
-	    	{
-	    		attackers.add(u2);
-	    	}
-    	}
+    	// Hand out the jobs again only if a worker, building or resource came or went since the last tick
+    	workerRoles.update(snapshot, workers, harvestersNeeded, multiplier != 0 ? 1 : 0, nBarracks, nBases, analysis, p.getID());
+    	List<Unit> builders = workerRoles.getBuilders();
+    	int nextBuilder = 0;
     	
-    	List<Integer> reservedPositions = new LinkedList<Integer>();
+    	reservedPositions.clear();
     	
     	// Build bases if we need and can
-    	if (nBases < basesToBuild && !builders.isEmpty())
+    	if (nBases < basesToBuild && nextBuilder < builders.size())
     	{
     		if(p.getResources() >= base.cost)
     		{
-    			Unit u = builders.remove(0);
+    			Unit u = builders.get(nextBuilder++);
     			buildIfNotAlreadyBuilding(u, base, u.getX(), u.getY(), reservedPositions, p, pgs);
     		}	
     	}
     	// Build barracks if we need and can
     	barracksToBuild += multiplier;
-    	if (nBarracks < barracksToBuild && !builders.isEmpty())
+    	if (nBarracks < barracksToBuild && nextBuilder < builders.size())
     	{
 			// Make several barracks depending on the map size
     		if(p.getResources() >= barracks.cost && myBase != null)
     		{
-				Unit u = builders.remove(0);
-			
-    			if(isOnTop)
-        		{
-    				if(nBarracks == 0)
-    				{
-    					buildIfNotAlreadyBuilding(u, barracks, myBase.getX() + 2, myBase.getY() + 2, reservedPositions, p, pgs);
-    				}
-    				if (nBarracks == 1)
-    				{
-    					buildIfNotAlreadyBuilding(u, barracks, myBase.getX() + 1, myBase.getY() + 3, reservedPositions, p, pgs);
-    				}
-    				else
-    				{
-    					buildIfNotAlreadyBuilding(u, barracks, myBase.getX() + 3, myBase.getY() + 1, reservedPositions, p, pgs);
-    				}
-        		}
-    			else
-    			{
-    				if(nBarracks == 0)
-    				{
-    					buildIfNotAlreadyBuilding(u, barracks, myBase.getX(), myBase.getY(), reservedPositions, p, pgs);
-    				}
-    				if (nBarracks == 1)
-    				{
-    					buildIfNotAlreadyBuilding(u, barracks, myBase.getX() + 1, myBase.getY() - 1, reservedPositions, p, pgs);
-    				}
-    				else
-    				{
-    					buildIfNotAlreadyBuilding(u, barracks, myBase.getX() - 1, myBase.getY() + 1, reservedPositions, p, pgs);
-    				}
-    			}
-    		}
-    	}
-    	
-    	// If we have enough barracks, assign builders to be attackers
-    	if (nBarracks == barracksToBuild)
-    	{
-    		if(!builders.isEmpty())
-    		{
-    			attackers.addAll(builders);
+				Unit u = builders.get(nextBuilder++);
+				// Build on the next site picked by the map analysis, or next to the base if it found none
+				int[] sites = analysis.getBarracksSites(p.getID());
+				int x = myBase.getX();
+				int y = myBase.getY();
+				if (sites.length > 0)
+				{
+					int site = sites[Math.min(nBarracks, sites.length - 1)];
+					x = site % pgs.getWidth();
+					y = site / pgs.getWidth();
+				}
+				buildIfNotAlreadyBuilding(u, barracks, x, y, reservedPositions, p, pgs);
     		}
     	}
     	
     	// Make the harvest all the materials!
-    	if(!harvesters.isEmpty())
+        List<Unit> harvesters = workerRoles.getHarvesters();
+        for (int i = 0; i < harvesters.size(); i++) 
+        {
+        	Unit u = harvesters.get(i);
+        	// The resource and the base it was matched to when the jobs were handed out
+        	Unit closestResource = workerRoles.getResource(i);
+        	Unit closestBase = workerRoles.getStockpile(i);
+            // Assign my harvesters to harvest materials
+            if (closestResource != null && closestBase != null) 
+            {
+                AbstractAction aa = getAbstractAction(u);
+                if (aa instanceof Harvest) 
+                {
+                    Harvest h_aa = (Harvest)aa;
+                    if (h_aa.getTarget() != closestResource || h_aa.getBase()!=closestBase) harvest(u, closestResource, closestBase);
+                } 
+                // Don't send a harvester to a resource the enemy outguns us at
+                else if (influence.isSafe(closestResource.getX(), closestResource.getY()))
+                {
+                    harvest(u, closestResource, closestBase);
+                }
+            }
+        }
+    	
+    	// Send the attackers, and the builders too if we have enough barracks
+    	blockedAttackers.clear();
+    	List<Unit> attackers = workerRoles.getAttackers();
+    	for (int i = 0; i < attackers.size(); i++)
     	{
-	        for (Unit u : harvesters) 
-	        {
-	            Unit closestBase = null;
-	            Unit closestResource = null;
-	            int closestDistance = 0;
-	            
-	            // If there are no resources nearby - ATTACK!
-	            if(closeResources.isEmpty())
-	            {
-	            	attackers.addAll(harvesters);
-	            	harvesters.removeAll(harvesters);
-	            }
-	            // Otherwise just harvest different resources
-	            else
-	            {
-		            for (int i=0; i < closeResources.size(); i++) 
-		            {
-		            	// Get the closest resource to harvest from
-		                if (closeResources.get(i).getType().isResource) 
-		                {
-		                    int d = Math.abs(closeResources.get(i).getX() - u.getX()) + Math.abs(closeResources.get(i).getY() - u.getY());
-		                    if (closestResource == null || d < closestDistance) 
-		                    {
-		                       closestResource = closeResources.remove(i);
-		                       closestDistance = d;
-		                    }
-		                }
-		            }
-		            // Get the closest base to put resources in
-		            closestDistance = 0;
-		            for (Unit u2 : pgs.getUnits()) 
-		            {
-		                if (u2.getType().isStockpile && u2.getPlayer()==p.getID()) 
-		                {
-		                    int d = Math.abs(u2.getX() - u.getX()) + Math.abs(u2.getY() - u.getY());
-		                    if (closestBase == null || d < closestDistance) 
-		                    {
-		                        closestBase = u2;
-		                        closestDistance = d;
-		                    }
-		                }
-		            }
-		            // Assign my harvesters to harvest materials
-		            if (closestResource != null && closestBase != null) 
-		            {
-		                AbstractAction aa = getAbstractAction(u);
-		                if (aa instanceof Harvest) 
-		                {
-		                    Harvest h_aa = (Harvest)aa;
-		                    if (h_aa.getTarget() != closestResource || h_aa.getBase()!=closestBase) harvest(u, closestResource, closestBase);
-		                } 
-		                else 
-		                {
-		                    harvest(u, closestResource, closestBase);
-		                }
-		            }
-	            }
-	        }
+    		WorkerAttack(attackers.get(i), gs);
     	}
-    	
-    	// Check if there are attackers in the team
-    	if(!attackers.isEmpty())
+    	if (nBarracks == barracksToBuild)
     	{
-    		for (Unit u : attackers)
+    		for (int i = nextBuilder; i < builders.size(); i++)
     		{
-    			// Get the closest enemy
-	    		Unit closestEnemy = GetClosestEnemy(pgs, p, u);
-	        	if(closestEnemy != null)
-	        	{
-	        		// Check if the unit can go towards the enemy
-		        	boolean doesPathExists = DoesPathExists(closestEnemy, u, gs);
-	        		System.out.println(doesPathExists);
-	        		// If can - attack
-	        		if (doesPathExists == true)
-	        		{
-	        			attack(u, closestEnemy);
-	        		}
-	        		// Otherwise - stack together
-	        		else
-	        		{
-	        			Stack(gs, attackers);
-	        		}
-        		}
+    			WorkerAttack(builders.get(i), gs);
     		}
     	}
+    	if (!blockedAttackers.isEmpty())
+    	{
+    		// Stack together the ones that can't reach an enemy
+    		Stack(gs, blockedAttackers);
+    	}
         
     	// Attack with all workers if the enemy is close enough - basically defensive counter-attack
         // Check if we have at least one barracks and enough resources to train something
     	if (nBarracks > 0 && p.getResources() >= 2)
     	{
     		// Loop through every worker
-	        for (Unit u : workers)
+	        for (int i = 0; i < workers.size(); i++)
 	        {
-	        	// Get the closest enemy
-	        	Unit closestEnemy = GetClosestEnemy(pgs, p, u);
-	        	boolean doesPathExists = DoesPathExists(closestEnemy, u, gs);
-	        	if (closestEnemy != null)
+	        	Unit u = workers.get(i);
+	        	// If the closest enemy is close enough by walking distance, or any enemy could hit the worker soon - attack!
+	        	Unit enemy = distanceField.getNearestEnemy(u);
+	        	if (enemy != null && (distanceField.getDistance(u) < defenseRadius || influence.getThreat(u.getX(), u.getY()) > 0))
 	        	{
-	        		int distance = Math.abs(closestEnemy.getX() - u.getX()) + Math.abs(closestEnemy.getY() - u.getY());
-	        	
-		        	// If true and the close enough - attack!
-		        	if(doesPathExists)
-		        	{
-			        	if (distance < 5)
-			        	{
-			        		attack(u, closestEnemy);
-			        	}
-		        	}
+	        		attack(u, enemy);
 	        	}
 	        }
     	}
     }
     
+    /**
+     * Attacks the closest enemy the worker can walk to, or leaves it to stack with the others if there is none
+     * @param u Worker
+     * @param gs Game State
+     */
+    private void WorkerAttack(Unit u, GameState gs)
+    {
+    	if(!enemyGrid.isEmpty())
+    	{
+    		// Get the closest enemy the unit can walk to
+    		Unit closestEnemy = GetClosestReachableEnemy(u, gs);
+    		// If there is one - attack
+    		if (closestEnemy != null)
+    		{
+    			attack(u, closestEnemy);
+    		}
+    		// Otherwise - stack together with the others that can't reach an enemy
+    		else
+    		{
+    			blockedAttackers.add(u);
+    		}
+    	}
+    }
+    
     /**
      * Moves units to their positions stacking together if there is no path to attack the unit
      * @param gs Game State
@@ -663,46 +1709,58 @@ public class AgileBot extends AbstractionLayerAI {
      */
     public void Stack(GameState gs, List<Unit> units)
     {
+    	for(int i = 1; i <= units.size(); i++)
+    	{
+    		StackUnit(gs, units.get(i-1), i);
+    	}
+    }
+    
+    /**
+     * Moves a unit to its group's rally cells. With flow field stacking the whole group shares one field,
+     * otherwise the unit gets a move to the i-th rally cell of its group
+     * @param gs Game State
+     * @param u Unit
+     * @param i Position of the unit in its group, from 1
+     */
+    public void StackUnit(GameState gs, Unit u, int i)
+    {
+    	long start = profiler.start();
     	// Get the physical game state
     	PhysicalGameState pgs = gs.getPhysicalGameState();
-    	// If we are on top side - stack my units at the bottom
-    	if(isOnTop)
+    	// Every group lines up on its own column of the map analysis -
+    	// at the bottom if we are on top side, at the top if we are on the bottom side
+    	int group = -1;
+    	if(u.getType() == archer)
+    	{
+    		group = MapAnalysis.RALLY_RANGED;
+    	}
+    	else if (u.getType() == worker)
+    	{
+    		group = MapAnalysis.RALLY_WORKER;
+    	}
+    	else if (u.getType() == light || u.getType() == heavy)
+    	{
+    		group = MapAnalysis.RALLY_MELEE;
+    	}
+    	if (group >= 0 && flowFieldStacking)
     	{
-    		for(int i = 1; i <= units.size(); i++)
+    		// Units already on their way keep following the field
+    		AbstractAction aa = getAbstractAction(u);
+    		if (!(aa instanceof FollowField) || ((FollowField)aa).getField() != rallyFields[group])
     		{
-    			if(units.get(i-1).getType() == archer)
-    			{
-    				move(units.get(i-1), 3, pgs.getHeight() - i);
-    			}
-    			else if (units.get(i-1).getType() == worker)
-    			{
-    				move(units.get(i-1), 1, pgs.getHeight() - i);
-    			}
-    			else if (units.get(i-1).getType() == light || units.get(i-1).getType() == heavy)
-    			{
-    				move(units.get(i-1), 2, pgs.getHeight() - i);
-    			}
+    			follow(u, rallyFields[group]);
     		}
     	}
-    	// If we are on the bottom side - stack my units at the top
-    	else
+    	else if (group >= 0)
     	{
-    		for(int i = 1; i <= units.size(); i++)
+    		int[] cells = analysis.getRallyCells(snapshot.getPlayerID(), group);
+    		if (cells.length > 0)
     		{
-    			if(units.get(i-1).getType() == archer)
-    			{
-    				move(units.get(i-1), pgs.getWidth() - 4, i - 1);
-    			}
-    			else if (units.get(i-1).getType() == worker)
-    			{
-    				move(units.get(i-1), pgs.getWidth() - 2, i - 1);
-    			}
-    			else if (units.get(i-1).getType() == light || units.get(i-1).getType() == heavy)
-    			{
-    				move(units.get(i-1), pgs.getWidth() - 3, i - 1);
-    			}
+    			int cell = cells[Math.min(i - 1, cells.length - 1)];
+    			move(u, cell % pgs.getWidth(), cell / pgs.getWidth());
     		}
     	}
+    	profiler.stop(TickProfiler.Section.STACK, start);
     }
     
     /**
@@ -714,18 +1772,17 @@ public class AgileBot extends AbstractionLayerAI {
      */
     public boolean DoesPathExists(Unit closestEnemy, Unit u, GameState gs)
     {
-    	boolean doesPathExists = false;
-    	if (closestEnemy != null)
+    	if (closestEnemy == null)
+    	{
+    		return false;
+    	}
+    	// The component labels answer straight away if they were computed for this game state
+    	if (reachability.isCurrent(gs))
     	{
-	    	if(pf.pathExists(u, (closestEnemy.getY())*(closestEnemy.getX() + 1), gs, null) || 
-	    			pf.pathExists(u, (closestEnemy.getY())*(closestEnemy.getX() - 1), gs, null) || 
-	    			pf.pathExists(u, (closestEnemy.getY() + 1)*(closestEnemy.getX()), gs, null) || 
-	    			pf.pathExists(u, (closestEnemy.getY() - 1)*(closestEnemy.getX()), gs, null))
-	    	{
-	    		doesPathExists = true;
-	    	}
+    		return reachability.canReachAdjacent(u, closestEnemy);
     	}
-    	return doesPathExists;
+    	// Otherwise ask the path finder for a path to any cell next to the enemy
+    	return pf.pathToPositionInRangeExists(u, closestEnemy.getPosition(gs.getPhysicalGameState()), 1, gs, null);
     }
     
     /**
@@ -735,15 +1792,12 @@ public class AgileBot extends AbstractionLayerAI {
      */
     public int mapMultiplier(PhysicalGameState pgs)
     {
-    	int multiplier = 0;
-    	
-    	// Increment the multiplier depending on the map size
-    	for (int height = 8; height < pgs.getHeight(); height += 8)
+    	// Worked out once with the rest of the map analysis
+    	if (analysis != null && analysis.fits(pgs))
     	{
-    		multiplier++;
+    		return analysis.getMultiplier();
     	}
-    	
-    	return multiplier;
+    	return MapAnalysis.multiplierFor(pgs.getHeight());
     }
     
     @Override
@@ -751,9 +1805,44 @@ public class AgileBot extends AbstractionLayerAI {
     {
         List<ParameterSpecification> parameters = new ArrayList<>();
         
-        parameters.add(new ParameterSpecification("PathFinding", PathFinding.class, new AStarPathFinding()));
+        // Off unless set, as the abstraction layer leaves it
+        parameters.add(new ParameterSpecification("TimeBudget", int.class, -1));
+        ParameterSpecification pathFinding = new ParameterSpecification("PathFinding", PathFinding.class, new AStarPathFinding());
+        pathFinding.addPossibleValue(new AStarPathFinding());
+        pathFinding.addPossibleValue(new HierarchicalPathFinding());
+        pathFinding.addPossibleValue(new IncrementalPathFinding());
+        pathFinding.addPossibleValue(new CachingPathFinding());
+        parameters.add(pathFinding);
+        parameters.add(new ParameterSpecification("ReplanLimit", int.class, 16));
+        parameters.add(new ParameterSpecification("ReplanRadius", int.class, 4));
+        parameters.add(new ParameterSpecification("FlowFieldStacking", boolean.class, true));
+        parameters.add(new ParameterSpecification("Parallelism", int.class, 1));
+        parameters.add(new ParameterSpecification("SpeculativePlanning", boolean.class, false));
+        parameters.add(new ParameterSpecification("CombatSimulation", boolean.class, false));
+        parameters.add(new ParameterSpecification("ProductionTable", String.class, ""));
+        // Set after the production table, which they change. The defaults are the values of the table in use
+        parameters.add(ranged(new ParameterSpecification("WorkerCount", int.class, production.getWorkersPerBase()), 1, 12));
+        parameters.add(ranged(new ParameterSpecification("WorkersPerMapStep", int.class, production.getWorkersPerStep()), 0, 6));
+        parameters.add(ranged(new ParameterSpecification("HarvestersNeeded", int.class, 2), 0, 6));
+        parameters.add(ranged(new ParameterSpecification("ResourceRadius", int.class, 5), 2, 12));
+        parameters.add(ranged(new ParameterSpecification("DefenseRadius", int.class, 5), 0, 12));
+        parameters.add(ranged(new ParameterSpecification("RangedAttackDistance", int.class, 3), 1, 6));
+        parameters.add(ranged(new ParameterSpecification("FallbackLimit", int.class, production.getFallbackLimit()), 0, 10));
+        for (int i = 0; i < Math.min(TUNED_COUNTERS, production.size()); i++)
+        {
+        	parameters.add(ranged(new ParameterSpecification("Counter" + i + "Needed", int.class, getCounterNeeded(i)), 0, 8));
+        	parameters.add(ranged(new ParameterSpecification("Counter" + i + "Cancelled", int.class, getCounterCancelled(i)), 0, 6));
+        }
+        parameters.add(new ParameterSpecification("TraceFile", String.class, ""));
+        parameters.add(new ParameterSpecification("WarmUp", boolean.class, false));
         
         return parameters;
     }
     
+    private static ParameterSpecification ranged(ParameterSpecification ps, int min, int max)
+    {
+    	ps.setRange(min, max);
+    	return ps;
+    }
+    
 }
\ No newline at end of file
@@ -0,0 +1,95 @@
+package bot;
+
+/**
+ * Minimum cost assignment of rows to columns with the Hungarian algorithm, in O(n^2 m) for n rows and m columns
+ */
+public class Assignment
+{
+	private static final int INF = Integer.MAX_VALUE / 2;
+
+	/**
+	 * Gives every row its own column so that the summed cost is the lowest possible
+	 * @param cost Cost of giving the column to the row. Needs at least as many columns as rows
+	 * @param n Number of rows to assign
+	 * @param m Number of columns
+	 * @param result Column of every row, filled in
+	 * @return The summed cost
+	 */
+	public static int solve(int[][] cost, int n, int m, int[] result)
+	{
+		// Potentials of the rows and the columns, and the row holding every column. Index 0 is a dummy
+		int[] u = new int[n + 1];
+		int[] v = new int[m + 1];
+		int[] row = new int[m + 1];
+		int[] way = new int[m + 1];
+		int[] minv = new int[m + 1];
+		boolean[] used = new boolean[m + 1];
+		for (int i = 1; i <= n; i++)
+		{
+			// Add row i, growing alternating paths from the dummy column until a free column is found
+			row[0] = i;
+			int j0 = 0;
+			for (int j = 0; j <= m; j++)
+			{
+				minv[j] = INF;
+				used[j] = false;
+			}
+			do
+			{
+				used[j0] = true;
+				int i0 = row[j0];
+				int delta = INF;
+				int j1 = 0;
+				for (int j = 1; j <= m; j++)
+				{
+					if (!used[j])
+					{
+						int reduced = cost[i0 - 1][j - 1] - u[i0] - v[j];
+						if (reduced < minv[j])
+						{
+							minv[j] = reduced;
+							way[j] = j0;
+						}
+						if (minv[j] < delta)
+						{
+							delta = minv[j];
+							j1 = j;
+						}
+					}
+				}
+				for (int j = 0; j <= m; j++)
+				{
+					if (used[j])
+					{
+						u[row[j]] += delta;
+						v[j] -= delta;
+					}
+					else
+					{
+						minv[j] -= delta;
+					}
+				}
+				j0 = j1;
+			}
+			while (row[j0] != 0);
+			// Flip the path
+			do
+			{
+				int j1 = way[j0];
+				row[j0] = row[j1];
+				j0 = j1;
+			}
+			while (j0 != 0);
+		}
+		int total = 0;
+		for (int j = 1; j <= m; j++)
+		{
+			if (row[j] != 0)
+			{
+				result[row[j] - 1] = j - 1;
+				total += cost[row[j] - 1][j - 1];
+			}
+		}
+		return total;
+	}
+}
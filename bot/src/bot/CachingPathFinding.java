@@ -0,0 +1,416 @@
+package bot;
+
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.PathFinding;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import rts.*;
+import rts.units.Unit;
+
+/**
+ * Passes queries to another path finder and remembers the answers in a bounded least recently used cache.
+ * Answers are keyed by the start cell, the target and the range, so units standing on the same cell share them,
+ * and are thrown away when a wall, building or resource appears or disappears.
+ * Moving units are not part of the key. A remembered step is only handed out again if its cell is still free,
+ * and a "no path" answer is only kept for the tick it was found in, as moving units may have caused it
+ */
+public class CachingPathFinding extends PathFinding
+{
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	// Kinds of query
+	private static final int PATH_EXISTS = 0;
+	private static final int PATH_IN_RANGE_EXISTS = 1;
+	private static final int FIND_PATH = 2;
+	private static final int FIND_PATH_IN_RANGE = 3;
+	private static final int FIND_PATH_ADJACENT = 4;
+	private static final int DIST_IN_RANGE = 5;
+
+	// Largest range that fits in a key
+	private static final int MAX_RANGE = 255;
+
+	/**
+	 * A remembered answer
+	 */
+	private static class Answer
+	{
+		// 1 or 0 for the existence queries, the distance, or the direction of the step
+		int value;
+		// False for "no path" answers
+		boolean positive;
+		// Tick the answer was found in
+		int time;
+	}
+
+	private final PathFinding pf;
+	private final int capacity;
+	private final LinkedHashMap<Long, Answer> cache;
+
+	// Obstacles the cache was filled for
+	private PhysicalGameState pgs;
+	private int width;
+	private int height;
+	private int time = -1;
+	private long obstacleHash;
+	private int version;
+
+	private long hits;
+	private long misses;
+	private long invalidations;
+	private long evictions;
+
+	public CachingPathFinding()
+	{
+		this(new AStarPathFinding(), DEFAULT_CAPACITY);
+	}
+
+	public CachingPathFinding(PathFinding pf)
+	{
+		this(pf, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param pf Path finder doing the work
+	 * @param capacity Most answers remembered
+	 */
+	public CachingPathFinding(PathFinding pf, int capacity)
+	{
+		this.pf = pf;
+		this.capacity = capacity;
+		this.cache = new LinkedHashMap<Long, Answer>(capacity * 4 / 3 + 1, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Answer> eldest)
+			{
+				if (size() > CachingPathFinding.this.capacity)
+				{
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @return The path finder doing the work
+	 */
+	public PathFinding getPathFinding()
+	{
+		return pf;
+	}
+
+	/**
+	 * @return Most answers remembered
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	@Override
+	public boolean pathExists(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		// Reserved positions are not part of the key
+		if (ru != null)
+		{
+			return pf.pathExists(start, targetpos, gs, ru);
+		}
+		long key = key(PATH_EXISTS, start, targetpos, 0, gs);
+		Answer e = lookup(key, gs);
+		if (e != null)
+		{
+			return e.value == 1;
+		}
+		boolean exists = pf.pathExists(start, targetpos, gs, ru);
+		store(key, exists ? 1 : 0, exists, gs);
+		return exists;
+	}
+
+	@Override
+	public boolean pathToPositionInRangeExists(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		if (ru != null || range > MAX_RANGE)
+		{
+			return pf.pathToPositionInRangeExists(start, targetpos, range, gs, ru);
+		}
+		long key = key(PATH_IN_RANGE_EXISTS, start, targetpos, range, gs);
+		Answer e = lookup(key, gs);
+		if (e != null)
+		{
+			return e.value == 1;
+		}
+		boolean exists = pf.pathToPositionInRangeExists(start, targetpos, range, gs, ru);
+		store(key, exists ? 1 : 0, exists, gs);
+		return exists;
+	}
+
+	@Override
+	public UnitAction findPath(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		long key = key(FIND_PATH, start, targetpos, 0, gs);
+		Answer e = lookupStep(key, start, gs, ru);
+		if (e != null)
+		{
+			return e.positive ? new UnitAction(UnitAction.TYPE_MOVE, e.value) : null;
+		}
+		return storeStep(key, pf.findPath(start, targetpos, gs, ru), gs);
+	}
+
+	@Override
+	public UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		if (range > MAX_RANGE)
+		{
+			return pf.findPathToPositionInRange(start, targetpos, range, gs, ru);
+		}
+		long key = key(FIND_PATH_IN_RANGE, start, targetpos, range, gs);
+		Answer e = lookupStep(key, start, gs, ru);
+		if (e != null)
+		{
+			return e.positive ? new UnitAction(UnitAction.TYPE_MOVE, e.value) : null;
+		}
+		return storeStep(key, pf.findPathToPositionInRange(start, targetpos, range, gs, ru), gs);
+	}
+
+	@Override
+	public UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		long key = key(FIND_PATH_ADJACENT, start, targetpos, 0, gs);
+		Answer e = lookupStep(key, start, gs, ru);
+		if (e != null)
+		{
+			return e.positive ? new UnitAction(UnitAction.TYPE_MOVE, e.value) : null;
+		}
+		return storeStep(key, pf.findPathToAdjacentPosition(start, targetpos, gs, ru), gs);
+	}
+
+	@Override
+	public int findDistToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		if (ru != null || range > MAX_RANGE)
+		{
+			return pf.findDistToPositionInRange(start, targetpos, range, gs, ru);
+		}
+		long key = key(DIST_IN_RANGE, start, targetpos, range, gs);
+		Answer e = lookup(key, gs);
+		if (e != null)
+		{
+			return e.value;
+		}
+		int dist = pf.findDistToPositionInRange(start, targetpos, range, gs, ru);
+		store(key, dist, dist >= 0, gs);
+		return dist;
+	}
+
+	/**
+	 * Packs the query into a key, after throwing the cache away if the obstacles changed
+	 */
+	private long key(int kind, Unit start, int targetpos, int range, GameState gs)
+	{
+		checkObstacles(gs);
+		long startpos = start.getX() + start.getY() * width;
+		return ((long)kind << 56) | ((long)range << 48) | (startpos << 24) | (targetpos & 0xffffffL);
+	}
+
+	/**
+	 * @return The answer if it is remembered and still holds, null otherwise
+	 */
+	private Answer lookup(long key, GameState gs)
+	{
+		Answer e = cache.get(key);
+		// Negative answers only hold for the tick they were found in
+		if (e != null && (e.positive || e.time == gs.getTime()))
+		{
+			hits++;
+			return e;
+		}
+		misses++;
+		return null;
+	}
+
+	private void store(long key, int value, boolean positive, GameState gs)
+	{
+		Answer e = new Answer();
+		// Keep the positive answers for as long as the obstacles stay, the negative ones for this tick
+		e.value = value;
+		e.positive = positive;
+		e.time = gs.getTime();
+		cache.put(key, e);
+	}
+
+	/**
+	 * @return The remembered step if its cell is still free, or the remembered "no path" of this tick, null otherwise
+	 */
+	private Answer lookupStep(long key, Unit start, GameState gs, ResourceUsage ru)
+	{
+		Answer e = cache.get(key);
+		if (e != null && !e.positive && e.time == gs.getTime())
+		{
+			hits++;
+			return e;
+		}
+		if (e != null && e.positive)
+		{
+			int x = start.getX() + UnitAction.DIRECTION_OFFSET_X[e.value];
+			int y = start.getY() + UnitAction.DIRECTION_OFFSET_Y[e.value];
+			if (x >= 0 && y >= 0 && x < width && y < height && gs.free(x, y) && !isReserved(x + y * width, ru))
+			{
+				hits++;
+				return e;
+			}
+		}
+		misses++;
+		return null;
+	}
+
+	private UnitAction storeStep(long key, UnitAction step, GameState gs)
+	{
+		Answer e = new Answer();
+		e.positive = step != null && step.getType() == UnitAction.TYPE_MOVE;
+		e.value = e.positive ? step.getDirection() : UnitAction.DIRECTION_NONE;
+		e.time = gs.getTime();
+		cache.put(key, e);
+		return step;
+	}
+
+	private boolean isReserved(int pos, ResourceUsage ru)
+	{
+		if (ru == null)
+		{
+			return false;
+		}
+		List<Integer> used = ru.getPositionsUsed();
+		return used != null && used.contains(pos);
+	}
+
+	/**
+	 * Throws the cache away when walls, buildings or resources changed. Checked once per tick
+	 */
+	private void checkObstacles(GameState gs)
+	{
+		PhysicalGameState current = gs.getPhysicalGameState();
+		if (current == pgs && gs.getTime() == time)
+		{
+			return;
+		}
+		time = gs.getTime();
+		long h = hashObstacles(current);
+		if (current.getWidth() != width || current.getHeight() != height || h != obstacleHash)
+		{
+			if (!cache.isEmpty())
+			{
+				invalidations++;
+			}
+			cache.clear();
+			version++;
+			width = current.getWidth();
+			height = current.getHeight();
+			obstacleHash = h;
+		}
+		pgs = current;
+	}
+
+	/**
+	 * Order independent hash of the walls and of the units that cannot move
+	 */
+	private static long hashObstacles(PhysicalGameState pgs)
+	{
+		long h = 0;
+		int width = pgs.getWidth();
+		for (int y = 0; y < pgs.getHeight(); y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				if (pgs.getTerrain(x, y) == PhysicalGameState.TERRAIN_WALL)
+				{
+					h += mix(x + y * width);
+				}
+			}
+		}
+		for (Unit u : pgs.getUnits())
+		{
+			if (!u.getType().canMove)
+			{
+				h += mix(((long)u.getType().ID << 32) | (0x80000000L + u.getX() + u.getY() * width));
+			}
+		}
+		return h;
+	}
+
+	private static long mix(long v)
+	{
+		// SplitMix64 finalizer
+		v = (v ^ (v >>> 30)) * 0xbf58476d1ce4e5b9L;
+		v = (v ^ (v >>> 27)) * 0x94d049bb133111ebL;
+		return v ^ (v >>> 31);
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return Number of times the cache was thrown away because the obstacles changed
+	 */
+	public long getInvalidations()
+	{
+		return invalidations;
+	}
+
+	/**
+	 * @return Number of answers dropped to stay within the capacity
+	 */
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * @return Number that changes every time the cache is thrown away
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return Fraction of the queries answered from the cache
+	 */
+	public double getHitRate()
+	{
+		long total = hits + misses;
+		return total == 0 ? 0 : (double)hits / total;
+	}
+
+	public void clearCounters()
+	{
+		hits = 0;
+		misses = 0;
+		invalidations = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * @return One line with the counters
+	 */
+	public String report()
+	{
+		return String.format(Locale.ROOT, "path cache: %d hits, %d misses (%.1f%% hit rate), %d invalidations, %d evictions, %d entries\n",
+				hits, misses, 100 * getHitRate(), invalidations, evictions, cache.size());
+	}
+
+	@Override
+	public String toString()
+	{
+		return "CachingPathFinding(" + pf + ")";
+	}
+}
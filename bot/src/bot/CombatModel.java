@@ -0,0 +1,530 @@
+package bot;
+
+import java.util.ArrayList;
+import java.util.List;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.UnitAction;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+import rts.units.UnitType;
+
+/**
+ * Forward model of a local fight, far cheaper than copying the GameState and calling cycle.
+ * The units around one of mine are loaded into primitive arrays - position, hit points, damage, range, action times
+ * and the action each one is executing - and the fight is played out with a simple policy: attack the closest enemy in range,
+ * otherwise step towards the closest enemy. Actions take effect when they finish, like in the game, and time jumps
+ * from one finished action to the next.
+ * A rollout allocates nothing and a fight of a few units plays out in about a microsecond
+ */
+public class CombatModel
+{
+	// Most units in one fight. The closest ones are kept
+	public static final int MAX_UNITS = 16;
+
+	// What a unit is doing
+	private static final int IDLE = 0;
+	private static final int MOVE = 1;
+	private static final int ATTACK = 2;
+	// An action of the game the model does not play out, like harvesting or producing
+	private static final int OTHER = 3;
+
+	private PhysicalGameState pgs;
+	private int n;
+	private int player;
+	private int startTime;
+	private Unit[] units = new Unit[MAX_UNITS];
+
+	// The units as loaded
+	private int[] x0 = new int[MAX_UNITS];
+	private int[] y0 = new int[MAX_UNITS];
+	private int[] hp0 = new int[MAX_UNITS];
+	private int[] action0 = new int[MAX_UNITS];
+	private int[] until0 = new int[MAX_UNITS];
+	private int[] targetX0 = new int[MAX_UNITS];
+	private int[] targetY0 = new int[MAX_UNITS];
+
+	// Fixed stats of the units, from their types
+	private int[] owner = new int[MAX_UNITS];
+	private int[] maxHp = new int[MAX_UNITS];
+	private int[] damage = new int[MAX_UNITS];
+	private int[] rangeSquared = new int[MAX_UNITS];
+	private int[] attackTime = new int[MAX_UNITS];
+	private int[] moveTime = new int[MAX_UNITS];
+	private int[] cost = new int[MAX_UNITS];
+	private boolean[] canMove = new boolean[MAX_UNITS];
+	private boolean[] canAttack = new boolean[MAX_UNITS];
+
+	// The units during a rollout
+	private int[] x = new int[MAX_UNITS];
+	private int[] y = new int[MAX_UNITS];
+	private int[] hp = new int[MAX_UNITS];
+	private int[] action = new int[MAX_UNITS];
+	private int[] until = new int[MAX_UNITS];
+	private int[] targetX = new int[MAX_UNITS];
+	private int[] targetY = new int[MAX_UNITS];
+
+	// Orders that override the policy: a unit to always go for, or running from the enemy
+	private int[] focus = new int[MAX_UNITS];
+	private boolean[] retreat = new boolean[MAX_UNITS];
+
+	// Scratch list for the grid queries
+	private List<Unit> found = new ArrayList<Unit>();
+
+	/**
+	 * Loads the units around a unit of mine
+	 * @param self Unit the fight is played out for, always index 0
+	 * @param gs Game State
+	 * @param enemies Enemy units of the state
+	 * @param allies My units of the state
+	 * @param radius Manhattan distance from the unit within which units join the fight
+	 */
+	public void load(Unit self, GameState gs, UnitGrid enemies, UnitGrid allies, int radius)
+	{
+		found.clear();
+		found.add(self);
+		allies.withinRadius(self.getX(), self.getY(), radius, found);
+		enemies.withinRadius(self.getX(), self.getY(), radius, found);
+		// Self comes back from the allies query
+		for (int i = found.size() - 1; i > 0; i--)
+		{
+			if (found.get(i) == self)
+			{
+				found.remove(i);
+			}
+		}
+		// Move the closest units to the front when there are too many. Ties keep the order of the queries
+		for (int k = 1; k < MAX_UNITS && found.size() > MAX_UNITS; k++)
+		{
+			int closest = k;
+			for (int i = k + 1; i < found.size(); i++)
+			{
+				if (distance(found.get(i), self) < distance(found.get(closest), self))
+				{
+					closest = i;
+				}
+			}
+			Unit u = found.get(closest);
+			found.set(closest, found.get(k));
+			found.set(k, u);
+		}
+		clear(gs);
+		player = self.getPlayer();
+		for (int i = 0; i < found.size() && n < MAX_UNITS; i++)
+		{
+			add(found.get(i), gs);
+		}
+		found.clear();
+	}
+
+	private static int distance(Unit a, Unit b)
+	{
+		return Math.abs(a.getX() - b.getX()) + Math.abs(a.getY() - b.getY());
+	}
+
+	/**
+	 * Forgets every unit
+	 * @param gs Game State the units will come from
+	 */
+	public void clear(GameState gs)
+	{
+		pgs = gs.getPhysicalGameState();
+		startTime = gs.getTime();
+		for (int i = 0; i < n; i++)
+		{
+			units[i] = null;
+		}
+		n = 0;
+	}
+
+	/**
+	 * Adds a unit with the action it is executing
+	 * @param u Unit
+	 * @param gs Game State
+	 * @return Index of the unit, or -1 if the model is full
+	 */
+	public int add(Unit u, GameState gs)
+	{
+		if (n == MAX_UNITS)
+		{
+			return -1;
+		}
+		int i = n++;
+		UnitType type = u.getType();
+		units[i] = u;
+		x0[i] = u.getX();
+		y0[i] = u.getY();
+		hp0[i] = u.getHitPoints();
+		owner[i] = u.getPlayer();
+		maxHp[i] = u.getMaxHitPoints();
+		// Expected damage when it is random
+		damage[i] = (type.minDamage + type.maxDamage) / 2;
+		rangeSquared[i] = type.attackRange * type.attackRange;
+		attackTime[i] = type.attackTime;
+		moveTime[i] = type.moveTime;
+		cost[i] = Math.max(1, type.cost);
+		canMove[i] = type.canMove;
+		canAttack[i] = type.canAttack;
+		focus[i] = -1;
+		retreat[i] = false;
+
+		action0[i] = IDLE;
+		until0[i] = startTime;
+		UnitActionAssignment uaa = gs.getActionAssignment(u);
+		if (uaa != null)
+		{
+			UnitAction a = uaa.action;
+			until0[i] = uaa.time + a.ETA(u);
+			if (a.getType() == UnitAction.TYPE_MOVE)
+			{
+				action0[i] = MOVE;
+				targetX0[i] = u.getX() + UnitAction.DIRECTION_OFFSET_X[a.getDirection()];
+				targetY0[i] = u.getY() + UnitAction.DIRECTION_OFFSET_Y[a.getDirection()];
+			}
+			else if (a.getType() == UnitAction.TYPE_ATTACK_LOCATION)
+			{
+				action0[i] = ATTACK;
+				targetX0[i] = a.getLocationX();
+				targetY0[i] = a.getLocationY();
+			}
+			else
+			{
+				action0[i] = OTHER;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @return Number of units in the fight
+	 */
+	public int size()
+	{
+		return n;
+	}
+
+	/**
+	 * @param i Index of a unit
+	 * @return The unit it was loaded from
+	 */
+	public Unit getUnit(int i)
+	{
+		return units[i];
+	}
+
+	/**
+	 * @param i Index of a unit
+	 * @return True if the unit belongs to the enemy of the unit at index 0
+	 */
+	public boolean isEnemy(int i)
+	{
+		return owner[i] >= 0 && owner[i] != player;
+	}
+
+	/**
+	 * Makes a unit go for one enemy whenever it can reach it, instead of the closest one
+	 * @param i Index of the unit
+	 * @param target Index of the enemy, -1 for the closest one
+	 */
+	public void setFocus(int i, int target)
+	{
+		focus[i] = target;
+	}
+
+	/**
+	 * Makes a unit step away from the enemy instead of fighting
+	 * @param i Index of the unit
+	 * @param enabled True to retreat
+	 */
+	public void setRetreat(int i, boolean enabled)
+	{
+		retreat[i] = enabled;
+	}
+
+	/**
+	 * Plays the fight out from the loaded state
+	 * @param horizon Number of cycles to play
+	 * @return Value left to the side of the unit at index 0 minus the value left to the enemy.
+	 * A unit is worth its cost, scaled by the share of its hit points left, in hundredths
+	 */
+	public int rollout(int horizon)
+	{
+		for (int i = 0; i < n; i++)
+		{
+			x[i] = x0[i];
+			y[i] = y0[i];
+			hp[i] = hp0[i];
+			action[i] = action0[i];
+			until[i] = until0[i];
+			targetX[i] = targetX0[i];
+			targetY[i] = targetY0[i];
+		}
+		int end = startTime + horizon;
+		int time = startTime;
+		while (true)
+		{
+			// Units without an action pick one, in order
+			for (int i = 0; i < n; i++)
+			{
+				if (hp[i] > 0 && until[i] <= time)
+				{
+					act(i, time);
+				}
+			}
+			// Jump to the next action to finish
+			int next = Integer.MAX_VALUE;
+			for (int i = 0; i < n; i++)
+			{
+				if (hp[i] > 0 && action[i] != IDLE && until[i] < next)
+				{
+					next = until[i];
+				}
+			}
+			if (next > end)
+			{
+				break;
+			}
+			time = next;
+			// Every action finishing now takes effect, even the ones of units killed by an earlier one
+			for (int i = 0; i < n; i++)
+			{
+				if (action[i] != IDLE && until[i] == time)
+				{
+					finish(i, time);
+				}
+			}
+		}
+		return score();
+	}
+
+	/**
+	 * Value of the side of the unit at index 0 minus the value of the enemy, after a rollout
+	 */
+	public int score()
+	{
+		int value = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (hp[i] <= 0 || owner[i] < 0)
+			{
+				continue;
+			}
+			int v = cost[i] * 100 * hp[i] / maxHp[i];
+			value += owner[i] == player ? v : -v;
+		}
+		return value;
+	}
+
+	/**
+	 * @param i Index of a unit
+	 * @return Its hit points at the end of the last rollout
+	 */
+	public int getHitPoints(int i)
+	{
+		return hp[i];
+	}
+
+	/**
+	 * @param i Index of a unit
+	 * @return Its position at the end of the last rollout
+	 */
+	public int getX(int i)
+	{
+		return x[i];
+	}
+
+	public int getY(int i)
+	{
+		return y[i];
+	}
+
+	/**
+	 * Applies the action of a unit that finishes now
+	 */
+	private void finish(int i, int time)
+	{
+		if (action[i] == MOVE)
+		{
+			x[i] = targetX[i];
+			y[i] = targetY[i];
+		}
+		else if (action[i] == ATTACK)
+		{
+			// The attack hits whoever stands on the cell now
+			int j = unitAt(targetX[i], targetY[i]);
+			if (j >= 0)
+			{
+				hp[j] -= damage[i];
+				// A dead unit loses the actions that would have finished later
+				if (hp[j] <= 0 && until[j] != time)
+				{
+					action[j] = IDLE;
+				}
+			}
+		}
+		action[i] = IDLE;
+	}
+
+	/**
+	 * Gives a unit without an action its next one
+	 */
+	private void act(int i, int time)
+	{
+		action[i] = IDLE;
+		if (owner[i] < 0)
+		{
+			return;
+		}
+		// Attack the focus if it is in range, otherwise the closest enemy in range
+		int target = -1;
+		if (canAttack[i] && !retreat[i])
+		{
+			int f = focus[i];
+			if (f >= 0 && hp[f] > 0 && inRange(i, f))
+			{
+				target = f;
+			}
+			else
+			{
+				int best = Integer.MAX_VALUE;
+				for (int j = 0; j < n; j++)
+				{
+					if (hp[j] > 0 && owner[j] >= 0 && owner[j] != owner[i] && inRange(i, j))
+					{
+						int d = distanceSquared(i, j);
+						if (d < best)
+						{
+							best = d;
+							target = j;
+						}
+					}
+				}
+			}
+		}
+		if (target >= 0)
+		{
+			action[i] = ATTACK;
+			until[i] = time + attackTime[i];
+			targetX[i] = x[target];
+			targetY[i] = y[target];
+			return;
+		}
+		if (!canMove[i])
+		{
+			return;
+		}
+		// Otherwise step towards the focus or the closest enemy, or away from it when retreating
+		int goal = focus[i] >= 0 && hp[focus[i]] > 0 ? focus[i] : closestEnemy(i);
+		if (goal < 0)
+		{
+			return;
+		}
+		int dx = x[goal] - x[i];
+		int dy = y[goal] - y[i];
+		if (retreat[i])
+		{
+			dx = -dx;
+			dy = -dy;
+		}
+		int sx = Integer.signum(dx);
+		int sy = Integer.signum(dy);
+		// The longer axis first
+		boolean moved = Math.abs(dx) >= Math.abs(dy)
+				? tryMove(i, sx, 0, time) || tryMove(i, 0, sy, time)
+				: tryMove(i, 0, sy, time) || tryMove(i, sx, 0, time);
+		// Cornered while retreating - step sideways
+		if (!moved && retreat[i] && sx == 0)
+		{
+			moved = tryMove(i, 1, 0, time) || tryMove(i, -1, 0, time);
+		}
+		if (!moved && retreat[i] && sy == 0 && !tryMove(i, 0, 1, time))
+		{
+			tryMove(i, 0, -1, time);
+		}
+	}
+
+	/**
+	 * Starts a move of one cell if the cell is free
+	 */
+	private boolean tryMove(int i, int dx, int dy, int time)
+	{
+		if (dx == 0 && dy == 0)
+		{
+			return false;
+		}
+		int nx = x[i] + dx;
+		int ny = y[i] + dy;
+		if (!isFree(nx, ny))
+		{
+			return false;
+		}
+		action[i] = MOVE;
+		until[i] = time + moveTime[i];
+		targetX[i] = nx;
+		targetY[i] = ny;
+		return true;
+	}
+
+	/**
+	 * @return True if the cell is on the map, not a wall, not taken and not the destination of a move
+	 */
+	private boolean isFree(int cx, int cy)
+	{
+		if (cx < 0 || cy < 0 || cx >= pgs.getWidth() || cy >= pgs.getHeight()
+				|| pgs.getTerrain(cx, cy) != PhysicalGameState.TERRAIN_NONE)
+		{
+			return false;
+		}
+		for (int j = 0; j < n; j++)
+		{
+			if (hp[j] > 0 && ((x[j] == cx && y[j] == cy) || (action[j] == MOVE && targetX[j] == cx && targetY[j] == cy)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int unitAt(int cx, int cy)
+	{
+		for (int j = 0; j < n; j++)
+		{
+			if (hp[j] > 0 && x[j] == cx && y[j] == cy)
+			{
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	private int closestEnemy(int i)
+	{
+		int best = Integer.MAX_VALUE;
+		int closest = -1;
+		for (int j = 0; j < n; j++)
+		{
+			if (hp[j] > 0 && owner[j] >= 0 && owner[j] != owner[i])
+			{
+				int d = Math.abs(x[j] - x[i]) + Math.abs(y[j] - y[i]);
+				if (d < best)
+				{
+					best = d;
+					closest = j;
+				}
+			}
+		}
+		return closest;
+	}
+
+	private boolean inRange(int i, int j)
+	{
+		return distanceSquared(i, j) <= rangeSquared[i];
+	}
+
+	private int distanceSquared(int i, int j)
+	{
+		int dx = x[j] - x[i];
+		int dy = y[j] - y[i];
+		return dx * dx + dy * dy;
+	}
+}
@@ -0,0 +1,76 @@
+package bot;
+
+import ai.abstraction.pathfinding.PathFinding;
+import rts.*;
+import rts.units.Unit;
+
+/**
+ * Passes every query to another path finder and counts it in a profiler
+ */
+public class CountingPathFinding extends PathFinding
+{
+	private final PathFinding pf;
+	private final TickProfiler profiler;
+
+	public CountingPathFinding(PathFinding pf, TickProfiler profiler)
+	{
+		this.pf = pf;
+		this.profiler = profiler;
+	}
+
+	/**
+	 * @return The path finder doing the work
+	 */
+	public PathFinding getPathFinding()
+	{
+		return pf;
+	}
+
+	@Override
+	public boolean pathExists(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		profiler.countPathQuery();
+		return pf.pathExists(start, targetpos, gs, ru);
+	}
+
+	@Override
+	public boolean pathToPositionInRangeExists(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		profiler.countPathQuery();
+		return pf.pathToPositionInRangeExists(start, targetpos, range, gs, ru);
+	}
+
+	@Override
+	public UnitAction findPath(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		profiler.countPathQuery();
+		return pf.findPath(start, targetpos, gs, ru);
+	}
+
+	@Override
+	public UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		profiler.countPathQuery();
+		return pf.findPathToPositionInRange(start, targetpos, range, gs, ru);
+	}
+
+	@Override
+	public UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		profiler.countPathQuery();
+		return pf.findPathToAdjacentPosition(start, targetpos, gs, ru);
+	}
+
+	@Override
+	public int findDistToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		profiler.countPathQuery();
+		return pf.findDistToPositionInRange(start, targetpos, range, gs, ru);
+	}
+
+	@Override
+	public String toString()
+	{
+		return pf.toString();
+	}
+}
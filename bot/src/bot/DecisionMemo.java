@@ -0,0 +1,296 @@
+package bot;
+
+import rts.units.Unit;
+
+/**
+ * Remembers the last decision taken for every unit, keyed by unit ID, so a unit only has to be planned again
+ * when something relevant changed around it or when its turn in the round-robin comes up.
+ * A decision is invalid once its target died, the unit lost hit points, an enemy came within the replan radius
+ * or a building was placed or destroyed.
+ * The decisions live in an open addressing table of unit IDs, and a unit keeps its Decision object for its whole life,
+ * so recording and checking decisions allocates nothing
+ */
+public class DecisionMemo
+{
+	public static final int ATTACK = 1;
+	public static final int STACK = 2;
+	// A step away from the enemy, which never holds for more than the step
+	public static final int KITE = 3;
+
+	/**
+	 * What a unit was told to do and what the world looked like at the time
+	 */
+	public static class Decision
+	{
+		public Unit unit;
+		public int kind;
+		public Unit target;
+		public int tick;
+		public int hitPoints;
+		public boolean enemyNear;
+		public int mapVersion;
+		// Tick the unit was last planned or kept its decision
+		int seen;
+		// Decision worked out ahead of time for the state of preparedTick
+		public int preparedKind;
+		public Unit preparedTarget;
+		public int preparedTick = -1;
+	}
+
+	// Marks a free slot of the table. Unit IDs are never negative
+	private static final long EMPTY = -1;
+
+	// Unit ID and decision of every slot, the length is a power of two
+	private long[] keys = newKeys(64);
+	private Decision[] values = new Decision[64];
+	private int size;
+	// Table the live decisions are moved to when pruning, swapped with the other one
+	private long[] spareKeys = newKeys(64);
+	private Decision[] spareValues = new Decision[64];
+
+	// Ticks between prunes, and the longest a unit can go unseen before it is forgotten
+	private static final int PRUNE_TICKS = 64;
+
+	private int time;
+	// Game time of the last prune
+	private int lastPrune;
+	private int mapVersion;
+	private int invalidations;
+	private int replans;
+
+	/**
+	 * Starts a new tick. Forgets the units that were not seen for a while
+	 * @param time Game time
+	 * @param mapVersion Version of the blocked cells
+	 */
+	public void beginTick(int time, int mapVersion)
+	{
+		this.time = time;
+		this.mapVersion = mapVersion;
+		// Counted from the last prune, so ticks the AI was not called on cannot skip it. Time going back is a new game
+		if (time - lastPrune >= PRUNE_TICKS || time < lastPrune)
+		{
+			lastPrune = time;
+			// Move the live decisions to the spare table
+			for (int i = 0; i < spareKeys.length; i++)
+			{
+				spareKeys[i] = EMPTY;
+				spareValues[i] = null;
+			}
+			int live = 0;
+			for (int i = 0; i < keys.length; i++)
+			{
+				Decision d = values[i];
+				if (keys[i] != EMPTY && d.unit.getHitPoints() > 0 && time - d.seen <= PRUNE_TICKS)
+				{
+					int slot = findSlot(spareKeys, keys[i]);
+					spareKeys[slot] = keys[i];
+					spareValues[slot] = d;
+					live++;
+				}
+			}
+			long[] k = keys;
+			keys = spareKeys;
+			spareKeys = k;
+			Decision[] v = values;
+			values = spareValues;
+			spareValues = v;
+			size = live;
+		}
+	}
+
+	private static long[] newKeys(int length)
+	{
+		long[] k = new long[length];
+		for (int i = 0; i < length; i++)
+		{
+			k[i] = EMPTY;
+		}
+		return k;
+	}
+
+	/**
+	 * @return The slot holding the ID, or the free slot it would go in
+	 */
+	private static int findSlot(long[] k, long id)
+	{
+		int mask = k.length - 1;
+		// Spread the IDs, which are handed out in order
+		int slot = (int)((id * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (k[slot] != EMPTY && k[slot] != id)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private Decision lookup(long id)
+	{
+		int slot = findSlot(keys, id);
+		return keys[slot] == EMPTY ? null : values[slot];
+	}
+
+	/**
+	 * Doubles the table when it is half full
+	 */
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		Decision[] oldValues = values;
+		keys = newKeys(oldKeys.length * 2);
+		values = new Decision[oldKeys.length * 2];
+		spareKeys = newKeys(oldKeys.length * 2);
+		spareValues = new Decision[oldKeys.length * 2];
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] != EMPTY)
+			{
+				int slot = findSlot(keys, oldKeys[i]);
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Records a decision for a unit
+	 * @param u Unit
+	 * @param kind ATTACK, STACK or KITE
+	 * @param target Unit to attack, or null
+	 * @param enemyNear True if an enemy is within the replan radius of the unit
+	 */
+	public void record(Unit u, int kind, Unit target, boolean enemyNear)
+	{
+		int slot = findSlot(keys, u.getID());
+		Decision d = values[slot];
+		if (keys[slot] == EMPTY)
+		{
+			d = new Decision();
+			keys[slot] = u.getID();
+			values[slot] = d;
+			size++;
+			if (size * 2 > keys.length)
+			{
+				grow();
+			}
+		}
+		d.unit = u;
+		d.kind = kind;
+		d.target = target;
+		d.tick = time;
+		d.seen = time;
+		d.hitPoints = u.getHitPoints();
+		d.enemyNear = enemyNear;
+		d.mapVersion = mapVersion;
+		replans++;
+	}
+
+	/**
+	 * Remembers a decision worked out ahead of time, to be used instead of deciding again at the tick it was made for.
+	 * It does not count as a decision of the unit
+	 * @param u Unit
+	 * @param kind Kind of the decision
+	 * @param target Target, or null
+	 * @param tick Tick the decision was made for
+	 */
+	public void prepare(Unit u, int kind, Unit target, int tick)
+	{
+		int slot = findSlot(keys, u.getID());
+		Decision d = values[slot];
+		if (keys[slot] == EMPTY)
+		{
+			d = new Decision();
+			d.unit = u;
+			d.seen = tick;
+			keys[slot] = u.getID();
+			values[slot] = d;
+			size++;
+			if (size * 2 > keys.length)
+			{
+				grow();
+			}
+		}
+		d.preparedKind = kind;
+		d.preparedTarget = target;
+		d.preparedTick = tick;
+	}
+
+	/**
+	 * @param u Unit
+	 * @param tick Current tick
+	 * @return The decision with the one prepared for this tick, or null if none was
+	 */
+	public Decision getPrepared(Unit u, int tick)
+	{
+		Decision d = lookup(u.getID());
+		return d != null && d.preparedTick == tick ? d : null;
+	}
+
+	/**
+	 * @param u Unit
+	 * @return Last decision of the unit, or null
+	 */
+	public Decision get(Unit u)
+	{
+		return lookup(u.getID());
+	}
+
+	/**
+	 * Checks whether the last decision of a unit still holds
+	 * @param u Unit
+	 * @param enemyNear True if an enemy is within the replan radius of the unit now
+	 * @return False if the unit has to be planned again
+	 */
+	public boolean isValid(Unit u, boolean enemyNear)
+	{
+		Decision d = lookup(u.getID());
+		boolean valid = d != null
+				&& d.kind != 0
+				&& d.kind != KITE
+				&& d.hitPoints == u.getHitPoints()
+				&& (d.kind != ATTACK || d.target.getHitPoints() > 0)
+				&& d.mapVersion == mapVersion
+				&& (d.enemyNear || !enemyNear);
+		if (d != null)
+		{
+			d.seen = time;
+			if (!valid)
+			{
+				invalidations++;
+			}
+		}
+		return valid;
+	}
+
+	/**
+	 * Forgets every decision
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < keys.length; i++)
+		{
+			keys[i] = EMPTY;
+			values[i] = null;
+		}
+		size = 0;
+		lastPrune = 0;
+		invalidations = 0;
+		replans = 0;
+	}
+
+	/**
+	 * @return Number of decisions thrown away by an event
+	 */
+	public int getInvalidations()
+	{
+		return invalidations;
+	}
+
+	/**
+	 * @return Number of decisions taken
+	 */
+	public int getReplans()
+	{
+		return replans;
+	}
+}
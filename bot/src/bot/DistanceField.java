@@ -0,0 +1,205 @@
+package bot;
+
+import java.util.List;
+import rts.*;
+import rts.units.Unit;
+
+/**
+ * Walking distance from every cell to the closest enemy unit, computed once per tick
+ * by a breadth first search seeded from all the enemy units at once.
+ * Any of my units can then read how far the closest enemy really is, which enemy that is
+ * and the next step towards it without a path search of its own
+ */
+public class DistanceField
+{
+	// Distance of a cell no enemy can be reached from
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private int width;
+	private int height;
+	private PhysicalGameState pgs;
+	private int time = -1;
+
+	// Walking distance to the closest enemy
+	private int[] distance = new int[0];
+	// Index of that enemy in the list the field was seeded from
+	private int[] source = new int[0];
+	private int[] queue = new int[0];
+
+	private Unit[] enemies = new Unit[0];
+
+	private int cellsVisited;
+
+	/**
+	 * Computes the field for this tick. Walls, buildings and resources block the way, moving units don't
+	 * @param snapshot Snapshot of this tick
+	 * @param reachability Blocked cells of this tick
+	 */
+	public void update(TickSnapshot snapshot, ReachabilityOracle reachability)
+	{
+		pgs = snapshot.getPhysicalGameState();
+		time = snapshot.getGameState().getTime();
+		width = pgs.getWidth();
+		height = pgs.getHeight();
+		int cells = width * height;
+		if (distance.length != cells)
+		{
+			distance = new int[cells];
+			source = new int[cells];
+			queue = new int[cells];
+		}
+		for (int c = 0; c < cells; c++)
+		{
+			distance[c] = UNREACHABLE;
+		}
+
+		List<Unit> enemyUnits = snapshot.getEnemyUnits();
+		if (enemies.length < enemyUnits.size())
+		{
+			enemies = new Unit[enemyUnits.size() * 2];
+		}
+
+		// Every enemy is a source at distance 0
+		int head = 0;
+		int tail = 0;
+		for (int i = 0; i < enemyUnits.size(); i++)
+		{
+			Unit e = enemyUnits.get(i);
+			enemies[i] = e;
+			int c = e.getX() + e.getY() * width;
+			if (distance[c] == UNREACHABLE)
+			{
+				distance[c] = 0;
+				source[c] = i;
+				queue[tail++] = c;
+			}
+		}
+
+		// Grow all the sources together. The first enemy to reach a cell is the closest one
+		while (head < tail)
+		{
+			int c = queue[head++];
+			int next = distance[c] + 1;
+			int x = c % width;
+			if (x > 0)
+			{
+				tail = visit(c - 1, next, source[c], tail, reachability);
+			}
+			if (x < width - 1)
+			{
+				tail = visit(c + 1, next, source[c], tail, reachability);
+			}
+			if (c >= width)
+			{
+				tail = visit(c - width, next, source[c], tail, reachability);
+			}
+			if (c + width < cells)
+			{
+				tail = visit(c + width, next, source[c], tail, reachability);
+			}
+		}
+		cellsVisited = tail;
+	}
+
+	private int visit(int c, int d, int s, int tail, ReachabilityOracle reachability)
+	{
+		if (distance[c] == UNREACHABLE && !reachability.isBlocked(c))
+		{
+			distance[c] = d;
+			source[c] = s;
+			queue[tail++] = c;
+		}
+		return tail;
+	}
+
+	/**
+	 * Makes a field computed for another copy of the same state answer for this one.
+	 * The snapshot must hold the same units in the same order as the one the field was computed from
+	 * @param snapshot Snapshot of this tick
+	 */
+	public void rebind(TickSnapshot snapshot)
+	{
+		pgs = snapshot.getPhysicalGameState();
+		time = snapshot.getGameState().getTime();
+		List<Unit> enemyUnits = snapshot.getEnemyUnits();
+		for (int i = 0; i < enemyUnits.size(); i++)
+		{
+			enemies[i] = enemyUnits.get(i);
+		}
+	}
+
+	/**
+	 * @return Number of cells the last update went through
+	 */
+	public int getCellsVisited()
+	{
+		return cellsVisited;
+	}
+
+	/**
+	 * @param gs Game State
+	 * @return True if the field was computed for the passed game state
+	 */
+	public boolean isCurrent(GameState gs)
+	{
+		return gs.getPhysicalGameState() == pgs && gs.getTime() == time;
+	}
+
+	/**
+	 * @param x X of the cell
+	 * @param y Y of the cell
+	 * @return Walking distance from the cell to the closest enemy, or UNREACHABLE
+	 */
+	public int getDistance(int x, int y)
+	{
+		return distance[x + y * width];
+	}
+
+	/**
+	 * @param u My Unit
+	 * @return Walking distance from the unit to the closest enemy, or UNREACHABLE
+	 */
+	public int getDistance(Unit u)
+	{
+		return distance[u.getX() + u.getY() * width];
+	}
+
+	/**
+	 * @param u My Unit
+	 * @return The enemy closest to the unit by walking distance, or null if it cannot reach any
+	 */
+	public Unit getNearestEnemy(Unit u)
+	{
+		int c = u.getX() + u.getY() * width;
+		if (distance[c] == UNREACHABLE)
+		{
+			return null;
+		}
+		return enemies[source[c]];
+	}
+
+	/**
+	 * @param u My Unit
+	 * @return Direction of the next step towards the closest enemy, or DIRECTION_NONE if there is none
+	 */
+	public int getNextDirection(Unit u)
+	{
+		int x = u.getX();
+		int y = u.getY();
+		int d = distance[x + y * width];
+		if (d == UNREACHABLE || d == 0)
+		{
+			return UnitAction.DIRECTION_NONE;
+		}
+		for (int dir = 0; dir < 4; dir++)
+		{
+			int nx = x + UnitAction.DIRECTION_OFFSET_X[dir];
+			int ny = y + UnitAction.DIRECTION_OFFSET_Y[dir];
+			if (nx >= 0 && ny >= 0 && nx < width && ny < height && distance[nx + ny * width] == d - 1)
+			{
+				return dir;
+			}
+		}
+		return UnitAction.DIRECTION_NONE;
+	}
+}
@@ -0,0 +1,173 @@
+package bot;
+
+import java.util.List;
+import rts.*;
+import rts.units.Unit;
+
+/**
+ * Walking distance from every cell to the closest of a set of goal cells, computed by one breadth first search
+ * seeded from all the goals. Any number of units can then walk to the goals by stepping to a neighbor one cell closer,
+ * instead of searching a path each. The field is kept until the goals or the blocked cells change
+ */
+public class FlowField
+{
+	// Distance of a cell no goal can be reached from
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	private int width;
+	private int height;
+
+	// Goals and blocked cells the field was computed for
+	private int[] goals;
+	private int reachabilityVersion = -1;
+
+	private int[] distance = new int[0];
+	private int[] queue = new int[0];
+
+	private int cellsVisited;
+	private int computations;
+
+	/**
+	 * Computes the field again if the goals or the blocked cells changed since the last time
+	 * @param goals Cells to walk to, as x + y * width
+	 * @param reachability Blocked cells of this tick
+	 * @param pgs Physical Game State
+	 * @return True if the field was computed again
+	 */
+	public boolean update(int[] goals, ReachabilityOracle reachability, PhysicalGameState pgs)
+	{
+		int cells = pgs.getWidth() * pgs.getHeight();
+		if (goals == this.goals && reachability.getVersion() == reachabilityVersion && distance.length == cells)
+		{
+			cellsVisited = 0;
+			return false;
+		}
+		this.goals = goals;
+		reachabilityVersion = reachability.getVersion();
+		width = pgs.getWidth();
+		height = pgs.getHeight();
+		if (distance.length != cells)
+		{
+			distance = new int[cells];
+			queue = new int[cells];
+		}
+		for (int c = 0; c < cells; c++)
+		{
+			distance[c] = UNREACHABLE;
+		}
+
+		// Every goal that is still free is a source at distance 0
+		int head = 0;
+		int tail = 0;
+		for (int c : goals)
+		{
+			if (!reachability.isBlocked(c) && distance[c] == UNREACHABLE)
+			{
+				distance[c] = 0;
+				queue[tail++] = c;
+			}
+		}
+
+		while (head < tail)
+		{
+			int c = queue[head++];
+			int next = distance[c] + 1;
+			int x = c % width;
+			if (x > 0)
+			{
+				tail = visit(c - 1, next, tail, reachability);
+			}
+			if (x < width - 1)
+			{
+				tail = visit(c + 1, next, tail, reachability);
+			}
+			if (c >= width)
+			{
+				tail = visit(c - width, next, tail, reachability);
+			}
+			if (c + width < cells)
+			{
+				tail = visit(c + width, next, tail, reachability);
+			}
+		}
+		cellsVisited = tail;
+		computations++;
+		return true;
+	}
+
+	private int visit(int c, int d, int tail, ReachabilityOracle reachability)
+	{
+		if (distance[c] == UNREACHABLE && !reachability.isBlocked(c))
+		{
+			distance[c] = d;
+			queue[tail++] = c;
+		}
+		return tail;
+	}
+
+	/**
+	 * @param u Unit
+	 * @return Walking distance from the unit to the closest goal, or UNREACHABLE
+	 */
+	public int getDistance(Unit u)
+	{
+		return distance[u.getX() + u.getY() * width];
+	}
+
+	/**
+	 * Picks a free neighbor one step closer to the goals. Units in the way are walked around if another such neighbor is free
+	 * @param u Unit
+	 * @param gs Game State
+	 * @return Direction of the next step, or DIRECTION_NONE if the unit is on a goal or cannot step closer this tick
+	 */
+	public int getNextDirection(Unit u, GameState gs)
+	{
+		return getNextDirection(u, gs, null);
+	}
+
+	/**
+	 * Picks a free neighbor one step closer to the goals that no other unit moves to this tick
+	 * @param u Unit
+	 * @param gs Game State
+	 * @param ru Cells already taken by the actions of this tick, or null
+	 * @return Direction of the next step, or DIRECTION_NONE if the unit is on a goal or cannot step closer this tick
+	 */
+	public int getNextDirection(Unit u, GameState gs, ResourceUsage ru)
+	{
+		List<Integer> used = ru == null ? null : ru.getPositionsUsed();
+		int x = u.getX();
+		int y = u.getY();
+		int d = distance[x + y * width];
+		if (d == UNREACHABLE || d == 0)
+		{
+			return UnitAction.DIRECTION_NONE;
+		}
+		for (int dir = 0; dir < 4; dir++)
+		{
+			int nx = x + UnitAction.DIRECTION_OFFSET_X[dir];
+			int ny = y + UnitAction.DIRECTION_OFFSET_Y[dir];
+			if (nx >= 0 && ny >= 0 && nx < width && ny < height && distance[nx + ny * width] == d - 1 && gs.free(nx, ny)
+					&& (used == null || !used.contains(nx + ny * width)))
+			{
+				return dir;
+			}
+		}
+		return UnitAction.DIRECTION_NONE;
+	}
+
+	/**
+	 * @return Number of cells the last update went through, 0 if it kept the field
+	 */
+	public int getCellsVisited()
+	{
+		return cellsVisited;
+	}
+
+	/**
+	 * @return Number of times the field was computed
+	 */
+	public int getComputations()
+	{
+		return computations;
+	}
+}
@@ -0,0 +1,59 @@
+package bot;
+
+import ai.abstraction.AbstractAction;
+import rts.*;
+import rts.units.Unit;
+import util.XMLWriter;
+
+/**
+ * Abstract action that walks a unit down a flow field until it stands on one of the field's goals.
+ * Every step is read from the field, so no path is searched for the unit
+ */
+public class FollowField extends AbstractAction
+{
+	private Unit unit;
+	private FlowField field;
+
+	public FollowField(Unit u, FlowField field)
+	{
+		super(u);
+		this.unit = u;
+		this.field = field;
+	}
+
+	/**
+	 * @return The field the unit follows
+	 */
+	public FlowField getField()
+	{
+		return field;
+	}
+
+	@Override
+	public boolean completed(GameState gs)
+	{
+		// Done on a goal, and given up if the goals cannot be reached anymore
+		int d = field.getDistance(unit);
+		return d == 0 || d == FlowField.UNREACHABLE;
+	}
+
+	@Override
+	public UnitAction execute(GameState gs, ResourceUsage ru)
+	{
+		// Cells another unit moves to this tick are not free either, like the stock actions check
+		int direction = field.getNextDirection(unit, gs, ru);
+		if (direction == UnitAction.DIRECTION_NONE)
+		{
+			// Wait for the unit in the way to move
+			return null;
+		}
+		return new UnitAction(UnitAction.TYPE_MOVE, direction);
+	}
+
+	@Override
+	public void toxml(XMLWriter w)
+	{
+		w.tagWithAttributes("FollowField", "unitID=\"" + unit.getID() + "\"");
+		w.tag("/FollowField");
+	}
+}
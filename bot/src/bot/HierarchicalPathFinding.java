@@ -0,0 +1,969 @@
+package bot;
+
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.PathFinding;
+import java.util.List;
+import java.util.Locale;
+import rts.*;
+import rts.units.Unit;
+
+/**
+ * Hierarchical A* (HPA*). The map is cut into square clusters, and every stretch of open border between two clusters
+ * gets one or two transition cells on each side. The walking distance between the transitions of a cluster is worked out
+ * once, so a long query searches the small graph of transitions and only walks the cells of the first stretch.
+ * Walls, buildings and resources shape the graph, moving units are only avoided on the first stretch.
+ * When a building is placed or destroyed, only the borders and distances of the clusters around it are worked out again.
+ * Queries whose target is near are searched cell by cell. A query the first stretch cannot be walked for, as moving
+ * units are in the way, is passed to the fallback path finder
+ */
+public class HierarchicalPathFinding extends PathFinding
+{
+	public static final int DEFAULT_CLUSTER_SIZE = 8;
+
+	// Open borders at least this long get a transition at each end instead of one in the middle
+	private static final int LONG_ENTRANCE = 6;
+	private static final int UNREACHED = Integer.MAX_VALUE;
+
+	private final int clusterSize;
+	private final PathFinding fallback;
+
+	// Map and tick the graph and the unit positions are up to date with
+	private PhysicalGameState pgs;
+	private int time = -1;
+	private int width;
+	private int height;
+	private int clustersX;
+	private int clustersY;
+
+	// Cells that are walls
+	private boolean[] wall = new boolean[0];
+	// Cells that are walls or hold a unit that cannot move
+	private boolean[] blocked = new boolean[0];
+	// Tick stamp of the units on every cell, and of the static ones
+	private int[] occupied = new int[0];
+	private int[] staticStamp = new int[0];
+	private int tickStamp;
+	// Cells held by static units in the last tick and in this one
+	private int[] staticCells = new int[0];
+	private int nStaticCells;
+	private int[] previousStaticCells = new int[0];
+	private int nPreviousStaticCells;
+
+	// Number of borders that made every cell a transition, and its place in the node list of its cluster
+	private int[] nodeRefs = new int[0];
+	private int[] nodeIndex = new int[0];
+	// Cells every border made transitions of. Vertical borders are between cluster x and x + 1, horizontal ones between y and y + 1
+	private int[][] verticalBorders = new int[0][];
+	private int[][] horizontalBorders = new int[0][];
+	// Transitions of every cluster and the walking distance between every pair of them, UNREACHED if none within the cluster
+	private int[][] clusterNodes = new int[0][];
+	private int[][] clusterDistances = new int[0][];
+	private boolean[] dirty = new boolean[0];
+
+	// Search scratch: cost so far and parent of every cell, stamped so they never need clearing
+	private int[] g = new int[0];
+	private int[] parent = new int[0];
+	private int[] searched = new int[0];
+	private int searchStamp;
+	private long[] heap = new long[64];
+	private int heapSize;
+	// Cells reserved by the query
+	private int[] reserved = new int[0];
+	private int reserveStamp;
+	// Breadth first searches within one cluster, for the start and for the goal
+	private int[] startDistance = new int[0];
+	private int[] startSeen = new int[0];
+	private int[] goalDistance = new int[0];
+	private int[] goalSeen = new int[0];
+	private int bfsStamp;
+	private int[] queue = new int[0];
+
+	// Goal of the query being searched: target cell, squared range, and the farthest walk from the target still in range
+	private int targetX;
+	private int targetY;
+	private int rangeSquared;
+	private int rangeReach;
+	// First move of the last successful search, null if the start was already in range
+	private UnitAction firstStep;
+
+	private long queries;
+	private long hierarchical;
+	private long fallbacks;
+	private long nodesExpanded;
+	private long clustersRebuilt;
+
+	public HierarchicalPathFinding()
+	{
+		this(new AStarPathFinding(), DEFAULT_CLUSTER_SIZE);
+	}
+
+	/**
+	 * @param fallback Path finder asked when moving units block the first stretch of a hierarchical path
+	 * @param clusterSize Width and height of the clusters, 0 to search every query cell by cell
+	 */
+	public HierarchicalPathFinding(PathFinding fallback, int clusterSize)
+	{
+		this.clusterSize = clusterSize;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public boolean pathExists(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		return start.getPosition(gs.getPhysicalGameState()) == targetpos || findPath(start, targetpos, gs, ru) != null;
+	}
+
+	@Override
+	public boolean pathToPositionInRangeExists(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		return findDistToPositionInRange(start, targetpos, range, gs, ru) >= 0;
+	}
+
+	@Override
+	public UnitAction findPath(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		return findPathToPositionInRange(start, targetpos, 0, gs, ru);
+	}
+
+	@Override
+	public UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		return findPathToPositionInRange(start, targetpos, 1, gs, ru);
+	}
+
+	@Override
+	public UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		int dist = search(start, targetpos, range, gs, ru);
+		if (dist < 0)
+		{
+			return null;
+		}
+		if (dist == UNREACHED)
+		{
+			fallbacks++;
+			return fallback.findPathToPositionInRange(start, targetpos, range, gs, ru);
+		}
+		return firstStep;
+	}
+
+	@Override
+	public int findDistToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		int dist = search(start, targetpos, range, gs, ru);
+		if (dist == UNREACHED)
+		{
+			fallbacks++;
+			return fallback.findDistToPositionInRange(start, targetpos, range, gs, ru);
+		}
+		return dist;
+	}
+
+	/**
+	 * Finds the walking distance and the first move to any cell in range of the target
+	 * @return The distance, -1 if there is no path, or UNREACHED if moving units block the first stretch
+	 */
+	private int search(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		update(gs);
+		queries++;
+		firstStep = null;
+		int s = start.getX() + start.getY() * width;
+		setGoal(targetpos, range);
+		markReserved(ru);
+		if (inRange(s))
+		{
+			return 0;
+		}
+
+		// Near targets, targets with a range as wide as a cluster, and every target without clusters, are searched cell by cell
+		int manhattan = Math.abs(targetX - start.getX()) + Math.abs(targetY - start.getY());
+		if (clusterSize <= 0 || manhattan <= 2 * clusterSize || range >= clusterSize)
+		{
+			return walk(s, -1, Integer.MAX_VALUE);
+		}
+		hierarchical++;
+		int waypoint = searchGraph(s);
+		if (waypoint < 0)
+		{
+			return -1;
+		}
+		int total = g[width * height];
+		// Walk to the first transition with the moving units in the way
+		if (walk(s, waypoint, 8 * clusterSize * clusterSize) < 0)
+		{
+			return UNREACHED;
+		}
+		return total;
+	}
+
+	private void setGoal(int targetpos, int range)
+	{
+		targetX = targetpos % width;
+		targetY = targetpos / width;
+		rangeSquared = range * range;
+		rangeReach = 0;
+		for (int dx = 0; dx <= range; dx++)
+		{
+			int dy = (int)Math.sqrt(rangeSquared - dx * dx);
+			rangeReach = Math.max(rangeReach, dx + dy);
+		}
+	}
+
+	private boolean inRange(int c)
+	{
+		int dx = c % width - targetX;
+		int dy = c / width - targetY;
+		return dx * dx + dy * dy <= rangeSquared;
+	}
+
+	/**
+	 * @return A lower bound of the walk from the cell to a cell in range of the target
+	 */
+	private int heuristic(int c)
+	{
+		return Math.max(0, Math.abs(c % width - targetX) + Math.abs(c / width - targetY) - rangeReach);
+	}
+
+	private void markReserved(ResourceUsage ru)
+	{
+		reserveStamp++;
+		List<Integer> used = ru == null ? null : ru.getPositionsUsed();
+		if (used != null)
+		{
+			for (int i = 0; i < used.size(); i++)
+			{
+				int pos = used.get(i);
+				if (pos >= 0 && pos < reserved.length)
+				{
+					reserved[pos] = reserveStamp;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return True if a unit can step onto the cell this tick
+	 */
+	private boolean free(int c)
+	{
+		return !blocked[c] && occupied[c] != tickStamp && reserved[c] != reserveStamp;
+	}
+
+	/**
+	 * A* over the cells, around the moving units, to the waypoint or, without one, to any cell in range of the target.
+	 * Leaves the first move in firstStep
+	 * @param limit Most cells expanded before giving up
+	 * @return The walking distance, or -1 if no path was found
+	 */
+	private int walk(int s, int waypoint, int limit)
+	{
+		int wx = waypoint % width;
+		int wy = waypoint / width;
+		searchStamp++;
+		heapSize = 0;
+		g[s] = 0;
+		parent[s] = -1;
+		searched[s] = searchStamp;
+		push(heuristicTo(s, waypoint, wx, wy), s);
+		int expanded = 0;
+		while (heapSize > 0)
+		{
+			long top = pop();
+			int c = (int)top;
+			int f = (int)(top >>> 32);
+			if (f != g[c] + heuristicTo(c, waypoint, wx, wy))
+			{
+				// Stale entry, the cell was reached more cheaply since
+				continue;
+			}
+			if (waypoint >= 0 ? c == waypoint : inRange(c))
+			{
+				firstStep = stepTowards(s, c);
+				return g[c];
+			}
+			if (++expanded > limit)
+			{
+				break;
+			}
+			nodesExpanded++;
+			int x = c % width;
+			int y = c / width;
+			for (int d = 0; d < 4; d++)
+			{
+				int nx = x + UnitAction.DIRECTION_OFFSET_X[d];
+				int ny = y + UnitAction.DIRECTION_OFFSET_Y[d];
+				if (nx < 0 || ny < 0 || nx >= width || ny >= height)
+				{
+					continue;
+				}
+				int n = nx + ny * width;
+				if (!free(n))
+				{
+					continue;
+				}
+				int cost = g[c] + 1;
+				if (searched[n] != searchStamp || cost < g[n])
+				{
+					searched[n] = searchStamp;
+					g[n] = cost;
+					parent[n] = c;
+					push(cost + heuristicTo(n, waypoint, wx, wy), n);
+				}
+			}
+		}
+		return -1;
+	}
+
+	private int heuristicTo(int c, int waypoint, int wx, int wy)
+	{
+		return waypoint < 0 ? heuristic(c) : Math.abs(c % width - wx) + Math.abs(c / width - wy);
+	}
+
+	/**
+	 * @return The move from the start onto the second cell of the path to the cell
+	 */
+	private UnitAction stepTowards(int s, int c)
+	{
+		if (c == s)
+		{
+			return null;
+		}
+		while (parent[c] != s)
+		{
+			c = parent[c];
+		}
+		int dx = c % width - s % width;
+		int dy = c / width - s / width;
+		int direction = dx > 0 ? UnitAction.DIRECTION_RIGHT : dx < 0 ? UnitAction.DIRECTION_LEFT
+				: dy > 0 ? UnitAction.DIRECTION_DOWN : UnitAction.DIRECTION_UP;
+		return new UnitAction(UnitAction.TYPE_MOVE, direction);
+	}
+
+	/**
+	 * A* over the transitions, from the start to the goal, both joined to the transitions of their own clusters.
+	 * Moving units are ignored. The length of the path is left in g[width * height]
+	 * @return The first transition to walk to, or -1 if the goal cannot be reached
+	 */
+	private int searchGraph(int s)
+	{
+		int startCluster = clusterOf(s);
+		int goal = width * height;
+
+		// Join the start to the transitions of its cluster, and the cells in range to the transitions of theirs
+		bfsStamp++;
+		queue[0] = s;
+		clusterSearch(startCluster, 1, startDistance, startSeen);
+		int range = (int)Math.sqrt(rangeSquared);
+		int cx0 = Math.max(0, targetX - range) / clusterSize;
+		int cy0 = Math.max(0, targetY - range) / clusterSize;
+		int cx1 = Math.min(width - 1, targetX + range) / clusterSize;
+		int cy1 = Math.min(height - 1, targetY + range) / clusterSize;
+		boolean anyGoal = false;
+		for (int cy = cy0; cy <= cy1; cy++)
+		{
+			for (int cx = cx0; cx <= cx1; cx++)
+			{
+				int nGoals = 0;
+				for (int y = Math.max(cy * clusterSize, targetY - range); y <= Math.min(Math.min(height, (cy + 1) * clusterSize) - 1, targetY + range); y++)
+				{
+					for (int x = Math.max(cx * clusterSize, targetX - range); x <= Math.min(Math.min(width, (cx + 1) * clusterSize) - 1, targetX + range); x++)
+					{
+						int c = x + y * width;
+						if (!blocked[c] && inRange(c))
+						{
+							queue[nGoals++] = c;
+						}
+					}
+				}
+				if (nGoals > 0)
+				{
+					clusterSearch(cy * clustersX + cx, nGoals, goalDistance, goalSeen);
+					anyGoal = true;
+				}
+			}
+		}
+		if (!anyGoal)
+		{
+			return -1;
+		}
+
+		searchStamp++;
+		heapSize = 0;
+		searched[goal] = searchStamp;
+		g[goal] = UNREACHED;
+		int[] nodes = clusterNodes[startCluster];
+		for (int i = 0; i < nodes.length; i++)
+		{
+			int n = nodes[i];
+			if (startSeen[n] == bfsStamp)
+			{
+				searched[n] = searchStamp;
+				g[n] = startDistance[n];
+				parent[n] = -1;
+				push(g[n] + heuristic(n), n);
+			}
+		}
+		while (heapSize > 0)
+		{
+			long top = pop();
+			int c = (int)top;
+			int f = (int)(top >>> 32);
+			if (c == goal)
+			{
+				break;
+			}
+			if (f != g[c] + heuristic(c))
+			{
+				continue;
+			}
+			nodesExpanded++;
+			int cluster = clusterOf(c);
+			// Into the goal
+			if (goalSeen[c] == bfsStamp && g[c] + goalDistance[c] < g[goal])
+			{
+				g[goal] = g[c] + goalDistance[c];
+				parent[goal] = c;
+				push(g[goal], goal);
+			}
+			// To the other transitions of the cluster
+			int[] others = clusterNodes[cluster];
+			int[] distances = clusterDistances[cluster];
+			int row = nodeIndex[c] * others.length;
+			for (int i = 0; i < others.length; i++)
+			{
+				if (distances[row + i] != UNREACHED)
+				{
+					relax(c, others[i], g[c] + distances[row + i]);
+				}
+			}
+			// Across the borders
+			int x = c % width;
+			int y = c / width;
+			for (int d = 0; d < 4; d++)
+			{
+				int nx = x + UnitAction.DIRECTION_OFFSET_X[d];
+				int ny = y + UnitAction.DIRECTION_OFFSET_Y[d];
+				if (nx < 0 || ny < 0 || nx >= width || ny >= height)
+				{
+					continue;
+				}
+				int n = nx + ny * width;
+				if (nodeRefs[n] > 0 && clusterOf(n) != cluster)
+				{
+					relax(c, n, g[c] + 1);
+				}
+			}
+		}
+		if (g[goal] == UNREACHED)
+		{
+			return -1;
+		}
+
+		// The first transition on the path, or the second if the start is a transition itself
+		int c = parent[goal];
+		int next = -1;
+		while (parent[c] != -1)
+		{
+			next = c;
+			c = parent[c];
+		}
+		return c == s ? (next >= 0 ? next : c) : c;
+	}
+
+	private void relax(int from, int to, int cost)
+	{
+		if (searched[to] != searchStamp || cost < g[to])
+		{
+			searched[to] = searchStamp;
+			g[to] = cost;
+			parent[to] = from;
+			push(cost + heuristic(to), to);
+		}
+	}
+
+	/**
+	 * Breadth first search over the walkable cells of one cluster, from the cells at the start of the queue
+	 */
+	private void clusterSearch(int cluster, int nSources, int[] distance, int[] seen)
+	{
+		int x0 = (cluster % clustersX) * clusterSize;
+		int y0 = (cluster / clustersX) * clusterSize;
+		int x1 = Math.min(width, x0 + clusterSize);
+		int y1 = Math.min(height, y0 + clusterSize);
+		for (int i = 0; i < nSources; i++)
+		{
+			distance[queue[i]] = 0;
+			seen[queue[i]] = bfsStamp;
+		}
+		int head = 0;
+		int tail = nSources;
+		while (head < tail)
+		{
+			int c = queue[head++];
+			int x = c % width;
+			int y = c / width;
+			for (int d = 0; d < 4; d++)
+			{
+				int nx = x + UnitAction.DIRECTION_OFFSET_X[d];
+				int ny = y + UnitAction.DIRECTION_OFFSET_Y[d];
+				if (nx < x0 || ny < y0 || nx >= x1 || ny >= y1)
+				{
+					continue;
+				}
+				int n = nx + ny * width;
+				if (!blocked[n] && seen[n] != bfsStamp)
+				{
+					seen[n] = bfsStamp;
+					distance[n] = distance[c] + 1;
+					queue[tail++] = n;
+				}
+			}
+		}
+	}
+
+	private int clusterOf(int c)
+	{
+		return (c / width) / clusterSize * clustersX + (c % width) / clusterSize;
+	}
+
+	/**
+	 * Brings the obstacles, the unit positions and the graph up to date with the game state. Checked once per tick
+	 */
+	private void update(GameState gs)
+	{
+		PhysicalGameState current = gs.getPhysicalGameState();
+		if (current == pgs && gs.getTime() == time)
+		{
+			return;
+		}
+		if (current.getWidth() != width || current.getHeight() != height)
+		{
+			resize(current);
+		}
+		else if (current != pgs)
+		{
+			// Hosts that send the whole state every tick give a new map of the same size, so only changed walls are patched
+			patchWalls(current);
+		}
+		pgs = current;
+		time = gs.getTime();
+		tickStamp++;
+
+		// Stamp the cells of all units, and find the buildings and resources that appeared
+		List<Unit> units = current.getUnits();
+		if (staticCells.length < units.size())
+		{
+			staticCells = new int[units.size() * 2];
+		}
+		nStaticCells = 0;
+		for (int i = 0; i < units.size(); i++)
+		{
+			Unit u = units.get(i);
+			int c = u.getX() + u.getY() * width;
+			occupied[c] = tickStamp;
+			if (!u.getType().canMove)
+			{
+				staticCells[nStaticCells++] = c;
+				staticStamp[c] = tickStamp;
+				if (!blocked[c])
+				{
+					blocked[c] = true;
+					markDirty(c);
+				}
+			}
+		}
+		// And the ones that disappeared
+		for (int i = 0; i < nPreviousStaticCells; i++)
+		{
+			int c = previousStaticCells[i];
+			if (staticStamp[c] != tickStamp && !wall[c])
+			{
+				blocked[c] = false;
+				markDirty(c);
+			}
+		}
+		int[] swap = previousStaticCells;
+		previousStaticCells = staticCells;
+		nPreviousStaticCells = nStaticCells;
+		staticCells = swap;
+
+		if (clusterSize > 0)
+		{
+			rebuildDirty();
+		}
+	}
+
+	/**
+	 * Marks the cluster of a cell for rebuilding, and the neighbour it shares a border with if the cell is on one
+	 */
+	private void markDirty(int c)
+	{
+		if (clusterSize <= 0)
+		{
+			return;
+		}
+		int x = c % width;
+		int y = c / width;
+		dirty[clusterOf(c)] = true;
+		if (x % clusterSize == 0 && x > 0) dirty[clusterOf(c - 1)] = true;
+		if (x % clusterSize == clusterSize - 1 && x < width - 1) dirty[clusterOf(c + 1)] = true;
+		if (y % clusterSize == 0 && y > 0) dirty[clusterOf(c - width)] = true;
+		if (y % clusterSize == clusterSize - 1 && y < height - 1) dirty[clusterOf(c + width)] = true;
+	}
+
+	/**
+	 * Places the transitions on the borders of the dirty clusters, then works out the distances of the dirty clusters
+	 * and of their neighbours, whose transitions on the shared borders may have moved
+	 */
+	private void rebuildDirty()
+	{
+		int n = clustersX * clustersY;
+		boolean any = false;
+		for (int k = 0; k < n; k++)
+		{
+			if (!dirty[k])
+			{
+				continue;
+			}
+			any = true;
+			int cx = k % clustersX;
+			int cy = k / clustersX;
+			if (cx > 0) placeTransitions(true, cx - 1, cy);
+			if (cx < clustersX - 1) placeTransitions(true, cx, cy);
+			if (cy > 0) placeTransitions(false, cx, cy - 1);
+			if (cy < clustersY - 1) placeTransitions(false, cx, cy);
+		}
+		if (!any)
+		{
+			return;
+		}
+		// Spread the dirty marks to the neighbours before working the distances out
+		boolean[] rebuild = new boolean[n];
+		for (int k = 0; k < n; k++)
+		{
+			if (dirty[k])
+			{
+				int cx = k % clustersX;
+				int cy = k / clustersX;
+				rebuild[k] = true;
+				if (cx > 0) rebuild[k - 1] = true;
+				if (cx < clustersX - 1) rebuild[k + 1] = true;
+				if (cy > 0) rebuild[k - clustersX] = true;
+				if (cy < clustersY - 1) rebuild[k + clustersX] = true;
+				dirty[k] = false;
+			}
+		}
+		for (int k = 0; k < n; k++)
+		{
+			if (rebuild[k])
+			{
+				connectCluster(k);
+				clustersRebuilt++;
+			}
+		}
+	}
+
+	/**
+	 * Places the transitions of one border: every stretch of cells open on both sides gets one in the middle,
+	 * or one at each end if it is long
+	 * @param vertical True for the border between clusters (cx, cy) and (cx + 1, cy), false for (cx, cy) and (cx, cy + 1)
+	 */
+	private void placeTransitions(boolean vertical, int cx, int cy)
+	{
+		int[][] borders = vertical ? verticalBorders : horizontalBorders;
+		int index = cy * clustersX + cx;
+		int[] old = borders[index];
+		for (int i = 0; i < old.length; i++)
+		{
+			nodeRefs[old[i]]--;
+		}
+
+		// Cells on the near side of the border, and the step to the far side
+		int first;
+		int along;
+		int across;
+		int length;
+		if (vertical)
+		{
+			first = cx * clusterSize + clusterSize - 1 + cy * clusterSize * width;
+			along = width;
+			across = 1;
+			length = Math.min(clusterSize, height - cy * clusterSize);
+		}
+		else
+		{
+			first = cx * clusterSize + (cy * clusterSize + clusterSize - 1) * width;
+			along = 1;
+			across = width;
+			length = Math.min(clusterSize, width - cx * clusterSize);
+		}
+		int[] cells = new int[length * 4];
+		int nCells = 0;
+		int runStart = -1;
+		for (int i = 0; i <= length; i++)
+		{
+			int c = first + i * along;
+			boolean open = i < length && !blocked[c] && !blocked[c + across];
+			if (open && runStart < 0)
+			{
+				runStart = i;
+			}
+			else if (!open && runStart >= 0)
+			{
+				int runLength = i - runStart;
+				if (runLength >= LONG_ENTRANCE)
+				{
+					cells[nCells++] = first + runStart * along;
+					cells[nCells++] = first + runStart * along + across;
+					cells[nCells++] = first + (i - 1) * along;
+					cells[nCells++] = first + (i - 1) * along + across;
+				}
+				else
+				{
+					int middle = first + (runStart + runLength / 2) * along;
+					cells[nCells++] = middle;
+					cells[nCells++] = middle + across;
+				}
+				runStart = -1;
+			}
+		}
+		int[] placed = new int[nCells];
+		for (int i = 0; i < nCells; i++)
+		{
+			placed[i] = cells[i];
+			nodeRefs[cells[i]]++;
+		}
+		borders[index] = placed;
+	}
+
+	/**
+	 * Lists the transitions of a cluster and works out the walking distance between every pair of them within it
+	 */
+	private void connectCluster(int k)
+	{
+		int x0 = (k % clustersX) * clusterSize;
+		int y0 = (k / clustersX) * clusterSize;
+		int x1 = Math.min(width, x0 + clusterSize);
+		int y1 = Math.min(height, y0 + clusterSize);
+		int count = 0;
+		for (int y = y0; y < y1; y++)
+		{
+			for (int x = x0; x < x1; x++)
+			{
+				if (nodeRefs[x + y * width] > 0)
+				{
+					count++;
+				}
+			}
+		}
+		int[] nodes = new int[count];
+		count = 0;
+		for (int y = y0; y < y1; y++)
+		{
+			for (int x = x0; x < x1; x++)
+			{
+				int c = x + y * width;
+				if (nodeRefs[c] > 0)
+				{
+					nodeIndex[c] = count;
+					nodes[count++] = c;
+				}
+			}
+		}
+		int[] distances = new int[count * count];
+		for (int i = 0; i < count; i++)
+		{
+			bfsStamp++;
+			queue[0] = nodes[i];
+			clusterSearch(k, 1, startDistance, startSeen);
+			for (int j = 0; j < count; j++)
+			{
+				distances[i * count + j] = startSeen[nodes[j]] == bfsStamp ? startDistance[nodes[j]] : UNREACHED;
+			}
+		}
+		clusterNodes[k] = nodes;
+		clusterDistances[k] = distances;
+	}
+
+	/**
+	 * Takes the walls of a map of the same size, marking the clusters of the cells that changed for rebuilding
+	 */
+	private void patchWalls(PhysicalGameState current)
+	{
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				int c = x + y * width;
+				boolean isWall = current.getTerrain(x, y) == PhysicalGameState.TERRAIN_WALL;
+				if (isWall != wall[c])
+				{
+					wall[c] = isWall;
+					// A building on the cell blocks it again in the pass over the units
+					blocked[c] = isWall;
+					markDirty(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starts over on a new map: reads the walls and builds the whole graph on the next update
+	 */
+	private void resize(PhysicalGameState current)
+	{
+		width = current.getWidth();
+		height = current.getHeight();
+		int cells = width * height;
+		wall = new boolean[cells];
+		blocked = new boolean[cells];
+		occupied = new int[cells];
+		staticStamp = new int[cells];
+		tickStamp = 0;
+		nPreviousStaticCells = 0;
+		nodeRefs = new int[cells];
+		nodeIndex = new int[cells];
+		// One more cell for the goal of the graph search
+		g = new int[cells + 1];
+		parent = new int[cells + 1];
+		searched = new int[cells + 1];
+		searchStamp = 0;
+		reserved = new int[cells];
+		reserveStamp = 0;
+		startDistance = new int[cells];
+		startSeen = new int[cells];
+		goalDistance = new int[cells];
+		goalSeen = new int[cells];
+		bfsStamp = 0;
+		queue = new int[cells];
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				if (current.getTerrain(x, y) == PhysicalGameState.TERRAIN_WALL)
+				{
+					wall[x + y * width] = true;
+					blocked[x + y * width] = true;
+				}
+			}
+		}
+		if (clusterSize > 0)
+		{
+			clustersX = (width + clusterSize - 1) / clusterSize;
+			clustersY = (height + clusterSize - 1) / clusterSize;
+			int n = clustersX * clustersY;
+			verticalBorders = new int[n][0];
+			horizontalBorders = new int[n][0];
+			clusterNodes = new int[n][0];
+			clusterDistances = new int[n][0];
+			dirty = new boolean[n];
+			for (int k = 0; k < n; k++)
+			{
+				dirty[k] = true;
+			}
+		}
+	}
+
+	private void push(int f, int c)
+	{
+		if (heapSize == heap.length)
+		{
+			long[] bigger = new long[heap.length * 2];
+			System.arraycopy(heap, 0, bigger, 0, heapSize);
+			heap = bigger;
+		}
+		long entry = ((long)f << 32) | c;
+		int i = heapSize++;
+		while (i > 0)
+		{
+			int up = (i - 1) >> 1;
+			if (heap[up] <= entry)
+			{
+				break;
+			}
+			heap[i] = heap[up];
+			i = up;
+		}
+		heap[i] = entry;
+	}
+
+	private long pop()
+	{
+		long top = heap[0];
+		long last = heap[--heapSize];
+		int i = 0;
+		while (true)
+		{
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+			{
+				break;
+			}
+			if (child + 1 < heapSize && heap[child + 1] < heap[child])
+			{
+				child++;
+			}
+			if (heap[child] >= last)
+			{
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return top;
+	}
+
+	/**
+	 * @return The path finder asked when moving units block the first stretch
+	 */
+	public PathFinding getFallback()
+	{
+		return fallback;
+	}
+
+	public int getClusterSize()
+	{
+		return clusterSize;
+	}
+
+	public long getQueries()
+	{
+		return queries;
+	}
+
+	/**
+	 * @return Number of cells and transitions expanded by all searches so far
+	 */
+	public long getNodesExpanded()
+	{
+		return nodesExpanded;
+	}
+
+	/**
+	 * @return Number of clusters whose transitions were connected again, including the first build
+	 */
+	public long getClustersRebuilt()
+	{
+		return clustersRebuilt;
+	}
+
+	public void clearCounters()
+	{
+		queries = 0;
+		hierarchical = 0;
+		fallbacks = 0;
+		nodesExpanded = 0;
+		clustersRebuilt = 0;
+	}
+
+	/**
+	 * @return One line with the counters
+	 */
+	public String report()
+	{
+		return String.format(Locale.ROOT, "hierarchical paths: %d queries, %d over the graph, %d passed on, %d nodes expanded, %d clusters rebuilt\n",
+				queries, hierarchical, fallbacks, nodesExpanded, clustersRebuilt);
+	}
+}
@@ -0,0 +1,737 @@
+package bot;
+
+import ai.abstraction.pathfinding.PathFinding;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import rts.*;
+import rts.units.Unit;
+
+/**
+ * Keeps the path of every unit between ticks and repairs it instead of searching again, for units that chase
+ * a moving target. Each tick the path is shortened by the steps the unit took. If the target moved, the path is
+ * cut at the first cell in range of the new target, or extended from its end with a short search.
+ * If other units stand on the next few cells, a short search goes round them and joins the path again.
+ * The path is searched again from scratch only when a repair fails, a wall, building or resource appears on it,
+ * or it became much longer than the straight distance.
+ * A plan is kept per unit and range. Plans of units that died or asked for no path for a while are thrown away,
+ * and the number of units with plans is bounded
+ */
+public class IncrementalPathFinding extends PathFinding
+{
+	public static final int DEFAULT_CAPACITY = 256;
+	public static final int DEFAULT_IDLE_TICKS = 50;
+
+	// Steps ahead of the unit that must be free of other units. Units farther along the path are expected to move on
+	private static final int LOOKAHEAD = 3;
+	// Most cells a repair expands before the path is searched again from scratch
+	private static final int REPAIR_LIMIT = 256;
+	// A path longer than the straight distance times STRETCH plus SLACK is searched again from scratch
+	private static final double STRETCH = 1.5;
+	private static final int SLACK = 8;
+	// Largest range with a plan of its own, larger ones are searched from scratch
+	private static final int MAX_RANGE = 255;
+
+	/**
+	 * The path of one unit to one range of its target
+	 */
+	private static class Plan
+	{
+		int range;
+		int target = -1;
+		// Cell the unit stood on, and the cells after it up to a cell in range of the target, in cells[head] to cells[tail - 1]
+		int start;
+		int[] cells = new int[16];
+		int head;
+		int tail;
+		// Tick the plan was last asked for
+		int used;
+		// Tick its unit was last seen on the map
+		int seen;
+		// Plan of the same unit for another range
+		Plan next;
+
+		int length()
+		{
+			return tail - head;
+		}
+	}
+
+	private final int capacity;
+	private final int idleTicks;
+	private final LinkedHashMap<Long, Plan> plans;
+	// Plan for ranges too large to keep
+	private final Plan scratch = new Plan();
+
+	// Map and tick the obstacles are up to date with
+	private PhysicalGameState pgs;
+	private int time = -1;
+	private int width;
+	private int height;
+	private boolean[] wall = new boolean[0];
+	// Tick stamp of the cells holding a unit, and of the ones holding a unit that cannot move
+	private int[] occupied = new int[0];
+	private int[] staticStamp = new int[0];
+	private int tickStamp;
+	private int[] reserved = new int[0];
+	private int reserveStamp;
+
+	// Search scratch, stamped so it never needs clearing
+	private int[] g = new int[0];
+	private int[] parent = new int[0];
+	private int[] searched = new int[0];
+	private int searchStamp;
+	private int[] goalMark = new int[0];
+	private int goalStamp;
+	private long[] heap = new long[64];
+	private int heapSize;
+	private int[] path = new int[16];
+
+	private int targetX;
+	private int targetY;
+	private int rangeSquared;
+	private int rangeReach;
+
+	private long queries;
+	private long reused;
+	private long repaired;
+	private long replanned;
+	private long nodesExpanded;
+	private long evictions;
+
+	public IncrementalPathFinding()
+	{
+		this(DEFAULT_CAPACITY, DEFAULT_IDLE_TICKS);
+	}
+
+	/**
+	 * @param capacity Most units with plans
+	 * @param idleTicks Ticks a plan is kept without being asked for
+	 */
+	public IncrementalPathFinding(int capacity, int idleTicks)
+	{
+		this.capacity = capacity;
+		this.idleTicks = idleTicks;
+		this.plans = new LinkedHashMap<Long, Plan>(capacity * 4 / 3 + 1, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Plan> eldest)
+			{
+				if (size() > IncrementalPathFinding.this.capacity)
+				{
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public boolean pathExists(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		return start.getPosition(gs.getPhysicalGameState()) == targetpos || plan(start, targetpos, 0, gs, ru) != null;
+	}
+
+	@Override
+	public boolean pathToPositionInRangeExists(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		return plan(start, targetpos, range, gs, ru) != null;
+	}
+
+	@Override
+	public UnitAction findPath(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		return findPathToPositionInRange(start, targetpos, 0, gs, ru);
+	}
+
+	@Override
+	public UnitAction findPathToAdjacentPosition(Unit start, int targetpos, GameState gs, ResourceUsage ru)
+	{
+		return findPathToPositionInRange(start, targetpos, 1, gs, ru);
+	}
+
+	@Override
+	public UnitAction findPathToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		Plan p = plan(start, targetpos, range, gs, ru);
+		if (p == null || p.length() == 0)
+		{
+			return null;
+		}
+		int next = p.cells[p.head];
+		int dx = next % width - start.getX();
+		int dy = next / width - start.getY();
+		int direction = dx > 0 ? UnitAction.DIRECTION_RIGHT : dx < 0 ? UnitAction.DIRECTION_LEFT
+				: dy > 0 ? UnitAction.DIRECTION_DOWN : UnitAction.DIRECTION_UP;
+		return new UnitAction(UnitAction.TYPE_MOVE, direction);
+	}
+
+	@Override
+	public int findDistToPositionInRange(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		Plan p = plan(start, targetpos, range, gs, ru);
+		return p == null ? -1 : p.length();
+	}
+
+	/**
+	 * Brings the plan of the unit for the range up to date, repairing it if it can
+	 * @return The plan, or null if there is no path
+	 */
+	private Plan plan(Unit start, int targetpos, int range, GameState gs, ResourceUsage ru)
+	{
+		update(gs);
+		queries++;
+		markReserved(ru);
+		setGoal(targetpos, range);
+		int s = start.getX() + start.getY() * width;
+		if (range > MAX_RANGE)
+		{
+			return replan(scratch, s) ? scratch : null;
+		}
+
+		Plan first = plans.get(start.getID());
+		Plan p = first;
+		while (p != null && p.range != range)
+		{
+			p = p.next;
+		}
+		if (p == null)
+		{
+			p = new Plan();
+			p.range = range;
+			p.next = first;
+			plans.put(start.getID(), p);
+		}
+		p.used = time;
+		p.seen = time;
+		if (p.target >= 0 && repair(p, s, targetpos))
+		{
+			p.target = targetpos;
+			return p;
+		}
+		if (!replan(p, s))
+		{
+			// "No path" is not kept, as moving units may have caused it
+			p.target = -1;
+			return null;
+		}
+		p.target = targetpos;
+		return p;
+	}
+
+	/**
+	 * Moves the plan along with the unit and fixes the parts the target, the units and the obstacles changed
+	 * @return False if the plan has to be searched again from scratch
+	 */
+	private boolean repair(Plan p, int s, int targetpos)
+	{
+		// Follow the unit along the path
+		if (s != p.start)
+		{
+			int i = p.head;
+			while (i < p.tail && i < p.head + LOOKAHEAD && p.cells[i] != s)
+			{
+				i++;
+			}
+			if (i == p.tail || p.cells[i] != s)
+			{
+				return false;
+			}
+			p.head = i + 1;
+			p.start = s;
+		}
+
+		// Walls, buildings and resources anywhere on the path, other units only on the next few steps.
+		// The blocked step is counted from the unit, as extending the path may move it in the array
+		int blocked = -1;
+		for (int i = p.head; i < p.tail; i++)
+		{
+			int c = p.cells[i];
+			if (wall[c] || staticStamp[c] == tickStamp)
+			{
+				return false;
+			}
+			if (blocked < 0 && i < p.head + LOOKAHEAD && !free(c))
+			{
+				blocked = i - p.head;
+			}
+		}
+
+		boolean searchedAgain = false;
+		if (targetpos != p.target || !inRange(p.tail > p.head ? p.cells[p.tail - 1] : s))
+		{
+			// Cut the path at the first cell in range of the new target, or extend it from its end
+			int end = inRange(s) ? p.head : -1;
+			for (int i = p.head; end < 0 && i < p.tail; i++)
+			{
+				if (inRange(p.cells[i]))
+				{
+					end = i + 1;
+				}
+			}
+			if (end >= 0)
+			{
+				p.tail = end;
+			}
+			else
+			{
+				int from = p.tail > p.head ? p.cells[p.tail - 1] : s;
+				int reached = search(from, -1, REPAIR_LIMIT);
+				if (reached < 0)
+				{
+					return false;
+				}
+				append(p, from, reached);
+				searchedAgain = true;
+			}
+		}
+
+		// Go round the units in the way and join the path again after them
+		int blockedAt = p.head + blocked;
+		if (blocked >= 0 && blockedAt < p.tail)
+		{
+			goalStamp++;
+			int aim = -1;
+			for (int i = blockedAt + 1; i < Math.min(p.tail, blockedAt + 1 + LOOKAHEAD); i++)
+			{
+				if (free(p.cells[i]))
+				{
+					goalMark[p.cells[i]] = goalStamp;
+					aim = aim < 0 ? p.cells[i] : aim;
+				}
+			}
+			if (aim < 0)
+			{
+				return false;
+			}
+			int reached = search(s, aim, REPAIR_LIMIT);
+			if (reached < 0)
+			{
+				return false;
+			}
+			splice(p, s, reached);
+			searchedAgain = true;
+		}
+
+		if (p.length() > STRETCH * heuristic(s) + SLACK)
+		{
+			return false;
+		}
+		if (searchedAgain)
+		{
+			repaired++;
+		}
+		else
+		{
+			reused++;
+		}
+		return true;
+	}
+
+	/**
+	 * Searches the path of the plan from scratch
+	 * @return False if there is no path
+	 */
+	private boolean replan(Plan p, int s)
+	{
+		replanned++;
+		p.start = s;
+		p.head = 0;
+		p.tail = 0;
+		if (inRange(s))
+		{
+			return true;
+		}
+		int reached = search(s, -1, Integer.MAX_VALUE);
+		if (reached < 0)
+		{
+			return false;
+		}
+		append(p, s, reached);
+		return true;
+	}
+
+	/**
+	 * Adds the path the last search found, from the cell to the reached one, to the end of the plan
+	 */
+	private void append(Plan p, int from, int reached)
+	{
+		int n = tracePath(from, reached);
+		if (p.tail + n > p.cells.length)
+		{
+			int[] bigger = new int[Math.max(p.cells.length * 2, p.length() + n + 16)];
+			System.arraycopy(p.cells, p.head, bigger, 0, p.length());
+			p.tail -= p.head;
+			p.head = 0;
+			p.cells = bigger;
+		}
+		for (int i = 0; i < n; i++)
+		{
+			p.cells[p.tail++] = path[i];
+		}
+	}
+
+	/**
+	 * Replaces the start of the plan, up to the reached cell, with the path the last search found
+	 */
+	private void splice(Plan p, int s, int reached)
+	{
+		int join = p.head;
+		while (p.cells[join] != reached)
+		{
+			join++;
+		}
+		int n = tracePath(s, reached);
+		int rest = p.tail - join - 1;
+		int[] cells = p.cells.length >= n + rest ? p.cells : new int[n + rest + 16];
+		System.arraycopy(p.cells, join + 1, cells, n, rest);
+		System.arraycopy(path, 0, cells, 0, n);
+		p.cells = cells;
+		p.head = 0;
+		p.tail = n + rest;
+	}
+
+	/**
+	 * Puts the cells of the last search's path after the start, up to and including the reached cell, in path
+	 * @return Number of cells
+	 */
+	private int tracePath(int from, int reached)
+	{
+		int n = g[reached];
+		if (path.length < n)
+		{
+			path = new int[n * 2];
+		}
+		for (int c = reached, i = n - 1; c != from; c = parent[c], i--)
+		{
+			path[i] = c;
+		}
+		return n;
+	}
+
+	/**
+	 * A* from the cell around all units to a cell in range of the target or, if an aim is given, to a marked cell
+	 * @param aim Marked cell the heuristic heads for, or -1 to look for a cell in range of the target
+	 * @param limit Most cells expanded before giving up
+	 * @return The cell reached, or -1
+	 */
+	private int search(int from, int aim, int limit)
+	{
+		searchStamp++;
+		heapSize = 0;
+		g[from] = 0;
+		parent[from] = -1;
+		searched[from] = searchStamp;
+		push(estimate(from, aim), from);
+		int expanded = 0;
+		while (heapSize > 0)
+		{
+			long top = pop();
+			int c = (int)top;
+			if ((int)(top >>> 32) != g[c] + estimate(c, aim))
+			{
+				// Stale entry, the cell was reached more cheaply since
+				continue;
+			}
+			if (c != from && (aim < 0 ? inRange(c) : goalMark[c] == goalStamp))
+			{
+				return c;
+			}
+			if (++expanded > limit)
+			{
+				break;
+			}
+			nodesExpanded++;
+			int x = c % width;
+			int y = c / width;
+			for (int d = 0; d < 4; d++)
+			{
+				int nx = x + UnitAction.DIRECTION_OFFSET_X[d];
+				int ny = y + UnitAction.DIRECTION_OFFSET_Y[d];
+				if (nx < 0 || ny < 0 || nx >= width || ny >= height)
+				{
+					continue;
+				}
+				int n = nx + ny * width;
+				int cost = g[c] + 1;
+				if (free(n) && (searched[n] != searchStamp || cost < g[n]))
+				{
+					searched[n] = searchStamp;
+					g[n] = cost;
+					parent[n] = c;
+					push(cost + estimate(n, aim), n);
+				}
+			}
+		}
+		return -1;
+	}
+
+	private int estimate(int c, int aim)
+	{
+		return aim < 0 ? heuristic(c) : Math.abs(c % width - aim % width) + Math.abs(c / width - aim / width);
+	}
+
+	private void setGoal(int targetpos, int range)
+	{
+		targetX = targetpos % width;
+		targetY = targetpos / width;
+		rangeSquared = range * range;
+		rangeReach = 0;
+		for (int dx = 0; dx <= range; dx++)
+		{
+			int dy = (int)Math.sqrt(rangeSquared - dx * dx);
+			rangeReach = Math.max(rangeReach, dx + dy);
+		}
+	}
+
+	private boolean inRange(int c)
+	{
+		int dx = c % width - targetX;
+		int dy = c / width - targetY;
+		return dx * dx + dy * dy <= rangeSquared;
+	}
+
+	/**
+	 * @return A lower bound of the walk from the cell to a cell in range of the target
+	 */
+	private int heuristic(int c)
+	{
+		return Math.max(0, Math.abs(c % width - targetX) + Math.abs(c / width - targetY) - rangeReach);
+	}
+
+	/**
+	 * @return True if a unit can step onto the cell this tick
+	 */
+	private boolean free(int c)
+	{
+		return !wall[c] && occupied[c] != tickStamp && reserved[c] != reserveStamp;
+	}
+
+	private void markReserved(ResourceUsage ru)
+	{
+		reserveStamp++;
+		List<Integer> used = ru == null ? null : ru.getPositionsUsed();
+		if (used != null)
+		{
+			for (int i = 0; i < used.size(); i++)
+			{
+				int pos = used.get(i);
+				if (pos >= 0 && pos < reserved.length)
+				{
+					reserved[pos] = reserveStamp;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stamps the cells holding units, and throws away the plans of units that died or stayed idle. Done once per tick
+	 */
+	private void update(GameState gs)
+	{
+		PhysicalGameState current = gs.getPhysicalGameState();
+		if (current == pgs && gs.getTime() == time)
+		{
+			return;
+		}
+		if (current.getWidth() != width || current.getHeight() != height)
+		{
+			resize(current);
+		}
+		else if (current != pgs)
+		{
+			// Hosts that send the whole state every tick give a new map of the same size. The plans are kept, a wall
+			// that appeared on one fails it when it is checked
+			readWalls(current);
+		}
+		pgs = current;
+		time = gs.getTime();
+		tickStamp++;
+
+		List<Unit> units = current.getUnits();
+		for (int i = 0; i < units.size(); i++)
+		{
+			Unit u = units.get(i);
+			int c = u.getX() + u.getY() * width;
+			occupied[c] = tickStamp;
+			if (!u.getType().canMove)
+			{
+				staticStamp[c] = tickStamp;
+			}
+			else if (!plans.isEmpty())
+			{
+				Plan p = plans.get(u.getID());
+				if (p != null)
+				{
+					p.seen = time;
+				}
+			}
+		}
+		for (Iterator<Plan> i = plans.values().iterator(); i.hasNext();)
+		{
+			Plan p = i.next();
+			boolean used = false;
+			for (Plan q = p; q != null; q = q.next)
+			{
+				used |= q.used >= time - idleTicks;
+			}
+			if (p.seen != time || !used)
+			{
+				i.remove();
+				evictions++;
+			}
+		}
+	}
+
+	/**
+	 * Starts over on a new map
+	 */
+	private void resize(PhysicalGameState current)
+	{
+		width = current.getWidth();
+		height = current.getHeight();
+		int cells = width * height;
+		wall = new boolean[cells];
+		occupied = new int[cells];
+		staticStamp = new int[cells];
+		tickStamp = 0;
+		reserved = new int[cells];
+		reserveStamp = 0;
+		g = new int[cells];
+		parent = new int[cells];
+		searched = new int[cells];
+		searchStamp = 0;
+		goalMark = new int[cells];
+		goalStamp = 0;
+		plans.clear();
+		readWalls(current);
+	}
+
+	private void readWalls(PhysicalGameState current)
+	{
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				wall[x + y * width] = current.getTerrain(x, y) == PhysicalGameState.TERRAIN_WALL;
+			}
+		}
+	}
+
+	private void push(int f, int c)
+	{
+		if (heapSize == heap.length)
+		{
+			long[] bigger = new long[heap.length * 2];
+			System.arraycopy(heap, 0, bigger, 0, heapSize);
+			heap = bigger;
+		}
+		long entry = ((long)f << 32) | c;
+		int i = heapSize++;
+		while (i > 0)
+		{
+			int up = (i - 1) >> 1;
+			if (heap[up] <= entry)
+			{
+				break;
+			}
+			heap[i] = heap[up];
+			i = up;
+		}
+		heap[i] = entry;
+	}
+
+	private long pop()
+	{
+		long top = heap[0];
+		long last = heap[--heapSize];
+		int i = 0;
+		while (true)
+		{
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+			{
+				break;
+			}
+			if (child + 1 < heapSize && heap[child + 1] < heap[child])
+			{
+				child++;
+			}
+			if (heap[child] >= last)
+			{
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return top;
+	}
+
+	/**
+	 * @return Number of units with plans
+	 */
+	public int size()
+	{
+		return plans.size();
+	}
+
+	/**
+	 * @return Most units with plans
+	 */
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	/**
+	 * @return Ticks a plan is kept without being asked for
+	 */
+	public int getIdleTicks()
+	{
+		return idleTicks;
+	}
+
+	public long getQueries()
+	{
+		return queries;
+	}
+
+	/**
+	 * @return Number of cells expanded by all searches so far, repairs and searches from scratch
+	 */
+	public long getNodesExpanded()
+	{
+		return nodesExpanded;
+	}
+
+	/**
+	 * @return Number of plans searched again from scratch, including the first search of every plan
+	 */
+	public long getReplanned()
+	{
+		return replanned;
+	}
+
+	public void clearCounters()
+	{
+		queries = 0;
+		reused = 0;
+		repaired = 0;
+		replanned = 0;
+		nodesExpanded = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * @return One line with the counters
+	 */
+	public String report()
+	{
+		return String.format(Locale.ROOT, "incremental paths: %d queries, %d reused, %d repaired, %d searched from scratch, %d nodes expanded, %d plans evicted, %d kept\n",
+				queries, reused, repaired, replanned, nodesExpanded, evictions, plans.size());
+	}
+}
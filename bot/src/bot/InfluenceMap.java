@@ -0,0 +1,310 @@
+package bot;
+
+import java.util.List;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+import rts.units.UnitType;
+
+/**
+ * Threat and support of every cell. A unit that can attack stamps its damage on every cell it could hit after one move -
+ * the enemy's on the threat, and on the melee threat for units with an attack range of 1, mine on the support.
+ * The map is kept from tick to tick: only the stamps of units that moved, appeared or died are taken off and put back,
+ * so a tick costs one pass over the units plus the cells around the ones that changed. Every cell is read in O(1)
+ */
+public class InfluenceMap
+{
+	// What a stamp adds to
+	private static final int SUPPORT = 0;
+	private static final int THREAT = 1;
+	private static final int MELEE_THREAT = 2;
+
+	// Marks a free slot of the stamp tables. Unit IDs are never negative
+	private static final long EMPTY = -1;
+
+	private int width;
+	private int height;
+	private int player = -1;
+
+	private int[] threat = new int[0];
+	private int[] meleeThreat = new int[0];
+	private int[] support = new int[0];
+
+	// Stamp of every unit by unit ID, for this tick and the last one. The length is a power of two
+	private long[] ids = newIds(64);
+	private int[] cells = new int[64];
+	private int[] radii = new int[64];
+	private int[] damages = new int[64];
+	private int[] kinds = new int[64];
+	private long[] oldIds = newIds(64);
+	private int[] oldCells = new int[64];
+	private int[] oldRadii = new int[64];
+	private int[] oldDamages = new int[64];
+	private int[] oldKinds = new int[64];
+	// Stamps of the last tick whose unit was seen again
+	private boolean[] oldSeen = new boolean[64];
+
+	private int cellsTouched;
+	private int stampsChanged;
+
+	/**
+	 * Brings the map up to date with the units of this tick
+	 * @param snapshot Snapshot of this tick
+	 */
+	public void update(TickSnapshot snapshot)
+	{
+		PhysicalGameState pgs = snapshot.getPhysicalGameState();
+		cellsTouched = 0;
+		stampsChanged = 0;
+		// Another map or another side - start over
+		if (pgs.getWidth() != width || pgs.getHeight() != height || snapshot.getPlayerID() != player)
+		{
+			width = pgs.getWidth();
+			height = pgs.getHeight();
+			player = snapshot.getPlayerID();
+			threat = new int[width * height];
+			meleeThreat = new int[width * height];
+			support = new int[width * height];
+			clearTable(oldIds);
+		}
+		List<Unit> units = pgs.getUnits();
+		if (units.size() * 2 > ids.length)
+		{
+			grow(Integer.highestOneBit(units.size()) * 4);
+		}
+
+		for (int i = 0; i < oldSeen.length; i++)
+		{
+			oldSeen[i] = false;
+		}
+		// Indexed loop, this runs every tick and must not allocate
+		for (int i = 0; i < units.size(); i++)
+		{
+			Unit u = units.get(i);
+			UnitType type = u.getType();
+			if (!type.canAttack || u.getPlayer() < 0)
+			{
+				continue;
+			}
+			int cell = u.getX() + u.getY() * width;
+			int radius = type.attackRange + 1;
+			int damage = (type.minDamage + type.maxDamage) / 2;
+			int kind = u.getPlayer() == player ? SUPPORT : type.attackRange <= 1 ? MELEE_THREAT : THREAT;
+
+			int old = findSlot(oldIds, u.getID());
+			boolean same = false;
+			if (oldIds[old] != EMPTY)
+			{
+				oldSeen[old] = true;
+				same = oldCells[old] == cell && oldRadii[old] == radius && oldDamages[old] == damage && oldKinds[old] == kind;
+				if (!same)
+				{
+					stamp(oldCells[old], oldRadii[old], -oldDamages[old], oldKinds[old]);
+				}
+			}
+			if (!same)
+			{
+				stamp(cell, radius, damage, kind);
+				stampsChanged++;
+			}
+			int slot = findSlot(ids, u.getID());
+			ids[slot] = u.getID();
+			cells[slot] = cell;
+			radii[slot] = radius;
+			damages[slot] = damage;
+			kinds[slot] = kind;
+		}
+
+		// Units of the last tick not seen again died
+		for (int i = 0; i < oldIds.length; i++)
+		{
+			if (oldIds[i] != EMPTY && !oldSeen[i])
+			{
+				stamp(oldCells[i], oldRadii[i], -oldDamages[i], oldKinds[i]);
+				stampsChanged++;
+			}
+		}
+		swapTables();
+	}
+
+	/**
+	 * Adds damage to every cell within the radius of a cell
+	 */
+	private void stamp(int cell, int radius, int damage, int kind)
+	{
+		int[] target = kind == SUPPORT ? support : threat;
+		int cx = cell % width;
+		int cy = cell / width;
+		int minY = Math.max(0, cy - radius);
+		int maxY = Math.min(height - 1, cy + radius);
+		int minX = Math.max(0, cx - radius);
+		int maxX = Math.min(width - 1, cx + radius);
+		int radiusSquared = radius * radius;
+		for (int y = minY; y <= maxY; y++)
+		{
+			int dy = y - cy;
+			for (int x = minX; x <= maxX; x++)
+			{
+				int dx = x - cx;
+				if (dx * dx + dy * dy <= radiusSquared)
+				{
+					int c = x + y * width;
+					target[c] += damage;
+					if (kind == MELEE_THREAT)
+					{
+						meleeThreat[c] += damage;
+					}
+					cellsTouched++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Makes this tick's table the last tick's one, and empties the other
+	 */
+	private void swapTables()
+	{
+		long[] i = oldIds;
+		oldIds = ids;
+		ids = i;
+		int[] c = oldCells;
+		oldCells = cells;
+		cells = c;
+		int[] r = oldRadii;
+		oldRadii = radii;
+		radii = r;
+		int[] d = oldDamages;
+		oldDamages = damages;
+		damages = d;
+		int[] k = oldKinds;
+		oldKinds = kinds;
+		kinds = k;
+		clearTable(ids);
+	}
+
+	/**
+	 * Makes both tables big enough for the number of units, keeping the stamps of the last tick
+	 */
+	private void grow(int length)
+	{
+		long[] keptIds = oldIds;
+		int[] keptCells = oldCells;
+		int[] keptRadii = oldRadii;
+		int[] keptDamages = oldDamages;
+		int[] keptKinds = oldKinds;
+		ids = newIds(length);
+		cells = new int[length];
+		radii = new int[length];
+		damages = new int[length];
+		kinds = new int[length];
+		oldIds = newIds(length);
+		oldCells = new int[length];
+		oldRadii = new int[length];
+		oldDamages = new int[length];
+		oldKinds = new int[length];
+		oldSeen = new boolean[length];
+		for (int i = 0; i < keptIds.length; i++)
+		{
+			if (keptIds[i] != EMPTY)
+			{
+				int slot = findSlot(oldIds, keptIds[i]);
+				oldIds[slot] = keptIds[i];
+				oldCells[slot] = keptCells[i];
+				oldRadii[slot] = keptRadii[i];
+				oldDamages[slot] = keptDamages[i];
+				oldKinds[slot] = keptKinds[i];
+			}
+		}
+	}
+
+	private static long[] newIds(int length)
+	{
+		long[] k = new long[length];
+		clearTable(k);
+		return k;
+	}
+
+	private static void clearTable(long[] k)
+	{
+		for (int i = 0; i < k.length; i++)
+		{
+			k[i] = EMPTY;
+		}
+	}
+
+	/**
+	 * @return The slot holding the ID, or the free slot it would go in
+	 */
+	private static int findSlot(long[] k, long id)
+	{
+		int mask = k.length - 1;
+		// Spread the IDs, which are handed out in order
+		int slot = (int)((id * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (k[slot] != EMPTY && k[slot] != id)
+		{
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * @return Summed damage of the enemies that could hit the cell after one move
+	 */
+	public int getThreat(int x, int y)
+	{
+		return threat[x + y * width];
+	}
+
+	/**
+	 * @return Summed damage of the enemy melee units that could hit the cell after one move
+	 */
+	public int getMeleeThreat(int x, int y)
+	{
+		return meleeThreat[x + y * width];
+	}
+
+	/**
+	 * @return Summed damage of my units that could hit the cell after one move
+	 */
+	public int getSupport(int x, int y)
+	{
+		return support[x + y * width];
+	}
+
+	/**
+	 * @return True if no enemy can hit the cell soon, or my units there hit at least as hard
+	 */
+	public boolean isSafe(int x, int y)
+	{
+		int c = x + y * width;
+		return threat[c] == 0 || support[c] >= threat[c];
+	}
+
+	/**
+	 * @return Number of cells the last update changed
+	 */
+	public int getCellsTouched()
+	{
+		return cellsTouched;
+	}
+
+	/**
+	 * @return Number of stamps taken off or put on by the last update
+	 */
+	public int getStampsChanged()
+	{
+		return stampsChanged;
+	}
+
+	/**
+	 * Forgets every stamp
+	 */
+	public void clear()
+	{
+		width = 0;
+		height = 0;
+		player = -1;
+		clearTable(ids);
+		clearTable(oldIds);
+	}
+}
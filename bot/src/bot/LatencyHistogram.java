@@ -0,0 +1,103 @@
+package bot;
+
+/**
+ * Log-linear histogram of durations in nanoseconds. Every power of two is split in 16 buckets,
+ * so a percentile is within about 6% of the real value. Recording a value is a few shifts and an increment
+ */
+public class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	private final long[] counts = new long[64 * SUB_BUCKETS];
+	private long total;
+	private long max;
+	private long sum;
+
+	public void record(long value)
+	{
+		if (value < 0)
+		{
+			value = 0;
+		}
+		counts[bucketOf(value)]++;
+		total++;
+		sum += value;
+		if (value > max)
+		{
+			max = value;
+		}
+	}
+
+	public long getCount()
+	{
+		return total;
+	}
+
+	public long getMax()
+	{
+		return max;
+	}
+
+	public double getMean()
+	{
+		return total == 0 ? 0 : (double)sum / total;
+	}
+
+	/**
+	 * @param q Quantile between 0 and 1
+	 * @return Upper bound of the bucket holding the quantile
+	 */
+	public long getQuantile(double q)
+	{
+		if (total == 0)
+		{
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(q * total));
+		long seen = 0;
+		for (int b = 0; b < counts.length; b++)
+		{
+			seen += counts[b];
+			if (seen >= rank)
+			{
+				return Math.min(max, upperBoundOf(b));
+			}
+		}
+		return max;
+	}
+
+	public void clear()
+	{
+		for (int b = 0; b < counts.length; b++)
+		{
+			counts[b] = 0;
+		}
+		total = 0;
+		max = 0;
+		sum = 0;
+	}
+
+	private static int bucketOf(long value)
+	{
+		if (value < SUB_BUCKETS)
+		{
+			return (int)value;
+		}
+		// The highest bit picks the power of two, the next bits pick the bucket inside it
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	private static long upperBoundOf(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+		{
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+}
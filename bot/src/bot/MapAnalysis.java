@@ -0,0 +1,602 @@
+package bot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import rts.*;
+import rts.units.Unit;
+
+/**
+ * Static facts about a map, worked out once before the game: which side each player starts on,
+ * the resources around each starting base, where barracks can go and the rally points of Stack.
+ * Barracks sites stay off the chokepoints, the cells that split the map in two when blocked.
+ * The facts can be saved to a folder, named after a hash of the terrain and starting buildings,
+ * so the next game on the same map only has to read them back
+ */
+public class MapAnalysis
+{
+	// Groups that rally in their own column when stacking
+	public static final int RALLY_RANGED = 0;
+	public static final int RALLY_WORKER = 1;
+	public static final int RALLY_MELEE = 2;
+
+	// Most barracks sites kept per base
+	private static final int MAX_BARRACKS_SITES = 8;
+	// Version of the saved facts. Files of another version are worked out again
+	private static final int VERSION = 2;
+
+	private int width;
+	private int height;
+	private long hash;
+	private int multiplier;
+
+	// Indexed by player
+	private boolean[] onTop = new boolean[2];
+	private int[] baseCell = {-1, -1};
+	private int[][] baseResources = new int[2][0];
+	private int[][] barracksSites = new int[2][0];
+	private int[][][] rallyCells = new int[2][3][0];
+
+	/**
+	 * Works out the facts of the map from its starting state
+	 * @param gs Game State at the start of the game
+	 * @return The analysis
+	 */
+	public static MapAnalysis analyze(GameState gs)
+	{
+		PhysicalGameState pgs = gs.getPhysicalGameState();
+		MapAnalysis a = new MapAnalysis();
+		a.width = pgs.getWidth();
+		a.height = pgs.getHeight();
+		a.hash = hash(pgs);
+		a.multiplier = multiplierFor(a.height);
+
+		int cells = a.width * a.height;
+		boolean[] walkable = new boolean[cells];
+		boolean[] nextToResource = new boolean[cells];
+		for (int c = 0; c < cells; c++)
+		{
+			walkable[c] = pgs.getTerrain(c % a.width, c / a.width) != PhysicalGameState.TERRAIN_WALL;
+		}
+		List<Unit> resources = new ArrayList<Unit>();
+		Unit[] bases = new Unit[2];
+		for (Unit u : pgs.getUnits())
+		{
+			if (!u.getType().canMove)
+			{
+				walkable[u.getX() + u.getY() * a.width] = false;
+			}
+			if (u.getType().isResource)
+			{
+				resources.add(u);
+				for (int dy = -1; dy <= 1; dy++)
+				{
+					for (int dx = -1; dx <= 1; dx++)
+					{
+						int x = u.getX() + dx;
+						int y = u.getY() + dy;
+						if (x >= 0 && y >= 0 && x < a.width && y < a.height)
+						{
+							nextToResource[x + y * a.width] = true;
+						}
+					}
+				}
+			}
+			// The first stockpile of each player is its starting base
+			else if (u.getType().isStockpile && u.getPlayer() >= 0 && u.getPlayer() < 2 && bases[u.getPlayer()] == null)
+			{
+				bases[u.getPlayer()] = u;
+			}
+		}
+
+		boolean[] choke = a.findChokepoints(walkable);
+
+		int[] cluster = clusterResources(resources);
+		for (int player = 0; player < 2; player++)
+		{
+			Unit b = bases[player];
+			if (b == null)
+			{
+				continue;
+			}
+			a.baseCell[player] = b.getX() + b.getY() * a.width;
+			// Same test as the per-tick one used to be
+			a.onTop[player] = b.getX() < a.width / 2;
+			a.baseResources[player] = a.resourcesOf(b, bases, resources, cluster);
+			a.barracksSites[player] = a.findBarracksSites(b, a.onTop[player], walkable, nextToResource, choke);
+			a.rallyCells[player] = a.findRallyCells(a.onTop[player], walkable);
+		}
+		return a;
+	}
+
+	/**
+	 * Reads the analysis of the map from the folder, or works it out and saves it there
+	 * @param gs Game State at the start of the game
+	 * @param folder Folder the AI can read and write, or null
+	 * @return The analysis
+	 */
+	public static MapAnalysis loadOrAnalyze(GameState gs, String folder)
+	{
+		long h = hash(gs.getPhysicalGameState());
+		File file = folder == null ? null : new File(folder, "agilebot-" + Long.toHexString(h) + ".txt");
+		if (file != null && file.exists())
+		{
+			try
+			{
+				MapAnalysis a = load(file);
+				if (a.hash == h)
+				{
+					return a;
+				}
+			}
+			catch (IOException | RuntimeException e)
+			{
+				// A broken file is worked out again and overwritten
+			}
+		}
+		MapAnalysis a = analyze(gs);
+		if (file != null)
+		{
+			try
+			{
+				a.save(file);
+			}
+			catch (IOException e)
+			{
+				// Not being able to cache it only costs time in the next game
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * @param pgs Physical Game State
+	 * @return True if the analysis was made for a map of this size
+	 */
+	public boolean fits(PhysicalGameState pgs)
+	{
+		return pgs.getWidth() == width && pgs.getHeight() == height;
+	}
+
+	public long getHash()
+	{
+		return hash;
+	}
+
+	/**
+	 * @return Number that increments for every 8 rows of the map beyond the first 8
+	 */
+	public int getMultiplier()
+	{
+		return multiplier;
+	}
+
+	/**
+	 * @param player Player
+	 * @return True if the player started on the left of the map
+	 */
+	public boolean isOnTop(int player)
+	{
+		return onTop[player];
+	}
+
+	/**
+	 * @param player Player
+	 * @return Cell of the player's starting base, or -1 if it had none
+	 */
+	public int getBaseCell(int player)
+	{
+		return baseCell[player];
+	}
+
+	/**
+	 * @param player Player
+	 * @return Cells of the resources in the clusters closest to the player's starting base
+	 */
+	public int[] getBaseResources(int player)
+	{
+		return baseResources[player];
+	}
+
+	/**
+	 * @param player Player
+	 * @return Cells to build barracks on, best first
+	 */
+	public int[] getBarracksSites(int player)
+	{
+		return barracksSites[player];
+	}
+
+	/**
+	 * @param player Player
+	 * @param group RALLY_RANGED, RALLY_WORKER or RALLY_MELEE
+	 * @return Cells the group lines up on when stacking, in order
+	 */
+	public int[] getRallyCells(int player, int group)
+	{
+		return rallyCells[player][group];
+	}
+
+	/**
+	 * @param height Map height
+	 * @return Number that increments for every 8 rows of the map beyond the first 8
+	 */
+	public static int multiplierFor(int height)
+	{
+		return height <= 8 ? 0 : (height - 1) / 8;
+	}
+
+	/**
+	 * FNV-1a hash of the size, the terrain and the units that cannot move
+	 * @param pgs Physical Game State
+	 * @return Hash
+	 */
+	public static long hash(PhysicalGameState pgs)
+	{
+		long h = 0xcbf29ce484222325L;
+		h = mix(h, pgs.getWidth());
+		h = mix(h, pgs.getHeight());
+		for (int y = 0; y < pgs.getHeight(); y++)
+		{
+			for (int x = 0; x < pgs.getWidth(); x++)
+			{
+				h = mix(h, pgs.getTerrain(x, y));
+			}
+		}
+		for (Unit u : pgs.getUnits())
+		{
+			if (!u.getType().canMove)
+			{
+				h = mix(h, u.getType().ID);
+				h = mix(h, u.getPlayer());
+				h = mix(h, u.getX());
+				h = mix(h, u.getY());
+			}
+		}
+		return h;
+	}
+
+	private static long mix(long h, int v)
+	{
+		for (int i = 0; i < 4; i++)
+		{
+			h ^= (v >>> (8 * i)) & 0xff;
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	/**
+	 * Groups resources that are at most two cells apart
+	 * @return Cluster number of every resource
+	 */
+	private static int[] clusterResources(List<Unit> resources)
+	{
+		int n = resources.size();
+		int[] cluster = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			cluster[i] = -1;
+		}
+		int[] stack = new int[n];
+		int nClusters = 0;
+		for (int i = 0; i < n; i++)
+		{
+			if (cluster[i] >= 0)
+			{
+				continue;
+			}
+			int top = 0;
+			stack[top++] = i;
+			cluster[i] = nClusters;
+			while (top > 0)
+			{
+				Unit r = resources.get(stack[--top]);
+				for (int j = 0; j < n; j++)
+				{
+					Unit r2 = resources.get(j);
+					if (cluster[j] < 0 && Math.abs(r.getX() - r2.getX()) <= 2 && Math.abs(r.getY() - r2.getY()) <= 2)
+					{
+						cluster[j] = nClusters;
+						stack[top++] = j;
+					}
+				}
+			}
+			nClusters++;
+		}
+		return cluster;
+	}
+
+	/**
+	 * @return Cells of the resources in clusters closer to this base than to the other one
+	 */
+	private int[] resourcesOf(Unit b, Unit[] bases, List<Unit> resources, int[] cluster)
+	{
+		// Distance from each cluster to each base
+		Map<Integer, int[]> distances = new HashMap<Integer, int[]>();
+		for (int i = 0; i < resources.size(); i++)
+		{
+			int[] d = distances.get(cluster[i]);
+			if (d == null)
+			{
+				d = new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE};
+				distances.put(cluster[i], d);
+			}
+			Unit r = resources.get(i);
+			for (int player = 0; player < 2; player++)
+			{
+				if (bases[player] != null)
+				{
+					d[player] = Math.min(d[player], Math.abs(r.getX() - bases[player].getX()) + Math.abs(r.getY() - bases[player].getY()));
+				}
+			}
+		}
+		int mine = b.getPlayer();
+		List<Integer> cells = new ArrayList<Integer>();
+		for (int i = 0; i < resources.size(); i++)
+		{
+			int[] d = distances.get(cluster[i]);
+			if (d[mine] <= d[1 - mine])
+			{
+				cells.add(resources.get(i).getX() + resources.get(i).getY() * width);
+			}
+		}
+		return toArray(cells);
+	}
+
+	/**
+	 * Free cells near the base that don't block a resource or a chokepoint.
+	 * The offsets the bot always used for its side come first, if they are legal on this map.
+	 * The bottom side used to try the base's own cell first, which is never free, so that one is left out
+	 */
+	private int[] findBarracksSites(Unit b, boolean top, boolean[] walkable, boolean[] nextToResource, boolean[] choke)
+	{
+		int[][] preferred = top ? new int[][]{{2, 2}, {1, 3}, {3, 1}} : new int[][]{{1, -1}, {-1, 1}};
+		List<Integer> sites = new ArrayList<Integer>();
+		for (int[] offset : preferred)
+		{
+			addSite(sites, b.getX() + offset[0], b.getY() + offset[1], walkable, nextToResource, choke);
+		}
+		for (int d = 2; d <= 4 && sites.size() < MAX_BARRACKS_SITES; d++)
+		{
+			for (int dy = -d; dy <= d; dy++)
+			{
+				int dx = d - Math.abs(dy);
+				addSite(sites, b.getX() + dx, b.getY() + dy, walkable, nextToResource, choke);
+				if (dx != 0)
+				{
+					addSite(sites, b.getX() - dx, b.getY() + dy, walkable, nextToResource, choke);
+				}
+			}
+		}
+		while (sites.size() > MAX_BARRACKS_SITES)
+		{
+			sites.remove(sites.size() - 1);
+		}
+		return toArray(sites);
+	}
+
+	private void addSite(List<Integer> sites, int x, int y, boolean[] walkable, boolean[] nextToResource, boolean[] choke)
+	{
+		if (x < 0 || y < 0 || x >= width || y >= height)
+		{
+			return;
+		}
+		int c = x + y * width;
+		if (walkable[c] && !nextToResource[c] && !choke[c] && !sites.contains(c))
+		{
+			sites.add(c);
+		}
+	}
+
+	/**
+	 * The same columns Stack always used: the bottom left corner when on top, the top right corner otherwise.
+	 * Blocked cells are left out
+	 */
+	private int[][] findRallyCells(boolean top, boolean[] walkable)
+	{
+		int[] columns = top ? new int[]{3, 1, 2} : new int[]{width - 4, width - 2, width - 3};
+		int[][] cells = new int[3][];
+		for (int group = 0; group < 3; group++)
+		{
+			List<Integer> column = new ArrayList<Integer>();
+			int x = columns[group];
+			for (int i = 1; i <= height && x >= 0 && x < width; i++)
+			{
+				int y = top ? height - i : i - 1;
+				if (walkable[x + y * width])
+				{
+					column.add(x + y * width);
+				}
+			}
+			cells[group] = toArray(column);
+		}
+		return cells;
+	}
+
+	/**
+	 * Articulation points of the walkable cells, found with an iterative depth first search
+	 */
+	private boolean[] findChokepoints(boolean[] walkable)
+	{
+		int cells = width * height;
+		boolean[] choke = new boolean[cells];
+		int[] discovered = new int[cells];
+		int[] low = new int[cells];
+		int[] parent = new int[cells];
+		int[] nextNeighbor = new int[cells];
+		int[] stack = new int[cells];
+		int counter = 0;
+		for (int root = 0; root < cells; root++)
+		{
+			if (!walkable[root] || discovered[root] != 0)
+			{
+				continue;
+			}
+			int rootChildren = 0;
+			int top = 0;
+			stack[top++] = root;
+			parent[root] = -1;
+			discovered[root] = low[root] = ++counter;
+			while (top > 0)
+			{
+				int c = stack[top - 1];
+				if (nextNeighbor[c] < 4)
+				{
+					int n = neighbor(c, nextNeighbor[c]++);
+					if (n < 0 || !walkable[n])
+					{
+						continue;
+					}
+					if (discovered[n] == 0)
+					{
+						parent[n] = c;
+						discovered[n] = low[n] = ++counter;
+						stack[top++] = n;
+						if (c == root)
+						{
+							rootChildren++;
+						}
+					}
+					else if (n != parent[c])
+					{
+						low[c] = Math.min(low[c], discovered[n]);
+					}
+				}
+				else
+				{
+					top--;
+					int p = parent[c];
+					if (p >= 0)
+					{
+						low[p] = Math.min(low[p], low[c]);
+						if (p != root && low[c] >= discovered[p])
+						{
+							choke[p] = true;
+						}
+					}
+				}
+			}
+			choke[root] = rootChildren > 1;
+		}
+		return choke;
+	}
+
+	private int neighbor(int c, int direction)
+	{
+		int x = c % width;
+		switch (direction)
+		{
+			case 0: return c >= width ? c - width : -1;
+			case 1: return x < width - 1 ? c + 1 : -1;
+			case 2: return c + width < width * height ? c + width : -1;
+			default: return x > 0 ? c - 1 : -1;
+		}
+	}
+
+	private void save(File file) throws IOException
+	{
+		try (PrintWriter w = new PrintWriter(file, "UTF-8"))
+		{
+			w.println("version=" + VERSION);
+			w.println("hash=" + Long.toHexString(hash));
+			w.println("width=" + width);
+			w.println("height=" + height);
+			w.println("multiplier=" + multiplier);
+			for (int player = 0; player < 2; player++)
+			{
+				w.println("p" + player + ".onTop=" + onTop[player]);
+				w.println("p" + player + ".base=" + baseCell[player]);
+				w.println("p" + player + ".resources=" + join(baseResources[player]));
+				w.println("p" + player + ".barracks=" + join(barracksSites[player]));
+				for (int group = 0; group < 3; group++)
+				{
+					w.println("p" + player + ".rally" + group + "=" + join(rallyCells[player][group]));
+				}
+			}
+		}
+	}
+
+	private static MapAnalysis load(File file) throws IOException
+	{
+		Map<String, String> values = new HashMap<String, String>();
+		try (BufferedReader r = new BufferedReader(new FileReader(file)))
+		{
+			String line;
+			while ((line = r.readLine()) != null)
+			{
+				int eq = line.indexOf('=');
+				if (eq > 0)
+				{
+					values.put(line.substring(0, eq), line.substring(eq + 1));
+				}
+			}
+		}
+		if (!String.valueOf(VERSION).equals(values.get("version")))
+		{
+			throw new IOException("Saved by another version");
+		}
+		MapAnalysis a = new MapAnalysis();
+		a.hash = Long.parseUnsignedLong(values.get("hash"), 16);
+		a.width = Integer.parseInt(values.get("width"));
+		a.height = Integer.parseInt(values.get("height"));
+		a.multiplier = Integer.parseInt(values.get("multiplier"));
+		for (int player = 0; player < 2; player++)
+		{
+			a.onTop[player] = Boolean.parseBoolean(values.get("p" + player + ".onTop"));
+			a.baseCell[player] = Integer.parseInt(values.get("p" + player + ".base"));
+			a.baseResources[player] = split(values.get("p" + player + ".resources"));
+			a.barracksSites[player] = split(values.get("p" + player + ".barracks"));
+			for (int group = 0; group < 3; group++)
+			{
+				a.rallyCells[player][group] = split(values.get("p" + player + ".rally" + group));
+			}
+		}
+		return a;
+	}
+
+	private static String join(int[] values)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < values.length; i++)
+		{
+			if (i > 0)
+			{
+				sb.append(',');
+			}
+			sb.append(values[i]);
+		}
+		return sb.toString();
+	}
+
+	private static int[] split(String s)
+	{
+		if (s == null || s.isEmpty())
+		{
+			return new int[0];
+		}
+		String[] parts = s.split(",");
+		int[] values = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+		{
+			values[i] = Integer.parseInt(parts[i]);
+		}
+		return values;
+	}
+
+	private static int[] toArray(List<Integer> list)
+	{
+		int[] a = new int[list.size()];
+		for (int i = 0; i < a.length; i++)
+		{
+			a[i] = list.get(i);
+		}
+		return a;
+	}
+}
@@ -0,0 +1,155 @@
+package bot;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs the decisions of many units on a fork/join pool. Every decision only reads the tick's snapshot, grid and fields
+ * and writes its own slot, so they can run in any order. Committing them to the abstraction layer is left to the caller,
+ * on its own thread
+ */
+public class ParallelDecisions
+{
+	// Fewest decisions worth a task of their own
+	private static final int MIN_TASK_SIZE = 8;
+
+	// Started with the first run on several threads and stopped at the end of every game
+	private ForkJoinPool pool;
+	private int parallelism;
+
+	// Decision of the current run, and the tree of ranges kept for runs over the same number of slots
+	private IntConsumer decide;
+	private Range root;
+
+	/**
+	 * A range of slots, split in halves until it is small enough. The halves are built once with the range and
+	 * reinitialized for every run, so running the same number of slots again allocates no tasks
+	 */
+	private class Range extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+		private final Range left;
+		private final Range right;
+
+		Range(int from, int to)
+		{
+			this.from = from;
+			this.to = to;
+			int middle = (from + to) >>> 1;
+			left = to - from <= MIN_TASK_SIZE ? null : new Range(from, middle);
+			right = left == null ? null : new Range(middle, to);
+		}
+
+		void prepare()
+		{
+			reinitialize();
+			if (left != null)
+			{
+				left.prepare();
+				right.prepare();
+			}
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (left == null)
+			{
+				for (int slot = from; slot < to; slot++)
+				{
+					decide.accept(slot);
+				}
+				return;
+			}
+			invokeAll(left, right);
+		}
+	}
+
+	/**
+	 * @param parallelism Number of threads, 1 or less to decide on the calling thread
+	 */
+	public ParallelDecisions(int parallelism)
+	{
+		setParallelism(parallelism);
+	}
+
+	public int getParallelism()
+	{
+		return parallelism;
+	}
+
+	/**
+	 * @param threads Number of threads, 1 or less to decide on the calling thread
+	 */
+	public void setParallelism(int threads)
+	{
+		if (threads == parallelism)
+		{
+			return;
+		}
+		shutdown();
+		parallelism = Math.max(1, threads);
+	}
+
+	/**
+	 * @return True if the decisions run on the pool
+	 */
+	public boolean isParallel()
+	{
+		return parallelism > 1;
+	}
+
+	/**
+	 * Calls decide for every slot from 0 to n - 1 and waits for all of them
+	 * @param n Number of slots
+	 * @param decide Decision of one slot, must only write to its own slot. Keep it in a field to run without allocating
+	 */
+	public void run(int n, IntConsumer decide)
+	{
+		if (parallelism <= 1 || n <= MIN_TASK_SIZE)
+		{
+			for (int slot = 0; slot < n; slot++)
+			{
+				decide.accept(slot);
+			}
+			return;
+		}
+		if (pool == null)
+		{
+			pool = new ForkJoinPool(parallelism);
+		}
+		if (root == null || root.to != n)
+		{
+			root = new Range(0, n);
+		}
+		else
+		{
+			root.prepare();
+		}
+		this.decide = decide;
+		try
+		{
+			pool.invoke(root);
+		}
+		finally
+		{
+			this.decide = null;
+		}
+	}
+
+	/**
+	 * Stops the threads of the pool. The next run on several threads starts a new one
+	 */
+	public void shutdown()
+	{
+		if (pool != null)
+		{
+			pool.shutdown();
+			pool = null;
+		}
+	}
+}
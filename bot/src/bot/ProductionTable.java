@@ -0,0 +1,297 @@
+package bot;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * What the barracks and the bases train, read from a table instead of being written into the behaviors.
+ * A counter rule trains a type once the enemy has enough of the type it counters, every unit of the trained type
+ * already on the field cancelling a number of those enemies. The rules are tried in order and the last one that
+ * trains something wins. When a rule does not fire, the fallback type is trained up to a limit.
+ * Decisions read the counts of the tick snapshot, so each one costs a look at every rule and nothing else.
+ *
+ * The table is a file of key=value lines, # starting a comment:
+ * <pre>
+ * counter.0=Ranged,Worker,3,3     troop to train, enemy type, enemies needed, enemies each troop cancels
+ * fallback=Ranged,3               troop to train, most of them
+ * workers=5,2                     workers per base, extra workers for every step of the map size
+ * </pre>
+ */
+public class ProductionTable
+{
+	// Table shipped next to the classes, and the one used if it is missing
+	public static final String DEFAULT_RESOURCE = "production.txt";
+	private static final String[] DEFAULT_LINES = {
+		"counter.0=Ranged,Worker,3,3",
+		"counter.1=Ranged,Heavy,1,1",
+		"counter.2=Light,Ranged,2,2",
+		"counter.3=Heavy,Light,2,2",
+		"fallback=Ranged,3",
+		"workers=5,2",
+	};
+
+	// Counter rules in the order they are tried
+	private UnitType[] trained = new UnitType[0];
+	private UnitType[] countered = new UnitType[0];
+	private int[] needed = new int[0];
+	private int[] cancelled = new int[0];
+	private UnitType fallback;
+	private int fallbackLimit;
+	private int workersPerBase;
+	private int workersPerStep;
+
+	/**
+	 * @param utt Unit type table the type names are looked up in
+	 * @return The table shipped with the bot
+	 */
+	public static ProductionTable loadDefault(UnitTypeTable utt)
+	{
+		try (InputStream in = ProductionTable.class.getResourceAsStream(DEFAULT_RESOURCE))
+		{
+			if (in != null)
+			{
+				return parse(readLines(in), utt);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			// A broken resource is no reason not to play
+		}
+		return parse(Arrays.asList(DEFAULT_LINES), utt);
+	}
+
+	/**
+	 * @param file Path of the table
+	 * @param utt Unit type table the type names are looked up in
+	 * @return The table in the file
+	 * @throws IOException If the file cannot be read
+	 * @throws IllegalArgumentException If a line names an unknown unit type or a key is missing
+	 */
+	public static ProductionTable load(String file, UnitTypeTable utt) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			return parse(readLines(in), utt);
+		}
+	}
+
+	private static List<String> readLines(InputStream in) throws IOException
+	{
+		List<String> lines = new ArrayList<String>();
+		BufferedReader r = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		String line;
+		while ((line = r.readLine()) != null)
+		{
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	private static ProductionTable parse(List<String> lines, UnitTypeTable utt)
+	{
+		ProductionTable t = new ProductionTable();
+		List<String[]> rules = new ArrayList<String[]>();
+		String fallback = null;
+		String workers = null;
+		for (String line : lines)
+		{
+			int hash = line.indexOf('#');
+			line = (hash >= 0 ? line.substring(0, hash) : line).trim();
+			int eq = line.indexOf('=');
+			if (eq <= 0)
+			{
+				continue;
+			}
+			String key = line.substring(0, eq).trim();
+			String value = line.substring(eq + 1).trim();
+			if (key.startsWith("counter."))
+			{
+				// Rules go in the order of their number, not of the lines
+				int index = Integer.parseInt(key.substring("counter.".length()));
+				while (rules.size() <= index)
+				{
+					rules.add(null);
+				}
+				rules.set(index, value.split("\\s*,\\s*"));
+			}
+			else if (key.equals("fallback"))
+			{
+				fallback = value;
+			}
+			else if (key.equals("workers"))
+			{
+				workers = value;
+			}
+		}
+		if (fallback == null || workers == null)
+		{
+			throw new IllegalArgumentException("production table needs a fallback and a workers line");
+		}
+
+		rules.removeIf(r -> r == null);
+		int n = rules.size();
+		t.trained = new UnitType[n];
+		t.countered = new UnitType[n];
+		t.needed = new int[n];
+		t.cancelled = new int[n];
+		for (int i = 0; i < n; i++)
+		{
+			String[] r = rules.get(i);
+			t.trained[i] = type(utt, r[0]);
+			t.countered[i] = type(utt, r[1]);
+			t.needed[i] = Integer.parseInt(r[2]);
+			t.cancelled[i] = Integer.parseInt(r[3]);
+		}
+		String[] f = fallback.split("\\s*,\\s*");
+		t.fallback = type(utt, f[0]);
+		t.fallbackLimit = Integer.parseInt(f[1]);
+		String[] w = workers.split("\\s*,\\s*");
+		t.workersPerBase = Integer.parseInt(w[0]);
+		t.workersPerStep = Integer.parseInt(w[1]);
+		return t;
+	}
+
+	private static UnitType type(UnitTypeTable utt, String name)
+	{
+		UnitType type = utt.getUnitType(name);
+		if (type == null)
+		{
+			throw new IllegalArgumentException("unknown unit type in production table: " + name);
+		}
+		return type;
+	}
+
+	/**
+	 * Picks what a barracks trains
+	 * @param snapshot Snapshot of this tick, with the unit counts of both sides
+	 * @param resources Resources of my player
+	 * @return Type to train, null to train nothing
+	 */
+	public UnitType chooseTroop(TickSnapshot snapshot, int resources)
+	{
+		UnitType choice = null;
+		for (int i = 0; i < trained.length; i++)
+		{
+			// Enemies of the countered type, less the ones my troops of the trained type already take care of
+			int enemies = snapshot.countEnemy(countered[i]);
+			int mine = snapshot.countMine(trained[i]);
+			if (enemies - mine * cancelled[i] >= needed[i])
+			{
+				if (resources >= trained[i].cost)
+				{
+					choice = trained[i];
+				}
+			}
+			else if (resources >= fallback.cost && snapshot.countMine(fallback) < fallbackLimit)
+			{
+				choice = fallback;
+			}
+		}
+		return choice;
+	}
+
+	/**
+	 * @return A table with the same rules, whose thresholds can be changed without touching this one
+	 */
+	public ProductionTable copy()
+	{
+		ProductionTable t = new ProductionTable();
+		t.trained = trained.clone();
+		t.countered = countered.clone();
+		t.needed = needed.clone();
+		t.cancelled = cancelled.clone();
+		t.fallback = fallback;
+		t.fallbackLimit = fallbackLimit;
+		t.workersPerBase = workersPerBase;
+		t.workersPerStep = workersPerStep;
+		return t;
+	}
+
+	/**
+	 * @param multiplier Map size step, from MapAnalysis
+	 * @return Number of workers the bases train up to
+	 */
+	public int getWorkerTarget(int multiplier)
+	{
+		return multiplier > 0 ? workersPerBase + workersPerStep * multiplier : workersPerBase;
+	}
+
+	/**
+	 * @return Number of counter rules
+	 */
+	public int size()
+	{
+		return trained.length;
+	}
+
+	/**
+	 * @param i Rule index
+	 * @return Enemies of the countered type needed for the rule to fire
+	 */
+	public int getNeeded(int i)
+	{
+		return needed[i];
+	}
+
+	/**
+	 * @param i Rule index
+	 * @return Enemies each trained troop already on the field cancels
+	 */
+	public int getCancelled(int i)
+	{
+		return cancelled[i];
+	}
+
+	/**
+	 * Changes the thresholds of a counter rule
+	 * @param i Rule index
+	 * @param enemiesNeeded Enemies of the countered type needed for the rule to fire
+	 * @param enemiesCancelled Enemies each trained troop already on the field cancels
+	 */
+	public void setRule(int i, int enemiesNeeded, int enemiesCancelled)
+	{
+		needed[i] = enemiesNeeded;
+		cancelled[i] = enemiesCancelled;
+	}
+
+	public int getFallbackLimit()
+	{
+		return fallbackLimit;
+	}
+
+	/**
+	 * @param limit Most troops of the fallback type trained
+	 */
+	public void setFallbackLimit(int limit)
+	{
+		fallbackLimit = limit;
+	}
+
+	public int getWorkersPerBase()
+	{
+		return workersPerBase;
+	}
+
+	public int getWorkersPerStep()
+	{
+		return workersPerStep;
+	}
+
+	/**
+	 * @param perBase Workers the bases train up to
+	 * @param perStep Extra workers for every step of the map size
+	 */
+	public void setWorkers(int perBase, int perStep)
+	{
+		workersPerBase = perBase;
+		workersPerStep = perStep;
+	}
+}
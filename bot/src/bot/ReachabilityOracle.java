@@ -0,0 +1,355 @@
+package bot;
+
+import java.util.List;
+import rts.*;
+import rts.units.Unit;
+
+/**
+ * Connected components of the walkable cells of the map.
+ * Walls, buildings and resources block a cell, moving units don't, as they will get out of the way.
+ * Two cells with the same label can reach each other, so reachability questions are answered in O(1).
+ * The labels are patched every tick for the buildings that appeared or disappeared instead of being recomputed
+ */
+public class ReachabilityOracle
+{
+	// Label of a blocked cell
+	public static final int BLOCKED = -1;
+
+	// More changes than this in one tick and the whole map is labelled again
+	private static final int MAX_INCREMENTAL_CHANGES = 32;
+
+	private int width;
+	private int height;
+	private PhysicalGameState labelledPgs;
+	private int labelledTime = -1;
+
+	// Component of every cell, or BLOCKED
+	private int[] label = new int[0];
+	private int nextLabel;
+
+	// Cells that are walls
+	private boolean[] wall = new boolean[0];
+	// Cells that are walls or hold a unit that cannot move
+	private boolean[] blocked = new boolean[0];
+
+	// Tick stamp of the last time a static unit was seen on the cell
+	private int[] occupied = new int[0];
+	private int stamp;
+
+	// Cells held by static units in the last tick and in this one
+	private int[] staticCells = new int[0];
+	private int nStaticCells;
+	private int[] previousStaticCells = new int[0];
+	private int nPreviousStaticCells;
+
+	// Cells to flood again after the changes of this tick
+	private int[] seeds = new int[0];
+	private int nSeeds;
+	// Stamp of the last update that flooded a cell
+	private int[] flooded = new int[0];
+	private int[] queue = new int[0];
+
+	private int cellsVisited;
+
+	// Goes up every time a building or resource appears or disappears
+	private int version;
+
+	/**
+	 * Patches the labels to this tick's buildings and resources. Labels the whole map when it is new
+	 * @param snapshot Snapshot of this tick
+	 */
+	public void update(TickSnapshot snapshot)
+	{
+		PhysicalGameState pgs = snapshot.getPhysicalGameState();
+		List<Unit> staticUnits = snapshot.getStaticUnits();
+		cellsVisited = 0;
+
+		// A map of another size starts over. A new map of the same size, as hosts that send the whole state every tick
+		// give, keeps the labels unless its walls differ
+		if (pgs.getWidth() != width || pgs.getHeight() != height)
+		{
+			resize(pgs);
+		}
+		else if (pgs != labelledPgs && readWalls(pgs))
+		{
+			labelledTime = -1;
+		}
+		stamp++;
+
+		// Stamp the cells that hold a static unit now and remember the ones that were not blocked before
+		if (staticCells.length < staticUnits.size())
+		{
+			staticCells = new int[staticUnits.size() * 2];
+		}
+		nStaticCells = 0;
+		nSeeds = 0;
+		int changes = 0;
+		for (int i = 0; i < staticUnits.size(); i++)
+		{
+			Unit u = staticUnits.get(i);
+			int c = u.getX() + u.getY() * width;
+			occupied[c] = stamp;
+			staticCells[nStaticCells++] = c;
+			if (!blocked[c])
+			{
+				blocked[c] = true;
+				label[c] = BLOCKED;
+				changes++;
+				// Its neighbors may now be split in several components
+				addNeighborSeeds(c);
+			}
+		}
+		// Cells of the static units that are gone are free again
+		for (int i = 0; i < nPreviousStaticCells; i++)
+		{
+			int c = previousStaticCells[i];
+			if (occupied[c] != stamp && !wall[c] && blocked[c])
+			{
+				blocked[c] = false;
+				changes++;
+				// It joins the components of its neighbors
+				addSeed(c);
+			}
+		}
+
+		// Swap the lists for the next tick
+		int[] tmp = previousStaticCells;
+		previousStaticCells = staticCells;
+		nPreviousStaticCells = nStaticCells;
+		staticCells = tmp;
+
+		if (changes > 0)
+		{
+			version++;
+		}
+		if (labelledTime < 0 || changes > MAX_INCREMENTAL_CHANGES)
+		{
+			labelAll();
+		}
+		else
+		{
+			// Flood every seed that was not reached by an earlier flood of this update
+			for (int i = 0; i < nSeeds; i++)
+			{
+				int c = seeds[i];
+				if (!blocked[c] && flooded[c] != stamp)
+				{
+					flood(c, nextLabel++);
+				}
+			}
+		}
+		labelledPgs = pgs;
+		labelledTime = snapshot.getGameState().getTime();
+	}
+
+	/**
+	 * @param gs Game State
+	 * @return True if the labels were computed for the passed game state
+	 */
+	public boolean isCurrent(GameState gs)
+	{
+		return gs.getPhysicalGameState() == labelledPgs && gs.getTime() == labelledTime;
+	}
+
+	/**
+	 * @param x X of the cell
+	 * @param y Y of the cell
+	 * @return Component of the cell, or BLOCKED
+	 */
+	public int getLabel(int x, int y)
+	{
+		return label[x + y * width];
+	}
+
+	/**
+	 * @param cell Cell as x + y * width
+	 * @return True if the cell is a wall or holds a building or a resource
+	 */
+	public boolean isBlocked(int cell)
+	{
+		return blocked[cell];
+	}
+
+	/**
+	 * Checks whether a moving unit can walk to any cell next to the target
+	 * @param u Unit that would walk
+	 * @param target Unit to reach
+	 * @return True if a cell next to the target is in the same component as the unit
+	 */
+	public boolean canReachAdjacent(Unit u, Unit target)
+	{
+		int ux = u.getX();
+		int uy = u.getY();
+		int tx = target.getX();
+		int ty = target.getY();
+		// Already next to it
+		if (Math.abs(ux - tx) + Math.abs(uy - ty) <= 1)
+		{
+			return true;
+		}
+		int component = label[ux + uy * width];
+		if (component == BLOCKED)
+		{
+			return false;
+		}
+		return (tx > 0 && label[tx - 1 + ty * width] == component)
+				|| (tx < width - 1 && label[tx + 1 + ty * width] == component)
+				|| (ty > 0 && label[tx + (ty - 1) * width] == component)
+				|| (ty < height - 1 && label[tx + (ty + 1) * width] == component);
+	}
+
+	/**
+	 * @return Number that changes every time the blocked cells change
+	 */
+	public int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * @return Number of cells the flood fills went through in the last update
+	 */
+	public int getCellsVisited()
+	{
+		return cellsVisited;
+	}
+
+	private void resize(PhysicalGameState pgs)
+	{
+		width = pgs.getWidth();
+		height = pgs.getHeight();
+		int cells = width * height;
+		label = new int[cells];
+		wall = new boolean[cells];
+		blocked = new boolean[cells];
+		occupied = new int[cells];
+		flooded = new int[cells];
+		queue = new int[cells];
+		seeds = new int[cells];
+		nPreviousStaticCells = 0;
+		labelledTime = -1;
+		stamp = 0;
+
+		for (int c = 0; c < cells; c++)
+		{
+			label[c] = BLOCKED;
+		}
+		readWalls(pgs);
+	}
+
+	/**
+	 * Takes the walls of a map of the current size. A cell that is no longer a wall is blocked again by the static
+	 * unit on it, if any, in the pass over the static units
+	 * @return True if any wall changed
+	 */
+	private boolean readWalls(PhysicalGameState pgs)
+	{
+		boolean changed = false;
+		for (int y = 0; y < height; y++)
+		{
+			for (int x = 0; x < width; x++)
+			{
+				int c = x + y * width;
+				boolean isWall = pgs.getTerrain(x, y) == PhysicalGameState.TERRAIN_WALL;
+				if (isWall != wall[c])
+				{
+					wall[c] = isWall;
+					blocked[c] = isWall;
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Labels every component of the map from scratch
+	 */
+	private void labelAll()
+	{
+		nextLabel = 0;
+		for (int c = 0; c < label.length; c++)
+		{
+			label[c] = BLOCKED;
+		}
+		for (int c = 0; c < label.length; c++)
+		{
+			if (!blocked[c] && flooded[c] != stamp)
+			{
+				flood(c, nextLabel++);
+			}
+		}
+	}
+
+	/**
+	 * Breadth first flood fill of one component
+	 * @param start First cell
+	 * @param l Label to give to the component
+	 */
+	private void flood(int start, int l)
+	{
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = start;
+		flooded[start] = stamp;
+		while (head < tail)
+		{
+			int c = queue[head++];
+			label[c] = l;
+			cellsVisited++;
+			int x = c % width;
+			if (x > 0 && !blocked[c - 1] && flooded[c - 1] != stamp)
+			{
+				flooded[c - 1] = stamp;
+				queue[tail++] = c - 1;
+			}
+			if (x < width - 1 && !blocked[c + 1] && flooded[c + 1] != stamp)
+			{
+				flooded[c + 1] = stamp;
+				queue[tail++] = c + 1;
+			}
+			if (c >= width && !blocked[c - width] && flooded[c - width] != stamp)
+			{
+				flooded[c - width] = stamp;
+				queue[tail++] = c - width;
+			}
+			if (c + width < label.length && !blocked[c + width] && flooded[c + width] != stamp)
+			{
+				flooded[c + width] = stamp;
+				queue[tail++] = c + width;
+			}
+		}
+	}
+
+	private void addNeighborSeeds(int c)
+	{
+		int x = c % width;
+		if (x > 0)
+		{
+			addSeed(c - 1);
+		}
+		if (x < width - 1)
+		{
+			addSeed(c + 1);
+		}
+		if (c >= width)
+		{
+			addSeed(c - width);
+		}
+		if (c + width < label.length)
+		{
+			addSeed(c + width);
+		}
+	}
+
+	private void addSeed(int c)
+	{
+		if (nSeeds == seeds.length)
+		{
+			int[] grown = new int[seeds.length * 2];
+			System.arraycopy(seeds, 0, grown, 0, nSeeds);
+			seeds = grown;
+		}
+		seeds[nSeeds++] = c;
+	}
+}
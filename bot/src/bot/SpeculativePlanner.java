@@ -0,0 +1,404 @@
+package bot;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Plans the next tick while the opponent takes its turn. At the end of getAction the state is copied, my actions of the tick
+ * are issued in the copy, and a background thread plays it one cycle forward. The distance field and the decisions of
+ * my fighting units are worked out for that predicted state.
+ * At the next getAction the prediction is checked against the snapshot signature, which covers the actions the units are
+ * executing as well as where they are. If it matches - the opponent started nothing new - the precomputed work is taken
+ * as it is, otherwise the bot plans synchronously as usual.
+ * The background thread only touches the structures below and the copy of the state. Of the bot it only calls Decide,
+ * with the structures of the prediction. A prediction still running when the next tick starts is stopped, and the tick
+ * waits for it before it changes anything, so the background thread never runs alongside getAction
+ */
+public class SpeculativePlanner
+{
+	// Decision kind of a unit that is not a fighter
+	private static final int NOT_FIGHTER = -1;
+
+	private final AgileBot bot;
+	// Background thread, started with the first prediction and stopped at the end of every game
+	private ExecutorService executor;
+	private Future<?> pending;
+	// Tells the prediction in flight to give up at its next step
+	private volatile boolean stop;
+
+	// Structures of the predicted state, only touched by the background thread while a prediction runs
+	private TickSnapshot snapshot;
+	private UnitGrid enemyGrid = new UnitGrid();
+	private UnitGrid allyGrid = new UnitGrid();
+	private ReachabilityOracle reachability = new ReachabilityOracle();
+	private DistanceField distanceField = new DistanceField();
+	private InfluenceMap influence = new InfluenceMap();
+	// Decision of every one of my units, in the order of the predicted snapshot, and its target as an index in the enemy units
+	private int[] kinds = new int[0];
+	private int[] targets = new int[0];
+	private int[] decidedKinds = new int[1];
+	private Unit[] decidedTargets = new Unit[1];
+	// Index in the enemy units of the enemy on every cell, -1 on the others, so targets turn into indices without a map
+	private int[] enemyAt = new int[0];
+	private long signature;
+	// Time the background thread spent on the work a hit saves
+	private long workNanos;
+
+	// Compare every hit with the decisions planned synchronously on the real state, and the structures to do it with
+	private boolean checking;
+	private DistanceField checkField = new DistanceField();
+	private int[] checkKinds = new int[1];
+	private Unit[] checkTargets = new Unit[1];
+	private int checked;
+	private int disagreements;
+
+	private int predictions;
+	private int hits;
+	private int misses;
+	private int late;
+	private long savedNanos;
+	private long copyNanos;
+
+	/**
+	 * @param bot Bot whose decisions are predicted
+	 * @param utt Unit type table
+	 */
+	public SpeculativePlanner(AgileBot bot, UnitTypeTable utt)
+	{
+		this.bot = bot;
+		snapshot = new TickSnapshot(utt);
+	}
+
+	/**
+	 * Starts predicting the next tick. Copies the state on the calling thread, as the game changes it as soon as getAction returns
+	 * @param player My player ID
+	 * @param gs Game State of the tick just planned
+	 * @param pa My actions of the tick, issued in the copy the same way the game issues them
+	 */
+	public void start(final int player, GameState gs, PlayerAction pa)
+	{
+		long start = System.nanoTime();
+		final GameState predicted = gs.clone();
+		predicted.issueSafe(pa.clone());
+		copyNanos += System.nanoTime() - start;
+		predictions++;
+		stop = false;
+		if (executor == null)
+		{
+			executor = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "AgileBot speculative planner");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		pending = executor.submit(() -> predict(player, predicted));
+	}
+
+	/**
+	 * Plays the copy one cycle forward and plans for it. Runs on the background thread, and gives up as soon as it is told to stop
+	 */
+	private void predict(int player, GameState gs)
+	{
+		gs.cycle();
+		snapshot.update(player, gs);
+		int width = gs.getPhysicalGameState().getWidth();
+		int height = gs.getPhysicalGameState().getHeight();
+		enemyGrid.update(snapshot.getEnemyUnits(), width, height);
+		allyGrid.update(snapshot.getMyUnits(), width, height);
+		reachability.update(snapshot);
+		influence.update(snapshot);
+		if (stop)
+		{
+			return;
+		}
+
+		long start = System.nanoTime();
+		distanceField.update(snapshot, reachability);
+		List<Unit> myUnits = snapshot.getMyUnits();
+		int n = myUnits.size();
+		if (kinds.length < n)
+		{
+			kinds = new int[n * 2];
+			targets = new int[n * 2];
+		}
+		// Enemy units by cell, to turn the targets into indices that hold for the real state
+		List<Unit> enemyUnits = snapshot.getEnemyUnits();
+		if (enemyAt.length != width * height)
+		{
+			enemyAt = new int[width * height];
+			for (int c = 0; c < enemyAt.length; c++)
+			{
+				enemyAt[c] = -1;
+			}
+		}
+		for (int i = 0; i < enemyUnits.size(); i++)
+		{
+			Unit e = enemyUnits.get(i);
+			enemyAt[e.getX() + e.getY() * width] = i;
+		}
+		for (int i = 0; i < n && !stop; i++)
+		{
+			Unit u = myUnits.get(i);
+			if (!bot.Decide(u, gs, enemyGrid, allyGrid, distanceField, influence, decidedKinds, decidedTargets, 0))
+			{
+				kinds[i] = NOT_FIGHTER;
+				continue;
+			}
+			Unit target = decidedTargets[0];
+			kinds[i] = decidedKinds[0];
+			targets[i] = target == null ? -1 : enemyAt[target.getX() + target.getY() * width];
+			decidedTargets[0] = null;
+		}
+		for (int i = 0; i < enemyUnits.size(); i++)
+		{
+			Unit e = enemyUnits.get(i);
+			enemyAt[e.getX() + e.getY() * width] = -1;
+		}
+		workNanos = System.nanoTime() - start;
+		signature = snapshot.getSignature();
+	}
+
+	/**
+	 * Stops the prediction in flight and waits until the background thread has let go of it
+	 */
+	private void stopPending()
+	{
+		Future<?> f = pending;
+		pending = null;
+		stop = true;
+		try
+		{
+			f.get();
+		}
+		catch (Exception e)
+		{
+			// A failed prediction is only a miss
+		}
+	}
+
+	/**
+	 * Stops the prediction started at the last tick if it is still running, and waits until the background thread has let go
+	 * of it. Called first thing in getAction, before the tick changes anything. A stopped prediction counts as late
+	 */
+	public void settle()
+	{
+		if (pending != null && !pending.isDone())
+		{
+			late++;
+			stopPending();
+		}
+	}
+
+	/**
+	 * Checks the prediction started at the last tick against this tick. A prediction still running is settled first
+	 * @param real Snapshot of this tick
+	 * @return True if the prediction finished and matches, so the precomputed work can be taken
+	 */
+	public boolean take(TickSnapshot real)
+	{
+		settle();
+		if (pending == null)
+		{
+			return false;
+		}
+		Future<?> f = pending;
+		pending = null;
+		try
+		{
+			f.get();
+		}
+		catch (Exception e)
+		{
+			misses++;
+			return false;
+		}
+		if (signature != real.getSignature() || snapshot.getPlayerID() != real.getPlayerID())
+		{
+			misses++;
+			return false;
+		}
+		hits++;
+		savedNanos += workNanos;
+		return true;
+	}
+
+	/**
+	 * Hands over the predicted distance field after a hit, and keeps the given one for the next prediction
+	 * @param field The bot's current field
+	 * @return The predicted field, to be rebound to the real snapshot
+	 */
+	public DistanceField swapDistanceField(DistanceField field)
+	{
+		DistanceField predicted = distanceField;
+		distanceField = field;
+		return predicted;
+	}
+
+	/**
+	 * Hands the predicted decisions to the real units after a hit. The units are in the same order in both snapshots
+	 * @param real Snapshot of this tick
+	 * @param memo Memo the prepared decisions go in
+	 */
+	public void prepareDecisions(TickSnapshot real, DecisionMemo memo)
+	{
+		List<Unit> myUnits = real.getMyUnits();
+		List<Unit> enemyUnits = real.getEnemyUnits();
+		int time = real.getGameState().getTime();
+		for (int i = 0; i < myUnits.size(); i++)
+		{
+			if (kinds[i] != NOT_FIGHTER)
+			{
+				memo.prepare(myUnits.get(i), kinds[i], targets[i] < 0 ? null : enemyUnits.get(targets[i]), time);
+			}
+		}
+	}
+
+	/**
+	 * Compares the decisions taken from a hit with the ones synchronous planning makes on the real state, when checking is on.
+	 * Must be called after prepareDecisions, with the real structures of the tick
+	 * @param real Snapshot of this tick
+	 * @param enemies Enemy units of this tick
+	 * @param allies My units of this tick
+	 * @param reachability Blocked cells of this tick
+	 * @param influence Threat map of this tick
+	 */
+	public void check(TickSnapshot real, UnitGrid enemies, UnitGrid allies, ReachabilityOracle reachability, InfluenceMap influence)
+	{
+		if (!checking)
+		{
+			return;
+		}
+		GameState gs = real.getGameState();
+		checkField.update(real, reachability);
+		List<Unit> myUnits = real.getMyUnits();
+		List<Unit> enemyUnits = real.getEnemyUnits();
+		for (int i = 0; i < myUnits.size(); i++)
+		{
+			if (kinds[i] == NOT_FIGHTER)
+			{
+				continue;
+			}
+			boolean fighter = bot.Decide(myUnits.get(i), gs, enemies, allies, checkField, influence, checkKinds, checkTargets, 0);
+			Unit predicted = targets[i] < 0 ? null : enemyUnits.get(targets[i]);
+			checked++;
+			if (!fighter || checkKinds[0] != kinds[i] || checkTargets[0] != predicted)
+			{
+				disagreements++;
+			}
+			checkTargets[0] = null;
+		}
+	}
+
+	/**
+	 * @param enabled True to compare every hit with synchronous planning, which costs the planning the hit saved
+	 */
+	public void setChecking(boolean enabled)
+	{
+		checking = enabled;
+	}
+
+	public boolean isChecking()
+	{
+		return checking;
+	}
+
+	/**
+	 * @return Number of decisions taken from hits that were compared with synchronous planning
+	 */
+	public int getChecked()
+	{
+		return checked;
+	}
+
+	/**
+	 * @return Number of compared decisions that synchronous planning made differently
+	 */
+	public int getDisagreements()
+	{
+		return disagreements;
+	}
+
+	/**
+	 * Drops the prediction in flight, and waits for the background thread to let go of it
+	 */
+	public void cancel()
+	{
+		if (pending != null)
+		{
+			stopPending();
+		}
+	}
+
+	/**
+	 * Drops the prediction in flight and stops the background thread. The next prediction starts a new one
+	 */
+	public void shutdown()
+	{
+		cancel();
+		if (executor != null)
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	public int getPredictions()
+	{
+		return predictions;
+	}
+
+	public int getHits()
+	{
+		return hits;
+	}
+
+	public int getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * @return Number of predictions still running when the next tick came
+	 */
+	public int getLate()
+	{
+		return late;
+	}
+
+	/**
+	 * @return Time of the distance fields and decisions taken from predictions, in nanoseconds
+	 */
+	public long getSavedNanos()
+	{
+		return savedNanos;
+	}
+
+	/**
+	 * @return Time spent copying the state on the thread of getAction, in nanoseconds
+	 */
+	public long getCopyNanos()
+	{
+		return copyNanos;
+	}
+
+	/**
+	 * @return Hit rate and latency saved
+	 */
+	public String report()
+	{
+		int taken = hits + misses + late;
+		return String.format(Locale.ROOT,
+				"speculative planning: %d predictions, %d hits (%.1f%% hit rate), %d misses, %d late, %.1f us saved per hit, %.1f us copying per tick%s\n",
+				predictions, hits, taken == 0 ? 0.0 : 100.0 * hits / taken, misses, late,
+				hits == 0 ? 0.0 : savedNanos / 1000.0 / hits,
+				predictions == 0 ? 0.0 : copyNanos / 1000.0 / predictions,
+				checking ? String.format(Locale.ROOT, ", %d of %d checked decisions differ", disagreements, checked) : "");
+	}
+}
@@ -0,0 +1,112 @@
+package bot;
+
+import java.util.Locale;
+
+/**
+ * Keeps track of the time left in the current tick against the AI's time budget.
+ * Once the soft deadline has passed the bot stops planning for units that are far from the enemy:
+ * the ones that already have an action keep it and the idle ones wait for the next tick
+ */
+public class TickBudget
+{
+	// Fraction of the budget after which the bot starts to degrade
+	private static final double SOFT_FRACTION = 0.6;
+
+	private long tickStart;
+	private long softDeadline;
+	private long deadline;
+	private boolean active;
+	private boolean degradedThisTick;
+
+	private int ticks;
+	private int degradedTicks;
+	private int overrunTicks;
+	private int reusedDecisions;
+	private int deferredUnits;
+
+	/**
+	 * Starts timing a tick
+	 * @param budgetMillis Time budget of the tick in milliseconds, 0 or less for no budget
+	 */
+	public void begin(int budgetMillis)
+	{
+		tickStart = System.nanoTime();
+		active = budgetMillis > 0;
+		softDeadline = tickStart + (long)(budgetMillis * SOFT_FRACTION * 1000000);
+		deadline = tickStart + budgetMillis * 1000000L;
+		degradedThisTick = false;
+	}
+
+	/**
+	 * @return True if the soft deadline of this tick has passed
+	 */
+	public boolean nearDeadline()
+	{
+		return active && System.nanoTime() >= softDeadline;
+	}
+
+	/**
+	 * Counts a unit that kept last tick's action instead of planning a new one
+	 */
+	public void reuseDecision()
+	{
+		reusedDecisions++;
+		degradedThisTick = true;
+	}
+
+	/**
+	 * Counts an idle unit that was left for the next tick
+	 */
+	public void deferUnit()
+	{
+		deferredUnits++;
+		degradedThisTick = true;
+	}
+
+	/**
+	 * Finishes timing a tick
+	 */
+	public void end()
+	{
+		ticks++;
+		if (degradedThisTick)
+		{
+			degradedTicks++;
+		}
+		if (active && System.nanoTime() > deadline)
+		{
+			overrunTicks++;
+		}
+	}
+
+	public int getTicks()
+	{
+		return ticks;
+	}
+
+	public int getDegradedTicks()
+	{
+		return degradedTicks;
+	}
+
+	public int getOverrunTicks()
+	{
+		return overrunTicks;
+	}
+
+	public int getReusedDecisions()
+	{
+		return reusedDecisions;
+	}
+
+	public int getDeferredUnits()
+	{
+		return deferredUnits;
+	}
+
+	public String report()
+	{
+		return String.format(Locale.ROOT, "Budget: %d ticks, %d degraded, %d over budget, %d decisions reused, %d units deferred%n",
+				ticks, degradedTicks, overrunTicks, reusedDecisions, deferredUnits);
+	}
+}
@@ -0,0 +1,176 @@
+package bot;
+
+import java.util.Locale;
+
+/**
+ * Records where AgileBot spends its tick. Each section adds up its wall time over the tick,
+ * and at the end of the tick the totals go into one latency histogram per section.
+ * When disabled, start() returns 0 and stop() returns straight away, so the calls cost nothing
+ */
+public class TickProfiler
+{
+	/**
+	 * Parts of the tick that are timed. Stack is also counted inside the behavior that called it
+	 */
+	public enum Section
+	{
+		SNAPSHOT, BASE, BARRACKS, MELEE, RANGED, DECIDE, WORKER, STACK, TRANSLATE, TICK
+	}
+
+	private boolean enabled;
+
+	// Time spent in every section during the current tick
+	private final long[] tickNanos = new long[Section.values().length];
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Section.values().length];
+
+	// Path finder calls and search nodes of the current tick
+	private int pathQueries;
+	private long nodesExpanded;
+	private final LatencyHistogram pathQueriesPerTick = new LatencyHistogram();
+	private final LatencyHistogram nodesPerTick = new LatencyHistogram();
+
+	private int ticks;
+
+	public TickProfiler(boolean enabled)
+	{
+		this.enabled = enabled;
+		for (int i = 0; i < histograms.length; i++)
+		{
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled)
+	{
+		this.enabled = enabled;
+	}
+
+	/**
+	 * @return Start time to pass to stop(), or 0 when disabled
+	 */
+	public long start()
+	{
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Adds the time since start to a section of this tick
+	 * @param section Section
+	 * @param start Value returned by start()
+	 */
+	public void stop(Section section, long start)
+	{
+		if (enabled)
+		{
+			tickNanos[section.ordinal()] += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Counts one path finder query
+	 */
+	public void countPathQuery()
+	{
+		if (enabled)
+		{
+			pathQueries++;
+		}
+	}
+
+	/**
+	 * Counts cells or nodes expanded by a search
+	 * @param n Number of nodes
+	 */
+	public void countNodes(long n)
+	{
+		if (enabled)
+		{
+			nodesExpanded += n;
+		}
+	}
+
+	/**
+	 * Moves the totals of this tick into the histograms
+	 */
+	public void endTick()
+	{
+		if (!enabled)
+		{
+			return;
+		}
+		for (int i = 0; i < tickNanos.length; i++)
+		{
+			histograms[i].record(tickNanos[i]);
+			tickNanos[i] = 0;
+		}
+		pathQueriesPerTick.record(pathQueries);
+		nodesPerTick.record(nodesExpanded);
+		pathQueries = 0;
+		nodesExpanded = 0;
+		ticks++;
+	}
+
+	/**
+	 * @param section Section
+	 * @return Per tick wall time of the section, in nanoseconds
+	 */
+	public LatencyHistogram getHistogram(Section section)
+	{
+		return histograms[section.ordinal()];
+	}
+
+	public LatencyHistogram getPathQueriesPerTick()
+	{
+		return pathQueriesPerTick;
+	}
+
+	public LatencyHistogram getNodesPerTick()
+	{
+		return nodesPerTick;
+	}
+
+	public int getTicks()
+	{
+		return ticks;
+	}
+
+	public void clear()
+	{
+		for (int i = 0; i < histograms.length; i++)
+		{
+			histograms[i].clear();
+			tickNanos[i] = 0;
+		}
+		pathQueriesPerTick.clear();
+		nodesPerTick.clear();
+		pathQueries = 0;
+		nodesExpanded = 0;
+		ticks = 0;
+	}
+
+	/**
+	 * @return A table with p50, p99 and max of every section, in milliseconds, and of the path finder counters
+	 */
+	public String report()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format(Locale.ROOT, "AgileBot profile over %d ticks%n", ticks));
+		sb.append(String.format(Locale.ROOT, "%-12s %10s %10s %10s %10s%n", "section", "mean ms", "p50 ms", "p99 ms", "max ms"));
+		for (Section s : Section.values())
+		{
+			LatencyHistogram h = histograms[s.ordinal()];
+			sb.append(String.format(Locale.ROOT, "%-12s %10.4f %10.4f %10.4f %10.4f%n", s.name().toLowerCase(Locale.ROOT),
+					h.getMean() / 1e6, h.getQuantile(0.5) / 1e6, h.getQuantile(0.99) / 1e6, h.getMax() / 1e6));
+		}
+		sb.append(String.format(Locale.ROOT, "%-12s %10.1f %10d %10d %10d%n", "path calls", pathQueriesPerTick.getMean(),
+				pathQueriesPerTick.getQuantile(0.5), pathQueriesPerTick.getQuantile(0.99), pathQueriesPerTick.getMax()));
+		sb.append(String.format(Locale.ROOT, "%-12s %10.1f %10d %10d %10d%n", "nodes", nodesPerTick.getMean(),
+				nodesPerTick.getQuantile(0.5), nodesPerTick.getQuantile(0.99), nodesPerTick.getMax()));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,262 @@
+package bot;
+
+import java.util.ArrayList;
+import java.util.List;
+import rts.*;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * A view of the game built in a single pass over the units at the start of every tick.
+ * Units are bucketed by owner and type so the behaviors never have to scan the whole unit list again
+ */
+public class TickSnapshot
+{
+	private int player;
+	private GameState gs;
+	private PhysicalGameState pgs;
+	private Player me;
+
+	private UnitType base;
+
+	// Units bucketed by type ID, one set of buckets for each side
+	private List<Unit>[] myUnitsByType;
+	private List<Unit>[] enemyUnitsByType;
+
+	// Every unit of each side, in the order they appear in the game
+	private List<Unit> myUnits = new ArrayList<Unit>();
+	private List<Unit> enemyUnits = new ArrayList<Unit>();
+
+	// My units that can harvest and my units that can take resources in
+	private List<Unit> myWorkers = new ArrayList<Unit>();
+	private List<Unit> myStockpiles = new ArrayList<Unit>();
+
+	// Neutral resource units
+	private List<Unit> resources = new ArrayList<Unit>();
+
+	// Units of any side that cannot move - buildings and resources
+	private List<Unit> staticUnits = new ArrayList<Unit>();
+
+	private Unit myBase;
+
+	// Hash of the time and of every unit's identity, position, hit points and current action
+	private long signature;
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TickSnapshot(UnitTypeTable utt)
+	{
+		base = utt.getUnitType("Base");
+		int nTypes = utt.getUnitTypes().size();
+		myUnitsByType = new List[nTypes];
+		enemyUnitsByType = new List[nTypes];
+		for (int i = 0; i < nTypes; i++)
+		{
+			myUnitsByType[i] = new ArrayList<Unit>();
+			enemyUnitsByType[i] = new ArrayList<Unit>();
+		}
+	}
+
+	/**
+	 * Rebuilds the snapshot for the current tick. This is the only place that loops through every unit in the game
+	 * @param player My player ID
+	 * @param gs Game State
+	 */
+	public void update(int player, GameState gs)
+	{
+		this.player = player;
+		this.gs = gs;
+		this.pgs = gs.getPhysicalGameState();
+		this.me = gs.getPlayer(player);
+
+		// Empty the buckets from the last tick
+		for (int i = 0; i < myUnitsByType.length; i++)
+		{
+			myUnitsByType[i].clear();
+			enemyUnitsByType[i].clear();
+		}
+		myUnits.clear();
+		enemyUnits.clear();
+		myWorkers.clear();
+		myStockpiles.clear();
+		resources.clear();
+		staticUnits.clear();
+		myBase = null;
+		long s = gs.getTime();
+
+		// Loop through every unit in the game once
+		for (Unit u : pgs.getUnits())
+		{
+			UnitType type = u.getType();
+			s = s * 31 + u.getID();
+			s = s * 31 + type.ID;
+			s = s * 31 + u.getPlayer();
+			s = s * 31 + u.getX() + u.getY() * pgs.getWidth();
+			s = s * 31 + u.getHitPoints();
+			s = s * 31 + hashAction(gs.getActionAssignment(u));
+
+			// Buildings and resources block the way for everyone
+			if (!type.canMove)
+			{
+				staticUnits.add(u);
+			}
+
+			// Resources don't belong to anyone
+			if (type.isResource)
+			{
+				resources.add(u);
+			}
+			// My units
+			else if (u.getPlayer() == player)
+			{
+				myUnits.add(u);
+				myUnitsByType[type.ID].add(u);
+
+				if (type.canHarvest)
+				{
+					myWorkers.add(u);
+				}
+				if (type.isStockpile)
+				{
+					myStockpiles.add(u);
+				}
+				if (type == base)
+				{
+					myBase = u;
+				}
+			}
+			// Enemy's units
+			else if (u.getPlayer() >= 0)
+			{
+				enemyUnits.add(u);
+				enemyUnitsByType[type.ID].add(u);
+			}
+		}
+		signature = s;
+	}
+
+	/**
+	 * @param uaa Action a unit is executing, or null
+	 * @return Hash of its type, direction, target and start time
+	 */
+	private static long hashAction(UnitActionAssignment uaa)
+	{
+		if (uaa == null)
+		{
+			return -1;
+		}
+		UnitAction a = uaa.action;
+		long h = a.getType();
+		h = h * 31 + a.getDirection();
+		h = h * 31 + a.getLocationX();
+		h = h * 31 + a.getLocationY();
+		h = h * 31 + (a.getUnitType() == null ? -1 : a.getUnitType().ID);
+		return h * 31 + uaa.time;
+	}
+
+	/**
+	 * @return Hash of the time and of every unit's ID, type, owner, position, hit points and current action, in the order of the game.
+	 * Two snapshots with the same signature hold the same units in the same order, busy with the same actions
+	 */
+	public long getSignature()
+	{
+		return signature;
+	}
+
+	public int getPlayerID()
+	{
+		return player;
+	}
+
+	public Player getPlayer()
+	{
+		return me;
+	}
+
+	public GameState getGameState()
+	{
+		return gs;
+	}
+
+	public PhysicalGameState getPhysicalGameState()
+	{
+		return pgs;
+	}
+
+	/**
+	 * @param type Unit Type
+	 * @return My units of the passed type
+	 */
+	public List<Unit> getMyUnits(UnitType type)
+	{
+		return myUnitsByType[type.ID];
+	}
+
+	/**
+	 * @param type Unit Type
+	 * @return Enemy's units of the passed type
+	 */
+	public List<Unit> getEnemyUnits(UnitType type)
+	{
+		return enemyUnitsByType[type.ID];
+	}
+
+	/**
+	 * @param type Unit Type
+	 * @return Number of my units of the passed type
+	 */
+	public int countMine(UnitType type)
+	{
+		return myUnitsByType[type.ID].size();
+	}
+
+	/**
+	 * @param type Unit Type
+	 * @return Number of enemy's units of the passed type
+	 */
+	public int countEnemy(UnitType type)
+	{
+		return enemyUnitsByType[type.ID].size();
+	}
+
+	public List<Unit> getMyUnits()
+	{
+		return myUnits;
+	}
+
+	public List<Unit> getEnemyUnits()
+	{
+		return enemyUnits;
+	}
+
+	public List<Unit> getMyWorkers()
+	{
+		return myWorkers;
+	}
+
+	public List<Unit> getMyStockpiles()
+	{
+		return myStockpiles;
+	}
+
+	public List<Unit> getResources()
+	{
+		return resources;
+	}
+
+	/**
+	 * @return Buildings and resources of every side
+	 */
+	public List<Unit> getStaticUnits()
+	{
+		return staticUnits;
+	}
+
+	/**
+	 * @return My base, or null if it has been destroyed
+	 */
+	public Unit getMyBase()
+	{
+		return myBase;
+	}
+}
@@ -0,0 +1,305 @@
+package bot;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.UnitAction;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+import rts.units.UnitType;
+
+/**
+ * Writes every game state getAction sees to a compact binary trace, for replaying the ticks without the game.
+ * Only what changed since the last recorded tick is written, so a long game takes a few bytes per tick
+ * instead of the kilobytes of an XML or JSON state.
+ *
+ * Numbers are unsigned LEB128 varints, except the magic and the version. The file starts with a header:
+ * <pre>
+ * int magic "AGTR", byte version, varint player, varint width, varint height
+ * varint number of unit types, then the name of each as a UTF string, in the order of their IDs
+ * one bit per cell, set for a wall, packed eight to a byte
+ * </pre>
+ * and goes on with a record for every tick until the end of the file:
+ * <pre>
+ * varint time, varint number of players, varint resources of each player
+ * varint removed units, then the ID of each
+ * varint added units, then ID, type ID, player + 1, x, y, hit points, resources of each
+ * varint changed units, then ID, byte of changed fields (1 x, 2 y, 4 hit points, 8 resources) and the new values of each
+ * varint finished actions, then the unit ID of each
+ * varint started actions, then unit ID, type, direction + 1, x + 1, y + 1, produced type ID + 1, start time of each
+ * </pre>
+ */
+public class TraceRecorder implements Closeable
+{
+	public static final int MAGIC = 0x41475452;
+	public static final int VERSION = 1;
+
+	// Bits of the changed fields of a unit
+	public static final int CHANGED_X = 1;
+	public static final int CHANGED_Y = 2;
+	public static final int CHANGED_HP = 4;
+	public static final int CHANGED_RESOURCES = 8;
+
+	// Fields of a unit, and of an action, as they were in the last recorded tick
+	private static final int TYPE = 0;
+	private static final int PLAYER = 1;
+	private static final int X = 2;
+	private static final int Y = 3;
+	private static final int HP = 4;
+	private static final int RESOURCES = 5;
+	private static final int ACTION_DIRECTION = 1;
+	private static final int ACTION_X = 2;
+	private static final int ACTION_Y = 3;
+	private static final int ACTION_PRODUCE = 4;
+	private static final int ACTION_TIME = 5;
+
+	private final DataOutputStream out;
+	private final int player;
+	private boolean headerWritten = false;
+	private int ticks = 0;
+
+	private Map<Long, int[]> units = new LinkedHashMap<Long, int[]>();
+	private Map<Long, int[]> actions = new LinkedHashMap<Long, int[]>();
+	// Units and actions seen in the tick being recorded. Kept in the order of the game, which the replay keeps too
+	private Map<Long, int[]> seen = new LinkedHashMap<Long, int[]>();
+
+	/**
+	 * @param file Path of the trace, overwritten if it exists
+	 * @param player Player the traced AI plays as
+	 * @throws IOException If the file cannot be created
+	 */
+	public TraceRecorder(String file, int player) throws IOException
+	{
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		this.player = player;
+	}
+
+	/**
+	 * Appends the changes since the last recorded tick
+	 * @param gs Game state getAction is called with
+	 * @throws IOException If the trace cannot be written
+	 */
+	public void record(GameState gs) throws IOException
+	{
+		PhysicalGameState pgs = gs.getPhysicalGameState();
+		if (!headerWritten)
+		{
+			writeHeader(gs);
+			headerWritten = true;
+		}
+		writeVarint(gs.getTime());
+		writeVarint(pgs.getPlayers().size());
+		for (int i = 0; i < pgs.getPlayers().size(); i++)
+		{
+			writeVarint(pgs.getPlayer(i).getResources());
+		}
+
+		// Units
+		List<Unit> all = pgs.getUnits();
+		seen.clear();
+		for (Unit u : all)
+		{
+			seen.put(u.getID(), new int[] {u.getType().ID, u.getPlayer(), u.getX(), u.getY(), u.getHitPoints(), u.getResources()});
+		}
+		writeRemoved(units, seen);
+		int added = 0;
+		int changed = 0;
+		for (Map.Entry<Long, int[]> e : seen.entrySet())
+		{
+			int[] old = units.get(e.getKey());
+			if (old == null)
+			{
+				added++;
+			}
+			else if (changedFields(old, e.getValue()) != 0)
+			{
+				changed++;
+			}
+		}
+		writeVarint(added);
+		for (Map.Entry<Long, int[]> e : seen.entrySet())
+		{
+			if (!units.containsKey(e.getKey()))
+			{
+				int[] v = e.getValue();
+				writeVarint(e.getKey());
+				writeVarint(v[TYPE]);
+				writeVarint(v[PLAYER] + 1);
+				writeVarint(v[X]);
+				writeVarint(v[Y]);
+				writeVarint(v[HP]);
+				writeVarint(v[RESOURCES]);
+			}
+		}
+		writeVarint(changed);
+		for (Map.Entry<Long, int[]> e : seen.entrySet())
+		{
+			int[] old = units.get(e.getKey());
+			int fields = old == null ? 0 : changedFields(old, e.getValue());
+			if (fields != 0)
+			{
+				int[] v = e.getValue();
+				writeVarint(e.getKey());
+				out.writeByte(fields);
+				if ((fields & CHANGED_X) != 0) writeVarint(v[X]);
+				if ((fields & CHANGED_Y) != 0) writeVarint(v[Y]);
+				if ((fields & CHANGED_HP) != 0) writeVarint(v[HP]);
+				if ((fields & CHANGED_RESOURCES) != 0) writeVarint(v[RESOURCES]);
+			}
+		}
+		Map<Long, int[]> swap = units;
+		units = seen;
+		seen = swap;
+
+		// Actions. One that was replaced by another since the last tick is written again as started
+		seen.clear();
+		for (UnitActionAssignment uaa : gs.getUnitActions().values())
+		{
+			UnitAction a = uaa.action;
+			UnitType produced = a.getUnitType();
+			seen.put(uaa.unit.getID(), new int[] {a.getType(), a.getDirection(), a.getLocationX(), a.getLocationY(),
+					produced == null ? -1 : produced.ID, uaa.time});
+		}
+		writeRemoved(actions, seen);
+		int started = 0;
+		for (Map.Entry<Long, int[]> e : seen.entrySet())
+		{
+			if (!Arrays.equals(actions.get(e.getKey()), e.getValue()))
+			{
+				started++;
+			}
+		}
+		writeVarint(started);
+		for (Map.Entry<Long, int[]> e : seen.entrySet())
+		{
+			int[] v = e.getValue();
+			if (!Arrays.equals(actions.get(e.getKey()), v))
+			{
+				writeVarint(e.getKey());
+				writeVarint(v[TYPE]);
+				writeVarint(v[ACTION_DIRECTION] + 1);
+				writeVarint(v[ACTION_X] + 1);
+				writeVarint(v[ACTION_Y] + 1);
+				writeVarint(v[ACTION_PRODUCE] + 1);
+				writeVarint(v[ACTION_TIME]);
+			}
+		}
+		swap = actions;
+		actions = seen;
+		seen = swap;
+		ticks++;
+	}
+
+	private void writeHeader(GameState gs) throws IOException
+	{
+		PhysicalGameState pgs = gs.getPhysicalGameState();
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		writeVarint(player);
+		writeVarint(pgs.getWidth());
+		writeVarint(pgs.getHeight());
+		List<UnitType> types = gs.getUnitTypeTable().getUnitTypes();
+		writeVarint(types.size());
+		for (UnitType type : types)
+		{
+			out.writeUTF(type.name);
+		}
+		int bits = 0;
+		int n = 0;
+		for (int y = 0; y < pgs.getHeight(); y++)
+		{
+			for (int x = 0; x < pgs.getWidth(); x++)
+			{
+				if (pgs.getTerrain(x, y) != PhysicalGameState.TERRAIN_NONE)
+				{
+					bits |= 1 << n;
+				}
+				if (++n == 8)
+				{
+					out.writeByte(bits);
+					bits = 0;
+					n = 0;
+				}
+			}
+		}
+		if (n > 0)
+		{
+			out.writeByte(bits);
+		}
+	}
+
+	/**
+	 * Writes the IDs of the last tick that are not in this one
+	 */
+	private void writeRemoved(Map<Long, int[]> last, Map<Long, int[]> now) throws IOException
+	{
+		int removed = 0;
+		for (Long id : last.keySet())
+		{
+			if (!now.containsKey(id))
+			{
+				removed++;
+			}
+		}
+		writeVarint(removed);
+		for (Iterator<Long> i = last.keySet().iterator(); i.hasNext();)
+		{
+			Long id = i.next();
+			if (!now.containsKey(id))
+			{
+				writeVarint(id);
+			}
+		}
+	}
+
+	private static int changedFields(int[] old, int[] now)
+	{
+		int fields = 0;
+		if (old[X] != now[X]) fields |= CHANGED_X;
+		if (old[Y] != now[Y]) fields |= CHANGED_Y;
+		if (old[HP] != now[HP]) fields |= CHANGED_HP;
+		if (old[RESOURCES] != now[RESOURCES]) fields |= CHANGED_RESOURCES;
+		return fields;
+	}
+
+	private void writeVarint(long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * @return Number of ticks recorded so far
+	 */
+	public int getTicks()
+	{
+		return ticks;
+	}
+
+	/**
+	 * @return Number of bytes written so far
+	 */
+	public int getBytes()
+	{
+		return out.size();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		out.close();
+	}
+}
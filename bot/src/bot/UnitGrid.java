@@ -0,0 +1,310 @@
+package bot;
+
+import java.util.List;
+import rts.units.Unit;
+
+/**
+ * Uniform bucket grid over a list of units, rebuilt once per tick.
+ * Nearest, k-nearest and within-radius queries expand rings of buckets around the query cell
+ * and stop as soon as no unvisited bucket can hold a closer unit.
+ * Ties are broken by the position in the list the grid was built from, the same as a linear scan would
+ */
+public class UnitGrid
+{
+	// Width and height of a bucket in cells
+	public static final int BUCKET_SIZE = 4;
+
+	private int bucketsX;
+	private int bucketsY;
+
+	// Units sorted by bucket. The units of bucket b are bucketStart[b] .. bucketStart[b + 1] - 1
+	private Unit[] units = new Unit[0];
+	private int[] order = new int[0];
+	private int[] bucketStart = new int[1];
+	private int size;
+
+	// Scratch space for the k-nearest query
+	private int[] bestDistance = new int[0];
+	private int[] bestOrder = new int[0];
+
+	/**
+	 * Rebuilds the grid from the passed units
+	 * @param list Units to index
+	 * @param width Map width
+	 * @param height Map height
+	 */
+	public void update(List<Unit> list, int width, int height)
+	{
+		bucketsX = (width + BUCKET_SIZE - 1) / BUCKET_SIZE;
+		bucketsY = (height + BUCKET_SIZE - 1) / BUCKET_SIZE;
+		int nBuckets = bucketsX * bucketsY;
+		size = list.size();
+
+		// Grow the arrays only when the map or the army gets bigger
+		if (bucketStart.length < nBuckets + 1)
+		{
+			bucketStart = new int[nBuckets + 1];
+		}
+		if (units.length < size)
+		{
+			units = new Unit[size];
+			order = new int[size];
+		}
+
+		// Count the units in every bucket
+		for (int b = 0; b <= nBuckets; b++)
+		{
+			bucketStart[b] = 0;
+		}
+		for (int i = 0; i < size; i++)
+		{
+			bucketStart[bucketOf(list.get(i)) + 1]++;
+		}
+		for (int b = 0; b < nBuckets; b++)
+		{
+			bucketStart[b + 1] += bucketStart[b];
+		}
+
+		// Place every unit in its bucket, keeping the list order inside a bucket
+		for (int i = 0; i < size; i++)
+		{
+			Unit u = list.get(i);
+			int slot = bucketStart[bucketOf(u)]++;
+			units[slot] = u;
+			order[slot] = i;
+		}
+		// Filling moved every start one bucket forward, shift them back
+		for (int b = nBuckets; b > 0; b--)
+		{
+			bucketStart[b] = bucketStart[b - 1];
+		}
+		bucketStart[0] = 0;
+
+		for (int i = size; i < units.length && units[i] != null; i++)
+		{
+			units[i] = null;
+		}
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Looks for the unit closest to a cell
+	 * @param x X of the cell
+	 * @param y Y of the cell
+	 * @return Closest unit by Manhattan distance, or null if the grid is empty
+	 */
+	public Unit nearest(int x, int y)
+	{
+		return nearestWithin(x, y, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Looks for the unit closest to a cell, but only up to a certain distance
+	 * @param x X of the cell
+	 * @param y Y of the cell
+	 * @param radius Maximum Manhattan distance, inclusive
+	 * @return Closest unit within the radius, or null if there is none
+	 */
+	public Unit nearestWithin(int x, int y, int radius)
+	{
+		Unit closest = null;
+		int closestDistance = 0;
+		int closestOrder = 0;
+
+		int bx = clamp(x / BUCKET_SIZE, bucketsX);
+		int by = clamp(y / BUCKET_SIZE, bucketsY);
+		int maxRing = Math.max(bucketsX, bucketsY);
+
+		for (int ring = 0; ring <= maxRing; ring++)
+		{
+			// No unit in this ring or further can be within the radius
+			if (ringLowerBound(ring) > radius)
+			{
+				break;
+			}
+			for (int cy = by - ring; cy <= by + ring; cy++)
+			{
+				if (cy < 0 || cy >= bucketsY)
+				{
+					continue;
+				}
+				// Only the border of the ring is new, skip the inside
+				int step = (cy == by - ring || cy == by + ring) ? 1 : Math.max(1, 2 * ring);
+				for (int cx = bx - ring; cx <= bx + ring; cx += step)
+				{
+					if (cx < 0 || cx >= bucketsX)
+					{
+						continue;
+					}
+					int b = cx + cy * bucketsX;
+					for (int i = bucketStart[b]; i < bucketStart[b + 1]; i++)
+					{
+						Unit u = units[i];
+						int d = Math.abs(u.getX() - x) + Math.abs(u.getY() - y);
+						if (d > radius)
+						{
+							continue;
+						}
+						if (closest == null || d < closestDistance || (d == closestDistance && order[i] < closestOrder))
+						{
+							closest = u;
+							closestDistance = d;
+							closestOrder = order[i];
+						}
+					}
+				}
+			}
+			// Every bucket further away is at least one ring's worth of cells away
+			if (closest != null && closestDistance < ringLowerBound(ring + 1))
+			{
+				break;
+			}
+		}
+		return closest;
+	}
+
+	/**
+	 * Looks for the k units closest to a cell
+	 * @param x X of the cell
+	 * @param y Y of the cell
+	 * @param k Number of units wanted
+	 * @param out Array that receives the units, closest first. Must hold at least k units
+	 * @return Number of units written to out
+	 */
+	public int nearest(int x, int y, int k, Unit[] out)
+	{
+		if (bestDistance.length < k)
+		{
+			bestDistance = new int[k];
+			bestOrder = new int[k];
+		}
+		int found = 0;
+
+		int bx = clamp(x / BUCKET_SIZE, bucketsX);
+		int by = clamp(y / BUCKET_SIZE, bucketsY);
+		int maxRing = Math.max(bucketsX, bucketsY);
+
+		for (int ring = 0; ring <= maxRing && k > 0; ring++)
+		{
+			for (int cy = by - ring; cy <= by + ring; cy++)
+			{
+				if (cy < 0 || cy >= bucketsY)
+				{
+					continue;
+				}
+				int step = (cy == by - ring || cy == by + ring) ? 1 : Math.max(1, 2 * ring);
+				for (int cx = bx - ring; cx <= bx + ring; cx += step)
+				{
+					if (cx < 0 || cx >= bucketsX)
+					{
+						continue;
+					}
+					int b = cx + cy * bucketsX;
+					for (int i = bucketStart[b]; i < bucketStart[b + 1]; i++)
+					{
+						int d = Math.abs(units[i].getX() - x) + Math.abs(units[i].getY() - y);
+						// Insertion into the sorted list of the best units so far
+						int j = found < k ? found : k - 1;
+						if (found == k && !closer(d, order[i], bestDistance[j], bestOrder[j]))
+						{
+							continue;
+						}
+						while (j > 0 && closer(d, order[i], bestDistance[j - 1], bestOrder[j - 1]))
+						{
+							bestDistance[j] = bestDistance[j - 1];
+							bestOrder[j] = bestOrder[j - 1];
+							out[j] = out[j - 1];
+							j--;
+						}
+						bestDistance[j] = d;
+						bestOrder[j] = order[i];
+						out[j] = units[i];
+						if (found < k)
+						{
+							found++;
+						}
+					}
+				}
+			}
+			if (found == k && bestDistance[k - 1] < ringLowerBound(ring + 1))
+			{
+				break;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Collects every unit up to a certain distance from a cell
+	 * @param x X of the cell
+	 * @param y Y of the cell
+	 * @param radius Maximum Manhattan distance, inclusive
+	 * @param out List that receives the units. It is not cleared
+	 * @return Number of units found
+	 */
+	public int withinRadius(int x, int y, int radius, List<Unit> out)
+	{
+		int found = 0;
+		int minX = clamp((x - radius) / BUCKET_SIZE, bucketsX);
+		int maxX = clamp((x + radius) / BUCKET_SIZE, bucketsX);
+		int minY = clamp((y - radius) / BUCKET_SIZE, bucketsY);
+		int maxY = clamp((y + radius) / BUCKET_SIZE, bucketsY);
+		for (int cy = minY; cy <= maxY; cy++)
+		{
+			for (int cx = minX; cx <= maxX; cx++)
+			{
+				int b = cx + cy * bucketsX;
+				for (int i = bucketStart[b]; i < bucketStart[b + 1]; i++)
+				{
+					if (Math.abs(units[i].getX() - x) + Math.abs(units[i].getY() - y) <= radius)
+					{
+						if (out != null)
+						{
+							out.add(units[i]);
+						}
+						found++;
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @param x X of the cell
+	 * @param y Y of the cell
+	 * @param radius Maximum Manhattan distance, inclusive
+	 * @return Number of units up to a certain distance from a cell
+	 */
+	public int countWithin(int x, int y, int radius)
+	{
+		return withinRadius(x, y, radius, null);
+	}
+
+	private int bucketOf(Unit u)
+	{
+		return clamp(u.getX() / BUCKET_SIZE, bucketsX) + clamp(u.getY() / BUCKET_SIZE, bucketsY) * bucketsX;
+	}
+
+	/**
+	 * @return Smallest distance from the query cell to any cell of a bucket in the passed ring
+	 */
+	private static int ringLowerBound(int ring)
+	{
+		return ring == 0 ? 0 : (ring - 1) * BUCKET_SIZE + 1;
+	}
+
+	private static boolean closer(int d1, int order1, int d2, int order2)
+	{
+		return d1 < d2 || (d1 == d2 && order1 < order2);
+	}
+
+	private static int clamp(int v, int n)
+	{
+		return v < 0 ? 0 : (v >= n ? n - 1 : v);
+	}
+}
@@ -0,0 +1,145 @@
+package bot;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Runs AgileBot's hot paths before the game starts, so the first ticks of the game run compiled code instead of the
+ * interpreter. Two AgileBots with the settings of the one warmed up play the actual map against each other from a copy
+ * of the starting state, which goes through the snapshot, the behaviors, the path finder and the fights on states of
+ * the real map - down the same code paths the real game takes, such as the combat simulation or the parallel decisions.
+ * The game is restarted from the copy whenever it ends. Every few ticks the time the JIT compiler spent is checked,
+ * and the warm up stops once it stops growing, or when its share of the pre-game time runs out.
+ * The AI being warmed up is not touched, so none of its state comes from the practice games
+ */
+public class WarmUp
+{
+	// Part of the pre-game time spent warming up, and the most spent however much is given
+	private static final double SHARE = 0.5;
+	private static final long MAX_MILLIS = 5000;
+	// Ticks between looks at the compiler
+	private static final int ROUND_TICKS = 25;
+	// The hot paths count as compiled once a round adds less compiler time than this, after a few rounds
+	private static final long SETTLED_MILLIS = 2;
+	private static final int MIN_ROUNDS = 4;
+	// Practice games are cut off after this many cycles and restarted
+	private static final int MAX_GAME_CYCLES = 1000;
+
+	private int ticks;
+	private int games;
+	private int rounds;
+	private long millis;
+	private long compileMillis;
+	private boolean settled;
+
+	/**
+	 * Plays practice games on a copy of the state until the compiler settles or the time runs out
+	 * @param gs Game state at the start of the game, left as it is
+	 * @param milliseconds Pre-game time left
+	 * @param ai AI warmed up, whose settings the practice AIs take
+	 */
+	public void run(GameState gs, long milliseconds, AgileBot ai)
+	{
+		long start = System.nanoTime();
+		long deadline = start + Math.min(MAX_MILLIS, (long)(milliseconds * SHARE)) * 1000000L;
+		CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+		boolean timed = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+		long compileStart = timed ? compiler.getTotalCompilationTime() : 0;
+		long lastCompile = compileStart;
+
+		UnitTypeTable utt = gs.getUnitTypeTable();
+		AgileBot[] bots = {practiceBot(utt, ai), practiceBot(utt, ai)};
+		GameState game = null;
+		try
+		{
+			while (System.nanoTime() < deadline)
+			{
+				if (game == null)
+				{
+					game = gs.clone();
+					games++;
+				}
+				PlayerAction a0 = bots[0].getAction(0, game);
+				PlayerAction a1 = bots[1].getAction(1, game);
+				game.issueSafe(a0);
+				game.issueSafe(a1);
+				if (game.cycle() || game.getTime() >= MAX_GAME_CYCLES)
+				{
+					game = null;
+					bots[0].reset();
+					bots[1].reset();
+				}
+				if (++ticks % ROUND_TICKS == 0)
+				{
+					rounds++;
+					long compile = timed ? compiler.getTotalCompilationTime() : 0;
+					if (timed && rounds >= MIN_ROUNDS && compile - lastCompile < SETTLED_MILLIS)
+					{
+						settled = true;
+						break;
+					}
+					lastCompile = compile;
+				}
+			}
+		}
+		catch (RuntimeException e)
+		{
+			// A failed practice game is no reason not to play the real one
+		}
+		// Stops their threads
+		bots[0].gameOver(-1);
+		bots[1].gameOver(-1);
+		millis = (System.nanoTime() - start) / 1000000;
+		compileMillis = timed ? compiler.getTotalCompilationTime() - compileStart : 0;
+	}
+
+	/**
+	 * @return An AgileBot with the settings of the AI, which neither records a trace nor profiles nor warms up itself
+	 */
+	private static AgileBot practiceBot(UnitTypeTable utt, AgileBot ai)
+	{
+		AgileBot bot = new AgileBot(utt);
+		bot.copySettings(ai);
+		bot.setTraceFile(null);
+		bot.setWarmUp(false);
+		bot.setProfiling(false);
+		return bot;
+	}
+
+	/**
+	 * @return Number of practice ticks played
+	 */
+	public int getTicks()
+	{
+		return ticks;
+	}
+
+	/**
+	 * @return Wall time of the warm up, in milliseconds
+	 */
+	public long getMillis()
+	{
+		return millis;
+	}
+
+	/**
+	 * @return True if the warm up stopped because the compiler settled, false if the time ran out
+	 */
+	public boolean isSettled()
+	{
+		return settled;
+	}
+
+	/**
+	 * @return One line with the counters
+	 */
+	public String report()
+	{
+		return String.format(Locale.ROOT, "warm up: %d ticks in %d games, %d ms, %d ms compiling, %s\n",
+				ticks, games, millis, compileMillis, settled ? "settled" : "out of time");
+	}
+}
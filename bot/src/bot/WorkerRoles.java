@@ -0,0 +1,316 @@
+package bot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+
+/**
+ * Jobs of my workers, kept by unit ID from tick to tick. Jobs are only handed out again when something happens -
+ * a worker is born or dies, a building is finished or destroyed, or a resource runs out.
+ * Harvesters are then matched to resources by a minimum cost assignment
+ */
+public class WorkerRoles
+{
+	public static final int HARVESTER = 0;
+	public static final int BUILDER = 1;
+	public static final int ATTACKER = 2;
+
+	// Job of every worker by unit ID
+	private HashMap<Long, Integer> roles = new HashMap<Long, Integer>();
+	// Resource and stockpile of every harvester, in the order of the harvesters
+	private Unit[] resourceOf = new Unit[0];
+	private Unit[] stockpileOf = new Unit[0];
+
+	// Workers of each job, in the order of the snapshot
+	private List<Unit> harvesters = new ArrayList<Unit>();
+	private List<Unit> builders = new ArrayList<Unit>();
+	private List<Unit> attackers = new ArrayList<Unit>();
+	private List<Unit> unassigned = new ArrayList<Unit>();
+
+	// Resources close enough to my base to harvest, and how close that is
+	private List<Unit> closeResources = new ArrayList<Unit>();
+	private int resourceRadius = 5;
+
+	// What the jobs were handed out for
+	private PhysicalGameState pgs;
+	private long signature;
+	private boolean assigned;
+	private int events;
+
+	/**
+	 * Hands out the jobs again if something happened since the last tick, otherwise keeps them
+	 * @param snapshot Snapshot of this tick
+	 * @param workers My workers
+	 * @param harvestersNeeded Most workers to harvest
+	 * @param buildersNeeded Most workers to build
+	 * @param nBarracks My barracks
+	 * @param nBases My bases
+	 * @param analysis Analysis of the map, or null
+	 * @param player My player
+	 * @return True if the jobs were handed out again
+	 */
+	public boolean update(TickSnapshot snapshot, List<Unit> workers, int harvestersNeeded, int buildersNeeded, int nBarracks, int nBases,
+			MapAnalysis analysis, int player)
+	{
+		Unit myBase = snapshot.getMyBase();
+		long s = signature(snapshot, workers, harvestersNeeded, buildersNeeded, nBarracks, nBases);
+		// A copy of the game holds copies of the units, so their jobs are handed out again
+		if (assigned && s == signature && snapshot.getPhysicalGameState() == pgs)
+		{
+			return false;
+		}
+		pgs = snapshot.getPhysicalGameState();
+		signature = s;
+		assigned = true;
+		events++;
+
+		// Resources close to the base. Around the starting base, only those of the clusters the map analysis gave it
+		closeResources.clear();
+		if (myBase != null)
+		{
+			int width = pgs.getWidth();
+			int[] own = analysis != null && analysis.getBaseCell(player) == myBase.getX() + myBase.getY() * width
+					? analysis.getBaseResources(player) : null;
+			for (Unit r : snapshot.getResources())
+			{
+				if (Math.abs(r.getX() - myBase.getX()) + Math.abs(r.getY() - myBase.getY()) < resourceRadius
+						&& (own == null || contains(own, r.getX() + r.getY() * width)))
+				{
+					closeResources.add(r);
+				}
+			}
+		}
+		int nHarvesters = Math.min(harvestersNeeded, closeResources.size());
+
+		// Workers keep their job while it is still needed, the others are handed one in order
+		harvesters.clear();
+		builders.clear();
+		attackers.clear();
+		unassigned.clear();
+		for (Unit u : workers)
+		{
+			Integer role = roles.get(u.getID());
+			if (role != null && role == HARVESTER && harvesters.size() < nHarvesters)
+			{
+				harvesters.add(u);
+			}
+			else if (role != null && role == BUILDER && builders.size() < buildersNeeded)
+			{
+				builders.add(u);
+			}
+			else
+			{
+				unassigned.add(u);
+			}
+		}
+		for (Unit u : unassigned)
+		{
+			if (harvesters.size() < nHarvesters)
+			{
+				harvesters.add(u);
+			}
+			else if (builders.size() < buildersNeeded)
+			{
+				builders.add(u);
+			}
+			else
+			{
+				attackers.add(u);
+			}
+		}
+
+		// Forget the dead workers
+		roles.clear();
+		for (Unit u : harvesters)
+		{
+			roles.put(u.getID(), HARVESTER);
+		}
+		for (Unit u : builders)
+		{
+			roles.put(u.getID(), BUILDER);
+		}
+		for (Unit u : attackers)
+		{
+			roles.put(u.getID(), ATTACKER);
+		}
+
+		matchHarvesters(snapshot.getMyStockpiles());
+		return true;
+	}
+
+	/**
+	 * Gives every harvester its own close resource, and the stockpile closest to that resource,
+	 * so that the summed walk is the shortest
+	 */
+	private void matchHarvesters(List<Unit> stockpiles)
+	{
+		int n = harvesters.size();
+		int m = closeResources.size();
+		resourceOf = new Unit[n];
+		stockpileOf = new Unit[n];
+		if (n == 0 || stockpiles.isEmpty())
+		{
+			return;
+		}
+
+		// Closest stockpile to every resource
+		Unit[] stockpile = new Unit[m];
+		int[] trip = new int[m];
+		for (int j = 0; j < m; j++)
+		{
+			Unit r = closeResources.get(j);
+			for (Unit b : stockpiles)
+			{
+				int d = Math.abs(b.getX() - r.getX()) + Math.abs(b.getY() - r.getY());
+				if (stockpile[j] == null || d < trip[j])
+				{
+					stockpile[j] = b;
+					trip[j] = d;
+				}
+			}
+		}
+
+		// Walk to the resource, then carry to its stockpile
+		int[][] cost = new int[n][m];
+		for (int i = 0; i < n; i++)
+		{
+			Unit u = harvesters.get(i);
+			for (int j = 0; j < m; j++)
+			{
+				Unit r = closeResources.get(j);
+				cost[i][j] = Math.abs(r.getX() - u.getX()) + Math.abs(r.getY() - u.getY()) + trip[j];
+			}
+		}
+		int[] match = new int[n];
+		Assignment.solve(cost, n, m, match);
+		for (int i = 0; i < n; i++)
+		{
+			resourceOf[i] = closeResources.get(match[i]);
+			stockpileOf[i] = stockpile[match[i]];
+		}
+	}
+
+	private static boolean contains(int[] cells, int cell)
+	{
+		for (int c : cells)
+		{
+			if (c == cell)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Hash of everything the jobs depend on
+	 */
+	private long signature(TickSnapshot snapshot, List<Unit> workers, int harvestersNeeded, int buildersNeeded, int nBarracks, int nBases)
+	{
+		long s = harvestersNeeded * 31L + buildersNeeded;
+		s = s * 31 + nBarracks;
+		s = s * 31 + nBases;
+		// Indexed loops, this runs every tick and must not allocate
+		for (int i = 0; i < workers.size(); i++)
+		{
+			s = s * 31 + workers.get(i).getID();
+		}
+		List<Unit> resources = snapshot.getResources();
+		s = s * 31 + resources.size();
+		for (int i = 0; i < resources.size(); i++)
+		{
+			s = s * 31 + resources.get(i).getID();
+		}
+		List<Unit> stockpiles = snapshot.getMyStockpiles();
+		for (int i = 0; i < stockpiles.size(); i++)
+		{
+			s = s * 31 + stockpiles.get(i).getID();
+		}
+		return s;
+	}
+
+	public List<Unit> getHarvesters()
+	{
+		return harvesters;
+	}
+
+	public List<Unit> getBuilders()
+	{
+		return builders;
+	}
+
+	public List<Unit> getAttackers()
+	{
+		return attackers;
+	}
+
+	public List<Unit> getCloseResources()
+	{
+		return closeResources;
+	}
+
+	public int getResourceRadius()
+	{
+		return resourceRadius;
+	}
+
+	/**
+	 * @param radius Resources closer than this to my base, in cells walked in a straight line, are harvested.
+	 * The jobs are handed out again on the next update
+	 */
+	public void setResourceRadius(int radius)
+	{
+		resourceRadius = radius;
+		assigned = false;
+	}
+
+	/**
+	 * @param i Index of the harvester in getHarvesters
+	 * @return The resource it was matched to, or null
+	 */
+	public Unit getResource(int i)
+	{
+		return i < resourceOf.length ? resourceOf[i] : null;
+	}
+
+	/**
+	 * @param i Index of the harvester in getHarvesters
+	 * @return The stockpile it brings the resources to, or null
+	 */
+	public Unit getStockpile(int i)
+	{
+		return i < stockpileOf.length ? stockpileOf[i] : null;
+	}
+
+	/**
+	 * @param u Worker
+	 * @return HARVESTER, BUILDER or ATTACKER, or -1 for a worker without a job yet
+	 */
+	public int getRole(Unit u)
+	{
+		Integer role = roles.get(u.getID());
+		return role == null ? -1 : role;
+	}
+
+	/**
+	 * @return Number of times the jobs were handed out
+	 */
+	public int getEvents()
+	{
+		return events;
+	}
+
+	public void clear()
+	{
+		roles.clear();
+		resourceOf = new Unit[0];
+		stockpileOf = new Unit[0];
+		harvesters.clear();
+		builders.clear();
+		attackers.clear();
+		closeResources.clear();
+		assigned = false;
+	}
+}
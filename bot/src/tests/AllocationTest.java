@@ -0,0 +1,109 @@
+package tests;
+
+import ai.RandomBiasedAI;
+import ai.core.AI;
+import bot.AgileBot;
+import java.lang.management.ManagementFactory;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Checks that AgileBot's getAction does not allocate in the steady state.
+ * Games are first played back to back so the JIT compiles the hot path. A fresh game is then played for a while
+ * to reach a realistic state, and the next ticks are measured as they are played, so units move, die and are born,
+ * decisions are planned again and the memo and the worker jobs change as they do in a real game.
+ * The bytes allocated by every getAction call are read from ThreadMXBean, minus what translateActions of
+ * the abstraction layer allocates on its own on the same state, and the test fails with exit code 1 above the threshold.
+ *
+ * Usage: AllocationTest [map.xml] [cycles to play first] [threshold in bytes per call]
+ */
+public class AllocationTest {
+
+    private static final int WARMUP_TICKS = 20000;
+    private static final int MEASURED_TICKS = 2000;
+
+    public static void main(String args[]) throws Exception {
+        String map = args.length > 0 ? args[0] : "../microrts/maps/16x16/basesWorkers16x16.xml";
+        int cycles = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        long threshold = args.length > 2 ? Long.parseLong(args[2]) : 64;
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        if (!mx.isThreadAllocatedMemorySupported()) {
+            System.out.println("Allocated bytes are not measured by this JVM, skipping");
+            return;
+        }
+        mx.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        UnitTypeTable utt = new UnitTypeTable();
+
+        // Let the JIT compile the hot path before measuring
+        int warmed = 0;
+        while (warmed < WARMUP_TICKS) {
+            GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+            AgileBot bot = new AgileBot(utt);
+            AI opponent = new RandomBiasedAI();
+            boolean gameover = false;
+            while (!gameover && warmed < WARMUP_TICKS) {
+                gameover = tick(gs, bot, opponent);
+                warmed++;
+            }
+        }
+
+        // Reach the middle of a game
+        GameState gs = new GameState(PhysicalGameState.load(map, utt), utt);
+        AgileBot bot = new AgileBot(utt);
+        AI opponent = new RandomBiasedAI();
+        boolean gameover = false;
+        while (!gameover && gs.getTime() < cycles) {
+            gameover = tick(gs, bot, opponent);
+        }
+
+        // Measure the ticks of the game as it goes on
+        long getActionBytes = 0;
+        long translateBytes = 0;
+        int ticks = 0;
+        while (!gameover && ticks < MEASURED_TICKS) {
+            long before = mx.getThreadAllocatedBytes(thread);
+            PlayerAction pa1 = bot.getAction(0, gs);
+            long between = mx.getThreadAllocatedBytes(thread);
+            bot.translateActions(0, gs);
+            long after = mx.getThreadAllocatedBytes(thread);
+            getActionBytes += between - before;
+            translateBytes += after - between;
+            ticks++;
+
+            PlayerAction pa2 = opponent.getAction(1, gs);
+            gs.issueSafe(pa1);
+            gs.issueSafe(pa2);
+            gameover = gs.cycle();
+        }
+        if (ticks == 0) {
+            System.out.println("FAIL: the game was over before any tick was measured, play fewer cycles first");
+            System.exit(1);
+        }
+
+        double perCall = Math.max(0, getActionBytes - translateBytes) / (double)ticks;
+        System.out.println(String.format("%d ticks from cycle %d, getAction: %.1f bytes per call, translateActions: %.1f bytes per call, AgileBot: %.1f bytes per call (threshold %d)",
+                ticks, cycles, getActionBytes / (double)ticks, translateBytes / (double)ticks, perCall, threshold));
+        System.out.println("worker job events: " + bot.getWorkerRoles().getEvents());
+        if (perCall > threshold) {
+            System.out.println("FAIL: getAction allocates " + perCall + " bytes per call");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Plays one tick of the game
+     * @return True if the game is over
+     */
+    private static boolean tick(GameState gs, AgileBot bot, AI opponent) throws Exception {
+        PlayerAction pa1 = bot.getAction(0, gs);
+        PlayerAction pa2 = opponent.getAction(1, gs);
+        gs.issueSafe(pa1);
+        gs.issueSafe(pa2);
+        return gs.cycle();
+    }
+}
@@ -0,0 +1,359 @@
+package tests;
+
+import ai.core.AI;
+import bot.AgileBot;
+import bot.CachingPathFinding;
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Plays AgileBot against a set of opponents on a set of maps without a window and without pacing the ticks.
+ * Every (map, opponent, seed) game runs on a bounded thread pool, one game per core by default.
+ * The seed picks the side AgileBot plays on (even seeds player 0, odd seeds player 1) and tells repeated games apart.
+ *
+ * Usage: BatchMatchRunner [-maps a.xml,b.xml] [-opponents ai.RandomBiasedAI,ai.abstraction.WorkerRush]
+ *                         [-seeds 0-99] [-threads n] [-maxcycles n] [-csv out.csv] [-json out.json] [-profile]
+ *                         [-pregame ms] [-folder path] [-budget ms] [-pathcache n] [-speculate] [-warmup] [-trace folder]
+ * Both AIs get preGameAnalysis before and gameOver after every game, as in a tournament. With -folder, they may keep
+ * files there, such as AgileBot's map analysis cache.
+ * With -profile, AgileBot's per-section tick profile is printed after every game.
+ * With -budget, AgileBot gets a time budget per tick and degrades when it runs out.
+ * With -pathcache, AgileBot's path finder remembers up to n answers and the cache counters are printed after every game.
+ * With -speculate, AgileBot plans the next tick during the opponent's turn and its hit rate is printed after every game.
+ * With -warmup, AgileBot plays practice games in preGameAnalysis and the warm up is printed after every game.
+ * With -trace, every game state AgileBot sees is recorded to map-opponent-seed.trace in the folder, for TraceReplay.
+ */
+public class BatchMatchRunner {
+
+    /**
+     * Outcome and timing of one game
+     */
+    public static class MatchResult {
+        public String map;
+        public String opponent;
+        public long seed;
+        public int side;
+        public int winner;
+        public int cycles;
+        // Wall time of every getAction call of AgileBot, in nanoseconds
+        public long[] tickNanos;
+
+        /**
+         * @return 1 for a win, 0.5 for a draw and 0 for a loss of AgileBot
+         */
+        public double score() {
+            if (winner == -1) return 0.5;
+            return winner == side ? 1 : 0;
+        }
+
+        public String resultName() {
+            if (winner == -1) return "draw";
+            return winner == side ? "win" : "loss";
+        }
+
+        public double meanMillis() {
+            if (tickNanos.length == 0) return 0;
+            long sum = 0;
+            for (long t : tickNanos) sum += t;
+            return sum / (tickNanos.length * 1000000.0);
+        }
+
+        /**
+         * @param q Quantile between 0 and 1
+         * @return Tick time at the quantile, in milliseconds
+         */
+        public double quantileMillis(double q) {
+            if (tickNanos.length == 0) return 0;
+            long[] sorted = tickNanos.clone();
+            Arrays.sort(sorted);
+            int i = (int)Math.min(sorted.length - 1, Math.ceil(q * sorted.length) - 1);
+            return sorted[Math.max(0, i)] / 1000000.0;
+        }
+    }
+
+    /**
+     * Creates an AI from its class name. Names without a package are looked up in ai and ai.abstraction
+     * @param name Class name
+     * @param utt Unit Type Table
+     * @return New AI
+     */
+    public static AI createAI(String name, UnitTypeTable utt) throws Exception {
+        Class<?> c = null;
+        String[] prefixes = name.contains(".") ? new String[]{""} : new String[]{"ai.", "ai.abstraction.", "bot."};
+        for (String prefix : prefixes) {
+            try {
+                c = Class.forName(prefix + name);
+                break;
+            } catch (ClassNotFoundException e) {
+                // Try the next package
+            }
+        }
+        if (c == null) throw new ClassNotFoundException(name);
+        try {
+            Constructor<?> cons = c.getConstructor(UnitTypeTable.class);
+            return (AI)cons.newInstance(utt);
+        } catch (NoSuchMethodException e) {
+            return (AI)c.getDeclaredConstructor().newInstance();
+        }
+    }
+
+    /**
+     * How the games are set up and how AgileBot is configured for them. The fields hold the defaults of the command line
+     */
+    public static class Options {
+        public List<String> maps = new ArrayList<>(Arrays.asList("../microrts/maps/16x16/basesWorkers16x16.xml"));
+        public List<String> opponents = new ArrayList<>(Arrays.asList("ai.RandomBiasedAI"));
+        public long firstSeed = 0;
+        public long lastSeed = 9;
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public int maxCycles = 5000;
+        // Time both AIs get in preGameAnalysis, and the folder they may keep files in, null for none
+        public long preGameMillis = 1000;
+        public String readWriteFolder = null;
+        // Per-section tick profile of AgileBot, printed after every game
+        public boolean profile = false;
+        // Time budget per tick in milliseconds, -1 for none
+        public int budget = -1;
+        // Capacity of AgileBot's path cache, 0 for no cache
+        public int pathCache = 0;
+        // Plan the next tick during the opponent's turn
+        public boolean speculate = false;
+        // Practice games in preGameAnalysis until the JIT settles
+        public boolean warmUp = false;
+        // Folder the game traces are recorded to, null to record none
+        public String traceFolder = null;
+
+        /**
+         * Reads one command line option
+         * @return Index of the last argument used, or -1 if args[i] is not an option of the runner
+         */
+        public int parse(String[] args, int i) {
+            String a = args[i];
+            if (a.equals("-maps")) maps = Arrays.asList(args[++i].split(","));
+            else if (a.equals("-opponents")) opponents = Arrays.asList(args[++i].split(","));
+            else if (a.equals("-seeds")) {
+                String[] range = args[++i].split("-");
+                firstSeed = Long.parseLong(range[0]);
+                lastSeed = Long.parseLong(range[range.length - 1]);
+            }
+            else if (a.equals("-threads")) threads = Integer.parseInt(args[++i]);
+            else if (a.equals("-maxcycles")) maxCycles = Integer.parseInt(args[++i]);
+            else if (a.equals("-pregame")) preGameMillis = Long.parseLong(args[++i]);
+            else if (a.equals("-folder")) readWriteFolder = args[++i];
+            else if (a.equals("-profile")) profile = true;
+            else if (a.equals("-budget")) budget = Integer.parseInt(args[++i]);
+            else if (a.equals("-pathcache")) pathCache = Integer.parseInt(args[++i]);
+            else if (a.equals("-speculate")) speculate = true;
+            else if (a.equals("-warmup")) warmUp = true;
+            else if (a.equals("-trace")) traceFolder = args[++i];
+            else return -1;
+            return i;
+        }
+
+        /**
+         * @param utt Unit Type Table of the game
+         * @param name Name of the game, used for its trace file
+         * @return New AgileBot set up with these options
+         */
+        public AgileBot createBot(UnitTypeTable utt, String name) {
+            AgileBot bot = new AgileBot(utt);
+            bot.setProfiling(profile);
+            bot.setTimeBudget(budget);
+            if (pathCache > 0) bot.setPathFinding(new CachingPathFinding(bot.getPathFinding(), pathCache));
+            bot.setSpeculativePlanning(speculate);
+            bot.setWarmUp(warmUp);
+            if (traceFolder != null) {
+                new File(traceFolder).mkdirs();
+                bot.setTraceFile(new File(traceFolder, name + ".trace").getPath());
+            }
+            return bot;
+        }
+    }
+
+    /**
+     * Gives both AIs their pre-game analysis, as a tournament does before the first tick
+     */
+    public static void startGame(GameState gs, AI bot, AI opponent, Options options) throws Exception {
+        if (options.readWriteFolder != null) {
+            new File(options.readWriteFolder).mkdirs();
+            bot.preGameAnalysis(gs, options.preGameMillis, options.readWriteFolder);
+            opponent.preGameAnalysis(gs, options.preGameMillis, options.readWriteFolder);
+        } else {
+            bot.preGameAnalysis(gs, options.preGameMillis);
+            opponent.preGameAnalysis(gs, options.preGameMillis);
+        }
+    }
+
+    /**
+     * Tells both AIs who won, as a tournament does after the last tick
+     */
+    public static void endGame(GameState gs, AI bot, AI opponent) throws Exception {
+        bot.gameOver(gs.winner());
+        opponent.gameOver(gs.winner());
+    }
+
+    /**
+     * Plays one game as fast as possible
+     * @param mapFile Map to load
+     * @param utt Unit Type Table
+     * @param bot AI whose getAction is timed
+     * @param opponent The other AI
+     * @param side Player AgileBot plays as
+     * @param options Game length and pre-game time
+     * @return Result of the game
+     */
+    public static MatchResult playGame(String mapFile, UnitTypeTable utt, AI bot, AI opponent, int side, Options options) throws Exception {
+        PhysicalGameState pgs = PhysicalGameState.load(mapFile, utt);
+        return playGame(pgs, utt, bot, opponent, side, options);
+    }
+
+    /**
+     * Plays one game as fast as possible
+     * @param pgs Initial map, it is modified by the game
+     * @param utt Unit Type Table
+     * @param bot AI whose getAction is timed
+     * @param opponent The other AI
+     * @param side Player AgileBot plays as
+     * @param options Game length and pre-game time
+     * @return Result of the game
+     */
+    public static MatchResult playGame(PhysicalGameState pgs, UnitTypeTable utt, AI bot, AI opponent, int side, Options options) throws Exception {
+        GameState gs = new GameState(pgs, utt);
+        startGame(gs, bot, opponent, options);
+        long[] tickNanos = new long[options.maxCycles];
+        int ticks = 0;
+        boolean gameover = false;
+        do {
+            long start = System.nanoTime();
+            PlayerAction botAction = bot.getAction(side, gs);
+            tickNanos[ticks++] = System.nanoTime() - start;
+            PlayerAction opponentAction = opponent.getAction(1 - side, gs);
+            gs.issueSafe(botAction);
+            gs.issueSafe(opponentAction);
+
+            // simulate:
+            gameover = gs.cycle();
+        } while (!gameover && gs.getTime() < options.maxCycles);
+        endGame(gs, bot, opponent);
+
+        MatchResult result = new MatchResult();
+        result.side = side;
+        result.winner = gs.winner();
+        result.cycles = gs.getTime();
+        result.tickNanos = Arrays.copyOf(tickNanos, ticks);
+        return result;
+    }
+
+    public static void main(String args[]) throws Exception {
+        Options options = new Options();
+        String csvFile = "matches.csv";
+        String jsonFile = null;
+        for (int i = 0; i < args.length; i++) {
+            int used = options.parse(args, i);
+            if (used >= 0) i = used;
+            else if (args[i].equals("-csv")) csvFile = args[++i];
+            else if (args[i].equals("-json")) jsonFile = args[++i];
+            else throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+
+        List<MatchResult> results = runAll(options);
+
+        if (csvFile != null) writeCSV(results, new File(csvFile));
+        if (jsonFile != null) writeJSON(results, new File(jsonFile));
+
+        double score = 0;
+        for (MatchResult r : results) score += r.score();
+        System.out.println(results.size() + " games, score " + score + " (" + String.format(Locale.ROOT, "%.1f", 100 * score / Math.max(1, results.size())) + "%)");
+    }
+
+    /**
+     * Plays every (map, opponent, seed) game on a thread pool
+     * @return Results in the order of maps, then opponents, then seeds
+     */
+    public static List<MatchResult> runAll(final Options options) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        List<Future<MatchResult>> futures = new ArrayList<>();
+        try {
+            for (final String map : options.maps) {
+                for (final String opponent : options.opponents) {
+                    for (long s = options.firstSeed; s <= options.lastSeed; s++) {
+                        final long seed = s;
+                        futures.add(executor.submit(() -> {
+                            // Every game gets its own unit types and AIs, nothing is shared between threads
+                            UnitTypeTable utt = new UnitTypeTable();
+                            String name = new File(map).getName().replaceFirst("\\.xml$", "") + "-" + opponent + "-" + seed;
+                            AgileBot bot = options.createBot(utt, name);
+                            MatchResult r = playGame(map, utt, bot, createAI(opponent, utt), (int)(seed % 2), options);
+                            // Closes the trace
+                            bot.setTraceFile(null);
+                            r.map = map;
+                            r.opponent = opponent;
+                            r.seed = seed;
+                            String game = map + " vs " + opponent + " seed " + seed;
+                            if (options.profile) {
+                                System.out.print(game + "\n" + bot.getProfiler().report() + bot.getBudget().report());
+                            }
+                            if (bot.getPathCache() != null) {
+                                System.out.print(game + " " + bot.getPathCache().report());
+                            }
+                            if (bot.getSpeculation() != null) {
+                                System.out.print(game + " " + bot.getSpeculation().report());
+                                bot.setSpeculativePlanning(false);
+                            }
+                            if (bot.getLastWarmUp() != null) {
+                                System.out.print(game + " " + bot.getLastWarmUp().report());
+                            }
+                            return r;
+                        }));
+                    }
+                }
+            }
+            List<MatchResult> results = new ArrayList<>();
+            for (Future<MatchResult> f : futures) results.add(f.get());
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static void writeCSV(List<MatchResult> results, File file) throws Exception {
+        try (PrintWriter w = new PrintWriter(file, "UTF-8")) {
+            w.println("map,opponent,seed,side,result,winner,cycles,ticks,mean_ms,p50_ms,p99_ms,max_ms");
+            for (MatchResult r : results) {
+                w.println(String.format(Locale.ROOT, "%s,%s,%d,%d,%s,%d,%d,%d,%.4f,%.4f,%.4f,%.4f",
+                        r.map, r.opponent, r.seed, r.side, r.resultName(), r.winner, r.cycles, r.tickNanos.length,
+                        r.meanMillis(), r.quantileMillis(0.5), r.quantileMillis(0.99), r.quantileMillis(1.0)));
+            }
+        }
+    }
+
+    public static void writeJSON(List<MatchResult> results, File file) throws Exception {
+        try (PrintWriter w = new PrintWriter(file, "UTF-8")) {
+            w.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                MatchResult r = results.get(i);
+                w.print(String.format(Locale.ROOT,
+                        "  {\"map\": \"%s\", \"opponent\": \"%s\", \"seed\": %d, \"side\": %d, \"result\": \"%s\", \"winner\": %d, \"cycles\": %d, \"tickNanos\": [",
+                        r.map.replace("\\", "\\\\"), r.opponent, r.seed, r.side, r.resultName(), r.winner, r.cycles));
+                for (int t = 0; t < r.tickNanos.length; t++) {
+                    if (t > 0) w.print(",");
+                    w.print(r.tickNanos[t]);
+                }
+                w.println(i < results.size() - 1 ? "]}," : "]}");
+            }
+            w.println("]");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package tests;
+
+import bot.CombatModel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.PlayerAction;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Checks AgileBot's combat model against the real game on fixed fights.
+ * Every fight is played out once by the model and once by GameState.cycle, with both sides following the model's policy -
+ * attack the closest enemy in range, otherwise step towards the closest enemy along the longer axis first.
+ * The hit points left to every unit are compared, and the test fails with exit code 1 if the winner or a side's
+ * hit points differ by more than the tolerance. Then the model's rollouts per second are printed for each fight.
+ *
+ * Usage: CombatModelAgreement [cycles] [tolerance in hit points per side]
+ */
+public class CombatModelAgreement {
+
+    public static void main(String args[]) throws Exception {
+        int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int tolerance = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        UnitTypeTable utt = new UnitTypeTable();
+        String[][] fights = {
+            // name, then type:player:x:y for every unit
+            {"2 light vs 1 heavy", "Light:0:2:2", "Light:0:2:4", "Heavy:1:5:3"},
+            {"3 ranged vs 2 light", "Ranged:0:1:1", "Ranged:0:1:3", "Ranged:0:1:5", "Light:1:6:2", "Light:1:6:4"},
+            {"heavy vs light and worker", "Heavy:0:3:3", "Light:1:5:3", "Worker:1:5:4"},
+            {"4 light mirror", "Light:0:1:1", "Light:0:1:2", "Light:0:1:3", "Light:0:1:4",
+                               "Light:1:6:1", "Light:1:6:2", "Light:1:6:3", "Light:1:6:4"},
+            {"ranged and heavy vs 3 light", "Ranged:0:1:3", "Heavy:0:2:3", "Light:1:6:2", "Light:1:6:3", "Light:1:6:4"},
+        };
+
+        boolean failed = false;
+        System.out.println("fight                        model hp   game hp    winner  rollouts/s");
+        for (String[] fight : fights) {
+            GameState gs = createFight(utt, fight);
+            List<Unit> units = new ArrayList<>(gs.getPhysicalGameState().getUnits());
+
+            CombatModel model = new CombatModel();
+            model.clear(gs);
+            for (Unit u : units) model.add(u, gs);
+            model.rollout(cycles);
+            int[] modelHp = new int[2];
+            for (int i = 0; i < model.size(); i++) {
+                modelHp[model.getUnit(i).getPlayer()] += Math.max(0, model.getHitPoints(i));
+            }
+
+            for (int c = 0; c < cycles; c++) {
+                gs.issueSafe(script(0, gs));
+                gs.issueSafe(script(1, gs));
+                gs.cycle();
+            }
+            int[] gameHp = new int[2];
+            for (Unit u : gs.getPhysicalGameState().getUnits()) {
+                if (u.getPlayer() >= 0) gameHp[u.getPlayer()] += u.getHitPoints();
+            }
+
+            boolean sameWinner = Integer.signum(modelHp[0] - modelHp[1]) == Integer.signum(gameHp[0] - gameHp[1]);
+            boolean agree = sameWinner && Math.abs(modelHp[0] - gameHp[0]) <= tolerance && Math.abs(modelHp[1] - gameHp[1]) <= tolerance;
+
+            // Rollouts per second of the model on this fight
+            int rollouts = 0;
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < 200_000_000L) {
+                for (int i = 0; i < 1000; i++) model.rollout(cycles);
+                rollouts += 1000;
+            }
+            double rate = rollouts / ((System.nanoTime() - start) / 1e9);
+
+            System.out.println(String.format(Locale.ROOT, "%-28s %4d %4d  %4d %4d   %-6s  %10.0f",
+                    fight[0], modelHp[0], modelHp[1], gameHp[0], gameHp[1], sameWinner ? "same" : "DIFF", rate));
+            if (!agree) failed = true;
+        }
+        if (failed) {
+            System.out.println("FAIL: the model and the game disagree by more than " + tolerance + " hit points");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * An open 8x8 map with the units of the fight
+     */
+    private static GameState createFight(UnitTypeTable utt, String[] fight) {
+        PhysicalGameState pgs = new PhysicalGameState(8, 8);
+        pgs.addPlayer(new Player(0, 0));
+        pgs.addPlayer(new Player(1, 0));
+        for (int i = 1; i < fight.length; i++) {
+            String[] f = fight[i].split(":");
+            pgs.addUnit(new Unit(Integer.parseInt(f[1]), utt.getUnitType(f[0]), Integer.parseInt(f[2]), Integer.parseInt(f[3]), 0));
+        }
+        return new GameState(pgs, utt);
+    }
+
+    /**
+     * The model's policy for every idle unit of a player, on the real game
+     */
+    private static PlayerAction script(int player, GameState gs) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        PlayerAction pa = new PlayerAction();
+        List<Integer> reserved = new ArrayList<>();
+        for (Unit u : pgs.getUnits()) {
+            if (u.getPlayer() != player || gs.getActionAssignment(u) != null) continue;
+            Unit inRange = null;
+            Unit closest = null;
+            int bestRange = Integer.MAX_VALUE;
+            int bestDistance = Integer.MAX_VALUE;
+            for (Unit e : pgs.getUnits()) {
+                if (e.getPlayer() < 0 || e.getPlayer() == player) continue;
+                int dx = e.getX() - u.getX();
+                int dy = e.getY() - u.getY();
+                int squared = dx * dx + dy * dy;
+                if (squared <= u.getAttackRange() * u.getAttackRange() && squared < bestRange) {
+                    bestRange = squared;
+                    inRange = e;
+                }
+                if (Math.abs(dx) + Math.abs(dy) < bestDistance) {
+                    bestDistance = Math.abs(dx) + Math.abs(dy);
+                    closest = e;
+                }
+            }
+            if (inRange != null) {
+                pa.addUnitAction(u, new UnitAction(UnitAction.TYPE_ATTACK_LOCATION, inRange.getX(), inRange.getY()));
+                continue;
+            }
+            if (closest == null) continue;
+            int dx = closest.getX() - u.getX();
+            int dy = closest.getY() - u.getY();
+            int first = Math.abs(dx) >= Math.abs(dy) ? direction(Integer.signum(dx), 0) : direction(0, Integer.signum(dy));
+            int second = Math.abs(dx) >= Math.abs(dy) ? direction(0, Integer.signum(dy)) : direction(Integer.signum(dx), 0);
+            for (int d : new int[] {first, second}) {
+                if (d == UnitAction.DIRECTION_NONE) continue;
+                int x = u.getX() + UnitAction.DIRECTION_OFFSET_X[d];
+                int y = u.getY() + UnitAction.DIRECTION_OFFSET_Y[d];
+                if (x >= 0 && y >= 0 && x < pgs.getWidth() && y < pgs.getHeight() && gs.free(x, y) && !reserved.contains(x + y * pgs.getWidth())) {
+                    reserved.add(x + y * pgs.getWidth());
+                    pa.addUnitAction(u, new UnitAction(UnitAction.TYPE_MOVE, d));
+                    break;
+                }
+            }
+        }
+        return pa;
+    }
+
+    private static int direction(int dx, int dy) {
+        if (dx > 0) return UnitAction.DIRECTION_RIGHT;
+        if (dx < 0) return UnitAction.DIRECTION_LEFT;
+        if (dy > 0) return UnitAction.DIRECTION_DOWN;
+        if (dy < 0) return UnitAction.DIRECTION_UP;
+        return UnitAction.DIRECTION_NONE;
+    }
+}
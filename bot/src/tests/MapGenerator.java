@@ -0,0 +1,250 @@
+package tests;
+
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Random;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+import util.XMLWriter;
+
+/**
+ * Builds random maps for stress testing AgileBot. The same settings and seed always give the same map.
+ * Every map is point symmetric, so neither side starts better off: walls, resources and armies are placed on one half
+ * and mirrored through the center onto the other. Walls are grown as blobs up to the wall density, and a corridor is
+ * dug between the bases if the walls cut them apart.
+ *
+ * Usage: MapGenerator out.xml [width] [height] [wall density] [corners|scattered|center] [army per side] [workers per side] [seed]
+ */
+public class MapGenerator {
+
+    /**
+     * Where the resources go
+     */
+    public enum ResourceLayout {
+        // A line of resources next to each base
+        CORNERS,
+        // Resource fields spread over the whole map
+        SCATTERED,
+        // One big resource field in the middle of the map
+        CENTER
+    }
+
+    public int width = 16;
+    public int height = 16;
+    // Part of the cells that are walls, between 0 and about 0.4
+    public double wallDensity = 0.1;
+    public ResourceLayout resources = ResourceLayout.CORNERS;
+    // Light, heavy and ranged units each side starts with, spread over its half
+    public int armyPerSide = 0;
+    public int workersPerSide = 1;
+    public int startingResources = 5;
+    public long seed = 0;
+
+    public MapGenerator() {
+    }
+
+    public MapGenerator(int width, int height, double wallDensity, ResourceLayout resources, int armyPerSide, long seed) {
+        this.width = width;
+        this.height = height;
+        this.wallDensity = wallDensity;
+        this.resources = resources;
+        this.armyPerSide = armyPerSide;
+        this.seed = seed;
+    }
+
+    /**
+     * @param utt Unit Type Table
+     * @return A new map with the settings of the generator
+     */
+    public PhysicalGameState generate(UnitTypeTable utt) {
+        Random r = new Random(seed * 1000003 + width * 131 + height);
+        PhysicalGameState pgs = new PhysicalGameState(width, height);
+        pgs.addPlayer(new Player(0, startingResources));
+        pgs.addPlayer(new Player(1, startingResources));
+        UnitType resource = utt.getUnitType("Resource");
+        UnitType base = utt.getUnitType("Base");
+        UnitType worker = utt.getUnitType("Worker");
+        UnitType[] army = {utt.getUnitType("Light"), utt.getUnitType("Heavy"), utt.getUnitType("Ranged")};
+
+        // Player 0 starts in the top left corner, player 1 in the mirrored one
+        int bx = Math.max(1, width / 8);
+        int by = Math.max(1, height / 8);
+        boolean[] keepFree = new boolean[width * height];
+        for (int y = by - 1; y <= by + 2; y++) {
+            for (int x = bx - 1; x <= bx + 2; x++) {
+                free(keepFree, x, y);
+            }
+        }
+
+        // Walls, grown as blobs from random seeds on one half and mirrored
+        int walls = 0;
+        int target = (int)(wallDensity * width * height);
+        for (int tries = 0; walls < target && tries < width * height * 4; tries++) {
+            int x = r.nextInt(width);
+            int y = r.nextInt(height);
+            int size = 1 + r.nextInt(Math.max(1, Math.min(width, height) / 4));
+            for (int i = 0; i < size && walls < target; i++) {
+                if (inside(x, y) && !keepFree[x + y * width] && !keepFree[mirror(x + y * width)]
+                        && pgs.getTerrain(x, y) == PhysicalGameState.TERRAIN_NONE) {
+                    walls += setWall(pgs, x + y * width);
+                }
+                // Random walk to the next cell of the blob
+                int d = r.nextInt(4);
+                x += d == 0 ? 1 : d == 1 ? -1 : 0;
+                y += d == 2 ? 1 : d == 3 ? -1 : 0;
+            }
+        }
+        connect(pgs, bx + by * width, mirror(bx + by * width));
+
+        // Bases and resources
+        placeMirrored(pgs, new Unit(0, base, bx, by, 0), base);
+        switch (resources) {
+            case CORNERS:
+                for (int i = 0; i < 4; i++) {
+                    placeNear(pgs, r, resource, Math.max(0, bx - 1), by + i - 1, 0);
+                }
+                break;
+            case SCATTERED:
+                for (int field = 0; field < Math.max(2, width * height / 256); field++) {
+                    int x = r.nextInt(width);
+                    int y = r.nextInt(height);
+                    for (int i = 0; i < 3; i++) placeNear(pgs, r, resource, x, y, 3);
+                }
+                break;
+            case CENTER:
+                for (int i = 0; i < Math.max(4, width * height / 64); i++) {
+                    placeNear(pgs, r, resource, width / 2 - 1, height / 2 - 1, Math.max(1, width / 8));
+                }
+                break;
+        }
+
+        // Starting units of player 0 on its half, mirrored for player 1
+        for (int i = 0; i < workersPerSide; i++) {
+            placeNear(pgs, r, worker, bx + 1, by + 1, 2 + i / 4);
+        }
+        for (int i = 0; i < armyPerSide; i++) {
+            int x = r.nextInt(width);
+            int y = r.nextInt(Math.max(1, height / 2));
+            placeNear(pgs, r, army[r.nextInt(army.length)], x, y, 2);
+        }
+        return pgs;
+    }
+
+    /**
+     * Places a unit of player 0, or a resource, on a free cell near the given one, and its mirror image
+     * @return True if a pair of free cells was found
+     */
+    private boolean placeNear(PhysicalGameState pgs, Random r, UnitType type, int x, int y, int spread) {
+        for (int tries = 0; tries < 20; tries++) {
+            int px = x + (spread == 0 ? 0 : r.nextInt(2 * spread + 1) - spread);
+            int py = y + (spread == 0 ? 0 : r.nextInt(2 * spread + 1) - spread);
+            if (!inside(px, py)) continue;
+            Unit u = type.isResource ? new Unit(-1, type, px, py, 10 + r.nextInt(21)) : new Unit(0, type, px, py, 0);
+            if (placeMirrored(pgs, u, type)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the unit and its mirror image if both cells are free
+     */
+    private boolean placeMirrored(PhysicalGameState pgs, Unit u, UnitType type) {
+        int c = u.getX() + u.getY() * width;
+        int m = mirror(c);
+        if (c == m || !isFree(pgs, c) || !isFree(pgs, m)) return false;
+        pgs.addUnit(u);
+        int player = u.getPlayer() < 0 ? -1 : 1 - u.getPlayer();
+        pgs.addUnit(new Unit(player, type, m % width, m / width, u.getResources()));
+        return true;
+    }
+
+    private boolean isFree(PhysicalGameState pgs, int c) {
+        return pgs.getTerrain(c % width, c / width) == PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(c % width, c / width) == null;
+    }
+
+    private int setWall(PhysicalGameState pgs, int c) {
+        int m = mirror(c);
+        pgs.setTerrain(c % width, c / width, PhysicalGameState.TERRAIN_WALL);
+        pgs.setTerrain(m % width, m / width, PhysicalGameState.TERRAIN_WALL);
+        return c == m ? 1 : 2;
+    }
+
+    /**
+     * Digs a straight corridor from one cell towards the other if no walkable path joins them, mirrored like the walls
+     */
+    private void connect(PhysicalGameState pgs, int from, int to) {
+        if (reachable(pgs, from, to)) return;
+        int x = from % width;
+        int y = from / width;
+        while (x != to % width || y != to / width) {
+            if (x != to % width) x += Integer.signum(to % width - x);
+            else y += Integer.signum(to / width - y);
+            int c = x + y * width;
+            int m = mirror(c);
+            pgs.setTerrain(x, y, PhysicalGameState.TERRAIN_NONE);
+            pgs.setTerrain(m % width, m / width, PhysicalGameState.TERRAIN_NONE);
+        }
+    }
+
+    private boolean reachable(PhysicalGameState pgs, int from, int to) {
+        boolean[] seen = new boolean[width * height];
+        ArrayDeque<Integer> open = new ArrayDeque<>();
+        open.add(from);
+        seen[from] = true;
+        while (!open.isEmpty()) {
+            int c = open.poll();
+            if (c == to) return true;
+            int x = c % width;
+            int y = c / width;
+            int[] next = {x > 0 ? c - 1 : -1, x < width - 1 ? c + 1 : -1, y > 0 ? c - width : -1, y < height - 1 ? c + width : -1};
+            for (int n : next) {
+                if (n >= 0 && !seen[n] && pgs.getTerrain(n % width, n / width) == PhysicalGameState.TERRAIN_NONE) {
+                    seen[n] = true;
+                    open.add(n);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void free(boolean[] keepFree, int x, int y) {
+        if (inside(x, y)) keepFree[x + y * width] = true;
+    }
+
+    private boolean inside(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    /**
+     * @return The cell mirrored through the center of the map
+     */
+    private int mirror(int c) {
+        return width * height - 1 - c;
+    }
+
+    public static void main(String args[]) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: MapGenerator out.xml [width] [height] [wall density] [corners|scattered|center] [army per side] [workers per side] [seed]");
+            System.exit(1);
+        }
+        MapGenerator g = new MapGenerator();
+        if (args.length > 1) g.width = Integer.parseInt(args[1]);
+        if (args.length > 2) g.height = Integer.parseInt(args[2]);
+        if (args.length > 3) g.wallDensity = Double.parseDouble(args[3]);
+        if (args.length > 4) g.resources = ResourceLayout.valueOf(args[4].toUpperCase());
+        if (args.length > 5) g.armyPerSide = Integer.parseInt(args[5]);
+        if (args.length > 6) g.workersPerSide = Integer.parseInt(args[6]);
+        if (args.length > 7) g.seed = Long.parseLong(args[7]);
+        PhysicalGameState pgs = g.generate(new UnitTypeTable());
+        try (Writer w = new FileWriter(args[0])) {
+            XMLWriter xml = new XMLWriter(w, " ");
+            pgs.toxml(xml);
+            xml.flush();
+        }
+        System.out.println(args[0] + ": " + g.width + "x" + g.height + ", " + pgs.getUnits().size() + " units");
+    }
+}
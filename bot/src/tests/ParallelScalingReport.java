@@ -0,0 +1,94 @@
+package tests;
+
+import bot.AgileBot;
+import java.util.Locale;
+import java.util.Random;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures how AgileBot's getAction scales with the number of threads of the parallel decisions.
+ * A large map with armies on both halves is built, every fighting unit is planned again on every call,
+ * and the throughput for 1 to N threads is printed. The actions of every thread count are checked against the serial ones.
+ *
+ * Usage: ParallelScalingReport [map size] [max threads] [calls]
+ */
+public class ParallelScalingReport {
+
+    public static void main(String args[]) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int calls = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        UnitTypeTable utt = new UnitTypeTable();
+        GameState gs = createState(utt, size);
+        int fighters = 0;
+        for (Unit u : gs.getPhysicalGameState().getUnits()) {
+            if (u.getPlayer() == 0 && u.getType().canMove && !u.getType().canHarvest) fighters++;
+        }
+        System.out.println(size + "x" + size + " map, " + gs.getPhysicalGameState().getUnits().size() + " units, " + fighters + " of my fighting units");
+
+        String serialActions = null;
+        double serialRate = 0;
+        System.out.println("threads  calls/s  decisions/s  speedup  same actions");
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            AgileBot bot = new AgileBot(utt);
+            bot.setParallelism(threads);
+            // Plan every fighting unit on every call
+            bot.setReplanLimit(Integer.MAX_VALUE);
+
+            // The first call of a fresh bot is the one compared, later ones see the actions it left behind
+            String actions = bot.getAction(0, gs).toString();
+            if (serialActions == null) serialActions = actions;
+
+            for (int i = 0; i < calls; i++) bot.getAction(0, gs);
+            long start = System.nanoTime();
+            for (int i = 0; i < calls; i++) bot.getAction(0, gs);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double rate = calls / seconds;
+            if (threads == 1) serialRate = rate;
+            bot.setParallelism(1);
+
+            System.out.println(String.format(Locale.ROOT, "%7d  %7.1f  %11.0f  %7.2f  %s",
+                    threads, rate, rate * fighters, rate / serialRate, actions.equals(serialActions) ? "yes" : "NO"));
+            if (!actions.equals(serialActions)) {
+                System.out.println("FAIL: the actions with " + threads + " threads differ from the serial ones");
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Bases in opposite corners and a quarter of the cells of each half holding a fighting unit
+     */
+    private static GameState createState(UnitTypeTable utt, int size) {
+        Random r = new Random(size);
+        PhysicalGameState pgs = new PhysicalGameState(size, size);
+        pgs.addPlayer(new Player(0, 20));
+        pgs.addPlayer(new Player(1, 20));
+        UnitType[] army = {utt.getUnitType("Light"), utt.getUnitType("Heavy"), utt.getUnitType("Ranged")};
+
+        // A wall across the middle with a gap in it
+        for (int x = 0; x < size; x++) {
+            if (x < size / 2 - 2 || x > size / 2 + 2) pgs.setTerrain(x, size / 2, PhysicalGameState.TERRAIN_WALL);
+        }
+        pgs.addUnit(new Unit(0, utt.getUnitType("Base"), 1, 1, 0));
+        pgs.addUnit(new Unit(1, utt.getUnitType("Base"), size - 2, size - 2, 0));
+
+        for (int player = 0; player < 2; player++) {
+            for (int placed = 0; placed < size * size / 8; ) {
+                int x = r.nextInt(size);
+                int y = player == 0 ? r.nextInt(size / 2) : size / 2 + 1 + r.nextInt(size - size / 2 - 1);
+                if (pgs.getTerrain(x, y) == PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x, y) == null) {
+                    pgs.addUnit(new Unit(player, army[r.nextInt(army.length)], x, y, 0));
+                    placed++;
+                }
+            }
+        }
+        return new GameState(pgs, utt);
+    }
+}
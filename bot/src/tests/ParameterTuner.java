@@ -0,0 +1,230 @@
+package tests;
+
+import ai.core.AI;
+import ai.core.ParameterSpecification;
+import bot.AgileBot;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Tunes AgileBot's parameters by playing headless games, with successive halving instead of a grid search.
+ * Random configurations of the int parameters getParameters gives a range are drawn, next to the default one.
+ * Every round, each configuration still in the race plays a number of games against the opponents on the maps,
+ * and only the best 1/eta by average score over all their games go on. Each round the survivors play eta times
+ * as many games as in the last one, so most of the games are spent telling the good configurations apart.
+ * All configurations play the same sequence of maps, opponents and sides, and the games of a round run in parallel,
+ * one per core by default. Each map is played against every opponent on both sides before the next one. Unless map
+ * files are given, every map is a new one from MapGenerator, so more games are never the same games again.
+ *
+ * Usage: ParameterTuner [-maps a.xml,b.xml] [-opponents bot.AgileBot,ai.abstraction.WorkerRush,ai.RandomBiasedAI] [-params A,B]
+ *                       [-configs n] [-games n] [-eta n] [-threads n] [-maxcycles n] [-seed n] [-csv out.csv]
+ * With -params, only the named parameters are tuned and the others keep their defaults. Boolean parameters
+ * are only tuned when named, as some of them change how fast AgileBot decides but not what.
+ * The game options of BatchMatchRunner, such as -pregame, -folder, -warmup or -budget, set up every game the same way.
+ */
+public class ParameterTuner {
+
+    // Maps generated when no map files are given
+    private static final int GENERATED_SIZE = 16;
+    private static final double GENERATED_WALLS = 0.1;
+
+    /**
+     * Values of the tuned parameters and the games played with them
+     */
+    private static class Config {
+        int index;
+        Object[] values;
+        double scoreSum;
+        int games;
+        // Round it was dropped in, or -1 if it is still in the race
+        int dropped = -1;
+
+        double score() {
+            return games == 0 ? 0 : scoreSum / games;
+        }
+    }
+
+    public static void main(String args[]) throws Exception {
+        BatchMatchRunner.Options options = new BatchMatchRunner.Options();
+        options.opponents = new ArrayList<>(Arrays.asList("bot.AgileBot", "ai.abstraction.WorkerRush", "ai.RandomBiasedAI"));
+        // Maps are generated game by game unless map files are given
+        options.maps = null;
+        options.maxCycles = 3000;
+        List<String> names = null;
+        int nConfigs = 32;
+        int firstGames = 4;
+        int eta = 2;
+        long seed = 0;
+        String csvFile = null;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            int used = options.parse(args, i);
+            if (used >= 0) i = used;
+            else if (a.equals("-params")) names = Arrays.asList(args[++i].split(","));
+            else if (a.equals("-configs")) nConfigs = Integer.parseInt(args[++i]);
+            else if (a.equals("-games")) firstGames = Integer.parseInt(args[++i]);
+            else if (a.equals("-eta")) eta = Math.max(2, Integer.parseInt(args[++i]));
+            else if (a.equals("-seed")) seed = Long.parseLong(args[++i]);
+            else if (a.equals("-csv")) csvFile = args[++i];
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+
+        List<ParameterSpecification> specs = tunable(new AgileBot(new UnitTypeTable()).getParameters(), names);
+        if (specs.isEmpty()) throw new IllegalArgumentException("No tunable parameters");
+        List<Config> configs = sample(specs, nConfigs, new Random(seed));
+        List<Config> racing = new ArrayList<>(configs);
+
+        System.out.println(specs.size() + " parameters, " + configs.size() + " configurations, " + options.threads + " threads");
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads);
+        int totalGames = 0;
+        long start = System.nanoTime();
+        try {
+            int games = firstGames;
+            for (int round = 0; racing.size() > 1; round++) {
+                play(racing, specs, options, games, executor);
+                totalGames += racing.size() * games;
+                racing.sort(Comparator.comparingDouble(Config::score).reversed());
+                int keep = Math.max(1, racing.size() / eta);
+                for (int i = keep; i < racing.size(); i++) racing.get(i).dropped = round;
+                System.out.println(String.format(Locale.ROOT, "round %d: %d configurations, %d games each, best %.3f (#%d), cut at %.3f",
+                        round, racing.size(), racing.get(0).games, racing.get(0).score(), racing.get(0).index, racing.get(keep - 1).score()));
+                racing = new ArrayList<>(racing.subList(0, keep));
+                games *= eta;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Config best = racing.get(0);
+        Config defaults = configs.get(0);
+        System.out.println(String.format(Locale.ROOT, "%d games in %.1f s", totalGames, (System.nanoTime() - start) / 1e9));
+        System.out.println(String.format(Locale.ROOT, "best #%d, %.3f over %d games", best.index, best.score(), best.games));
+        System.out.println(String.format(Locale.ROOT, "defaults %.3f over %d games%s", defaults.score(), defaults.games,
+                defaults.dropped >= 0 ? ", dropped in round " + defaults.dropped : ""));
+        for (int p = 0; p < specs.size(); p++) {
+            System.out.println(String.format(Locale.ROOT, "  %-22s %6s  (default %s)", specs.get(p).name, best.values[p], defaults.values[p]));
+        }
+
+        if (csvFile != null) {
+            try (PrintWriter w = new PrintWriter(csvFile, "UTF-8")) {
+                StringBuilder header = new StringBuilder("config,score,games,dropped");
+                for (ParameterSpecification ps : specs) header.append(',').append(ps.name);
+                w.println(header);
+                for (Config c : configs) {
+                    StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%d,%.4f,%d,%d", c.index, c.score(), c.games, c.dropped));
+                    for (Object v : c.values) line.append(',').append(v);
+                    w.println(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param names Parameters to tune, null for all that can be
+     * @return The int parameters with a range, and the named boolean ones
+     */
+    private static List<ParameterSpecification> tunable(List<ParameterSpecification> all, List<String> names) {
+        List<ParameterSpecification> specs = new ArrayList<>();
+        for (ParameterSpecification ps : all) {
+            if (names != null && !names.contains(ps.name)) continue;
+            boolean ranged = ps.type == int.class && ps.minValue != null && ps.maxValue != null;
+            if (ranged || (names != null && ps.type == boolean.class)) specs.add(ps);
+            else if (names != null) throw new IllegalArgumentException(ps.name + " has no range to tune in");
+        }
+        return specs;
+    }
+
+    /**
+     * @return The default configuration followed by random ones
+     */
+    private static List<Config> sample(List<ParameterSpecification> specs, int n, Random r) {
+        List<Config> configs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Config c = new Config();
+            c.index = i;
+            c.values = new Object[specs.size()];
+            for (int p = 0; p < specs.size(); p++) {
+                ParameterSpecification ps = specs.get(p);
+                if (i == 0) c.values[p] = ps.defaultValue;
+                else if (ps.type == boolean.class) c.values[p] = r.nextBoolean();
+                else {
+                    int min = ((Number)ps.minValue).intValue();
+                    int max = ((Number)ps.maxValue).intValue();
+                    c.values[p] = min + r.nextInt(max - min + 1);
+                }
+            }
+            configs.add(c);
+        }
+        return configs;
+    }
+
+    /**
+     * Plays the next games of every configuration in parallel. Game k of every configuration is on the same map,
+     * against the same opponent and on the same side
+     */
+    private static void play(List<Config> racing, List<ParameterSpecification> specs, BatchMatchRunner.Options options,
+            int games, ExecutorService executor) throws Exception {
+        List<String> maps = options.maps;
+        List<String> opponents = options.opponents;
+        List<Future<Double>> futures = new ArrayList<>();
+        for (Config c : racing) {
+            for (int g = 0; g < games; g++) {
+                final int k = c.games + g;
+                // Every opponent on both sides of a map, then the next map. Generated maps never repeat
+                final String opponent = opponents.get(k % opponents.size());
+                final int side = (k / opponents.size()) % 2;
+                final int mapIndex = k / (opponents.size() * 2);
+                final String map = maps == null ? "generated" + mapIndex : maps.get(mapIndex % maps.size());
+                futures.add(executor.submit(() -> {
+                    // Every game gets its own unit types and AIs, nothing is shared between threads
+                    UnitTypeTable utt = new UnitTypeTable();
+                    String name = new File(map).getName().replaceFirst("\\.xml$", "") + "-" + opponent + "-" + c.index + "-" + k;
+                    AgileBot bot = options.createBot(utt, name);
+                    apply(bot, specs, c.values);
+                    AI ai = BatchMatchRunner.createAI(opponent, utt);
+                    double score = maps == null
+                            ? BatchMatchRunner.playGame(generate(mapIndex, utt), utt, bot, ai, side, options).score()
+                            : BatchMatchRunner.playGame(map, utt, bot, ai, side, options).score();
+                    // Closes the trace
+                    bot.setTraceFile(null);
+                    return score;
+                }));
+            }
+        }
+        int f = 0;
+        for (Config c : racing) {
+            for (int g = 0; g < games; g++) {
+                c.scoreSum += futures.get(f++).get();
+            }
+            c.games += games;
+        }
+    }
+
+    /**
+     * @return Map number i of the generated ones, the same for every configuration
+     */
+    private static PhysicalGameState generate(int i, UnitTypeTable utt) {
+        return new MapGenerator(GENERATED_SIZE, GENERATED_SIZE, GENERATED_WALLS, MapGenerator.ResourceLayout.CORNERS, 0, i).generate(utt);
+    }
+
+    /**
+     * Sets the parameters through their setters, the way the microRTS front end does
+     */
+    private static void apply(AgileBot bot, List<ParameterSpecification> specs, Object[] values) throws Exception {
+        for (int p = 0; p < specs.size(); p++) {
+            ParameterSpecification ps = specs.get(p);
+            bot.getClass().getMethod("set" + ps.name, ps.type).invoke(bot, values[p]);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package tests;
+
+import ai.abstraction.pathfinding.AStarPathFinding;
+import ai.abstraction.pathfinding.PathFinding;
+import bot.HierarchicalPathFinding;
+import bot.IncrementalPathFinding;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.ResourceUsage;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Runs the same path queries through AStarPathFinding and HierarchicalPathFinding on generated maps, and prints
+ * the nodes each expands and the time each takes per query. The hierarchical path finder with no clusters searches
+ * cell by cell like A*, and its expanded nodes are printed as well, as they are counted the same way as the
+ * hierarchical ones. A query only one of them finds a path for counts as a disagreement, and the stretch is how much
+ * longer the hierarchical paths are than the A* ones.
+ * After the queries, a few barracks are placed and the number of clusters rebuilt shows how local the repair is.
+ * Then a unit chases another one that wanders off, and the nodes expanded per tick by a search from scratch
+ * are compared with the ones IncrementalPathFinding expands repairing its path.
+ *
+ * Usage: PathFindingComparison [-sizes 32,64,128] [-walls d] [-queries n] [-seeds n] [-cluster n] [-passes n] [-chase ticks]
+ */
+public class PathFindingComparison {
+
+    /**
+     * A unit and the cell and range it looks for a path to
+     */
+    public static class Query {
+        public Unit unit;
+        public int target;
+        public int range;
+    }
+
+    public static void main(String args[]) throws Exception {
+        int[] sizes = {32, 64, 128};
+        double walls = 0.15;
+        int nQueries = 200;
+        int seeds = 3;
+        int clusterSize = HierarchicalPathFinding.DEFAULT_CLUSTER_SIZE;
+        int passes = 5;
+        int chaseTicks = 400;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-sizes")) sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+            else if (a.equals("-walls")) walls = Double.parseDouble(args[++i]);
+            else if (a.equals("-queries")) nQueries = Integer.parseInt(args[++i]);
+            else if (a.equals("-seeds")) seeds = Integer.parseInt(args[++i]);
+            else if (a.equals("-cluster")) clusterSize = Integer.parseInt(args[++i]);
+            else if (a.equals("-passes")) passes = Integer.parseInt(args[++i]);
+            else if (a.equals("-chase")) chaseTicks = Integer.parseInt(args[++i]);
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+
+        System.out.println(" size seed  a* expanded  flat expanded  hpa expanded  a* us/query  hpa us/query  stretch  disagree  rebuilt");
+        for (int size : sizes) {
+            for (int seed = 0; seed < seeds; seed++) {
+                UnitTypeTable utt = new UnitTypeTable();
+                MapGenerator g = new MapGenerator(size, size, walls, MapGenerator.ResourceLayout.SCATTERED, size * size / 100, seed);
+                g.workersPerSide = 2 + size / 16;
+                GameState gs = new GameState(g.generate(utt), utt);
+                List<Query> queries = queries(gs, nQueries, seed);
+
+                AStarPathFinding astar = new AStarPathFinding();
+                HierarchicalPathFinding flat = new HierarchicalPathFinding(astar, 0);
+                HierarchicalPathFinding hpa = new HierarchicalPathFinding(astar, clusterSize);
+
+                // Expanded nodes and answers, from one pass
+                AStarPathFinding.iterations = 0;
+                int[] reference = run(astar, queries, gs);
+                long astarExpanded = AStarPathFinding.iterations;
+                run(flat, queries, gs);
+                hpa.clearCounters();
+                // The graph is built by the first query, which is left out of the count
+                hpa.findDistToPositionInRange(queries.get(0).unit, queries.get(0).target, queries.get(0).range, gs, new ResourceUsage());
+                hpa.clearCounters();
+                int[] answers = run(hpa, queries, gs);
+                long hpaExpanded = hpa.getNodesExpanded();
+
+                // Time per query, over the passes
+                double astarMicros = micros(astar, queries, gs, passes);
+                double hpaMicros = micros(hpa, queries, gs, passes);
+
+                // Repair after placing buildings, on the next tick
+                int[] stretch = compare(reference, answers);
+                UnitType barracks = utt.getUnitType("Barracks");
+                Random r = new Random(seed);
+                PhysicalGameState pgs = gs.getPhysicalGameState();
+                for (int placed = 0, tries = 0; placed < 4 && tries < 1000; tries++) {
+                    int x = r.nextInt(size);
+                    int y = r.nextInt(size);
+                    if (pgs.getTerrain(x, y) == PhysicalGameState.TERRAIN_NONE && pgs.getUnitAt(x, y) == null) {
+                        pgs.addUnit(new Unit(0, barracks, x, y, 0));
+                        placed++;
+                    }
+                }
+                gs.cycle();
+                hpa.clearCounters();
+                int[] repaired = run(hpa, queries, gs);
+                int[] after = compare(run(astar, queries, gs), repaired);
+                int clusters = ((size + clusterSize - 1) / clusterSize) * ((size + clusterSize - 1) / clusterSize);
+
+                System.out.println(String.format(Locale.ROOT, "%5d %4d %12d %14d %13d %12.2f %13.2f %8.3f %9d %4d/%d",
+                        size, seed, astarExpanded, flat.getNodesExpanded(), hpaExpanded, astarMicros, hpaMicros,
+                        stretch[1] / (double)Math.max(1, stretch[0]), stretch[2] + after[2], hpa.getClustersRebuilt(), clusters));
+            }
+        }
+
+        System.out.println();
+        System.out.println(" size seed  ticks  scratch/tick  incremental/tick  stretch  disagree  from scratch");
+        for (int size : sizes) {
+            for (int seed = 0; seed < seeds; seed++) {
+                chase(size, walls, seed, chaseTicks);
+            }
+        }
+    }
+
+    /**
+     * A unit of player 0 follows its path to the side of a unit of player 1, which takes a random step every third tick.
+     * The chaser steps every second tick, so long chases happen
+     */
+    private static void chase(int size, double walls, int seed, int ticks) {
+        UnitTypeTable utt = new UnitTypeTable();
+        MapGenerator g = new MapGenerator(size, size, walls, MapGenerator.ResourceLayout.SCATTERED, size * size / 100, seed);
+        GameState gs = new GameState(g.generate(utt), utt);
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        Unit chaser = null;
+        Unit target = null;
+        for (Unit u : pgs.getUnits()) {
+            if (u.getType().canMove && u.getPlayer() == 0 && chaser == null) chaser = u;
+            if (u.getType().canMove && u.getPlayer() == 1) target = u;
+        }
+        if (chaser == null || target == null) return;
+
+        HierarchicalPathFinding scratch = new HierarchicalPathFinding(new AStarPathFinding(), 0);
+        IncrementalPathFinding incremental = new IncrementalPathFinding();
+        Random r = new Random(seed);
+        int[] sums = new int[3];
+        for (int t = 0; t < ticks; t++) {
+            int targetpos = target.getX() + target.getY() * size;
+            int reference = scratch.findDistToPositionInRange(chaser, targetpos, 1, gs, null);
+            UnitAction step = incremental.findPathToPositionInRange(chaser, targetpos, 1, gs, null);
+            int dist = incremental.findDistToPositionInRange(chaser, targetpos, 1, gs, null);
+            if ((reference >= 0) != (dist >= 0)) sums[2]++;
+            else if (reference > 0) {
+                sums[0] += reference;
+                sums[1] += dist;
+            }
+            if (step != null && t % 2 == 0) moveBy(chaser, step.getDirection(), gs);
+            if (t % 3 == 0) moveBy(target, r.nextInt(4), gs);
+            gs.cycle();
+        }
+        System.out.println(String.format(Locale.ROOT, "%5d %4d %6d %13.1f %17.1f %8.3f %9d %13d",
+                size, seed, ticks, scratch.getNodesExpanded() / (double)ticks, incremental.getNodesExpanded() / (double)ticks,
+                sums[1] / (double)Math.max(1, sums[0]), sums[2], incremental.getReplanned()));
+    }
+
+    private static void moveBy(Unit u, int direction, GameState gs) {
+        int x = u.getX() + UnitAction.DIRECTION_OFFSET_X[direction];
+        int y = u.getY() + UnitAction.DIRECTION_OFFSET_Y[direction];
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        if (x >= 0 && y >= 0 && x < pgs.getWidth() && y < pgs.getHeight() && gs.free(x, y)) {
+            u.setX(x);
+            u.setY(y);
+        }
+    }
+
+    /**
+     * Picks queries from the units that can move to random cells that are not walls, spread over the whole map
+     * @param gs Game state whose units and map are used
+     * @param n Number of queries
+     * @param seed Seed of the picks, the same seed giving the same queries
+     */
+    public static List<Query> queries(GameState gs, int n, long seed) {
+        PhysicalGameState pgs = gs.getPhysicalGameState();
+        List<Unit> movers = new ArrayList<>();
+        for (Unit u : pgs.getUnits()) {
+            if (u.getType().canMove) movers.add(u);
+        }
+        Random r = new Random(seed);
+        List<Query> queries = new ArrayList<>();
+        while (queries.size() < n && !movers.isEmpty()) {
+            int x = r.nextInt(pgs.getWidth());
+            int y = r.nextInt(pgs.getHeight());
+            if (pgs.getTerrain(x, y) != PhysicalGameState.TERRAIN_NONE) continue;
+            Query q = new Query();
+            q.unit = movers.get(r.nextInt(movers.size()));
+            q.target = x + y * pgs.getWidth();
+            // Moving onto a cell, next to a unit, or in range of a ranged attack
+            q.range = r.nextInt(3);
+            queries.add(q);
+        }
+        return queries;
+    }
+
+    /**
+     * @return Distance found for every query, -1 for none
+     */
+    private static int[] run(PathFinding pf, List<Query> queries, GameState gs) {
+        int[] answers = new int[queries.size()];
+        for (int i = 0; i < answers.length; i++) {
+            Query q = queries.get(i);
+            answers[i] = pf.findDistToPositionInRange(q.unit, q.target, q.range, gs, new ResourceUsage());
+        }
+        return answers;
+    }
+
+    private static double micros(PathFinding pf, List<Query> queries, GameState gs, int passes) {
+        // One pass untimed to warm up
+        run(pf, queries, gs);
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) run(pf, queries, gs);
+        return (System.nanoTime() - start) / 1000.0 / Math.max(1, passes * queries.size());
+    }
+
+    /**
+     * @return Summed A* distance and hierarchical distance of the queries both found a path for, and the number of disagreements
+     */
+    private static int[] compare(int[] reference, int[] answers) {
+        int[] sums = new int[3];
+        for (int i = 0; i < reference.length; i++) {
+            if ((reference[i] >= 0) != (answers[i] >= 0)) sums[2]++;
+            else if (reference[i] > 0) {
+                sums[0] += reference[i];
+                sums[1] += answers[i];
+            }
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,215 @@
+package tests;
+
+import ai.core.AI;
+import bot.AgileBot;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures how AgileBot's getAction latency and memory grow with the size of the map and the number of units.
+ * For every map size and army density, MapGenerator builds maps from a few seeds. AgileBot then plays each one
+ * against another AgileBot (or the given opponent) for a number of cycles.
+ * Every row prints the mean and 99th percentile getAction time, the bytes allocated per call, and the heap AgileBot
+ * still holds at the end. A log scale bar shows the mean time. After the rows, the time is fitted to
+ * cells^a and units^b. An exponent well above 1 is flagged, as it points to a super-linear hot spot.
+ *
+ * Usage: ScalingSuite [-sizes 16,32,64,128] [-armies 0.005,0.02,0.06] [-walls d] [-layout corners|scattered|center]
+ *                     [-seeds n] [-cycles n] [-opponent name] [-csv out.csv]
+ * The game options of BatchMatchRunner, such as -pregame, -folder, -warmup or -budget, set up AgileBot and the games.
+ * The army density is the part of the cells each side starts with a fighting unit on.
+ */
+public class ScalingSuite {
+
+    // Exponent above which the growth counts as super-linear
+    private static final double SUPER_LINEAR = 1.15;
+
+    // Keeps the AI reachable while the heap it holds is measured
+    private static volatile Object kept;
+
+    /**
+     * Averages over the seeds of one map size and army density
+     */
+    private static class Row {
+        int size;
+        double army;
+        double units;
+        double meanMillis;
+        double p99Millis;
+        double bytesPerCall;
+        double retainedKB;
+    }
+
+    public static void main(String args[]) throws Exception {
+        int[] sizes = {16, 32, 64, 128};
+        double[] armies = {0.005, 0.02, 0.06};
+        double walls = 0.1;
+        MapGenerator.ResourceLayout layout = MapGenerator.ResourceLayout.CORNERS;
+        int seeds = 3;
+        BatchMatchRunner.Options options = new BatchMatchRunner.Options();
+        options.opponents = new ArrayList<>(Arrays.asList("bot.AgileBot"));
+        options.maxCycles = 300;
+        String csvFile = null;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-sizes")) sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+            else if (a.equals("-armies")) armies = Arrays.stream(args[++i].split(",")).mapToDouble(Double::parseDouble).toArray();
+            else if (a.equals("-walls")) walls = Double.parseDouble(args[++i]);
+            else if (a.equals("-layout")) layout = MapGenerator.ResourceLayout.valueOf(args[++i].toUpperCase());
+            else if (a.equals("-seeds")) seeds = Integer.parseInt(args[++i]);
+            else if (a.equals("-cycles")) options.maxCycles = Integer.parseInt(args[++i]);
+            else if (a.equals("-opponent")) options.opponents = Arrays.asList(args[++i]);
+            else if (a.equals("-csv")) csvFile = args[++i];
+            else {
+                int used = options.parse(args, i);
+                if (used < 0) throw new IllegalArgumentException("Unknown option " + a);
+                i = used;
+            }
+        }
+
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        boolean countBytes = mx.isThreadAllocatedMemorySupported();
+        if (countBytes) mx.setThreadAllocatedMemoryEnabled(true);
+
+        List<Row> rows = new ArrayList<>();
+        System.out.println(" size  cells   army  units   mean ms    p99 ms    B/call  retained KB");
+        for (int size : sizes) {
+            for (double army : armies) {
+                Row row = new Row();
+                row.size = size;
+                row.army = army;
+                for (int seed = 0; seed < seeds; seed++) {
+                    MapGenerator g = new MapGenerator(size, size, walls, layout, (int)(army * size * size), seed);
+                    g.workersPerSide = 2 + size / 16;
+                    measure(g, options, mx, countBytes, row);
+                }
+                row.units /= seeds;
+                row.meanMillis /= seeds;
+                row.p99Millis /= seeds;
+                row.bytesPerCall /= seeds;
+                row.retainedKB /= seeds;
+                rows.add(row);
+                System.out.println(String.format(Locale.ROOT, "%5d %6d %6.3f %6.0f %9.4f %9.4f %9.0f %12.1f  %s",
+                        size, size * size, army, row.units, row.meanMillis, row.p99Millis, row.bytesPerCall, row.retainedKB, bar(row.meanMillis)));
+            }
+        }
+
+        // Fit the mean time to a power of the cells, for each army density, and to a power of the units over all rows
+        System.out.println();
+        for (double army : armies) {
+            List<double[]> points = new ArrayList<>();
+            for (Row r : rows) if (r.army == army) points.add(new double[] {r.size * r.size, r.meanMillis});
+            report("cells, army " + army, slope(points));
+        }
+        List<double[]> points = new ArrayList<>();
+        for (Row r : rows) points.add(new double[] {r.units, r.meanMillis});
+        report("units", slope(points));
+
+        if (csvFile != null) {
+            try (PrintWriter w = new PrintWriter(csvFile, "UTF-8")) {
+                w.println("size,cells,army,units,mean_ms,p99_ms,bytes_per_call,retained_kb");
+                for (Row r : rows) {
+                    w.println(String.format(Locale.ROOT, "%d,%d,%.4f,%.1f,%.4f,%.4f,%.1f,%.1f",
+                            r.size, r.size * r.size, r.army, r.units, r.meanMillis, r.p99Millis, r.bytesPerCall, r.retainedKB));
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays one generated map and adds its numbers to the row
+     */
+    private static void measure(MapGenerator g, BatchMatchRunner.Options options, com.sun.management.ThreadMXBean mx, boolean countBytes, Row row) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        PhysicalGameState pgs = g.generate(utt);
+        GameState gs = new GameState(pgs, utt);
+        AI opponent = BatchMatchRunner.createAI(options.opponents.get(0), utt);
+        AgileBot bot = options.createBot(utt, "scaling-" + g.width + "-" + g.seed);
+        long thread = Thread.currentThread().getId();
+        int cycles = options.maxCycles;
+        BatchMatchRunner.startGame(gs, bot, opponent, options);
+
+        long[] tickNanos = new long[cycles];
+        long bytes = 0;
+        long units = 0;
+        int ticks = 0;
+        boolean gameover = false;
+        while (!gameover && ticks < cycles) {
+            units += pgs.getUnits().size();
+            long before = countBytes ? mx.getThreadAllocatedBytes(thread) : 0;
+            long start = System.nanoTime();
+            PlayerAction pa1 = bot.getAction(0, gs);
+            tickNanos[ticks++] = System.nanoTime() - start;
+            if (countBytes) bytes += mx.getThreadAllocatedBytes(thread) - before;
+            PlayerAction pa2 = opponent.getAction(1, gs);
+            gs.issueSafe(pa1);
+            gs.issueSafe(pa2);
+            gameover = gs.cycle();
+        }
+        BatchMatchRunner.endGame(gs, bot, opponent);
+        // Closes the trace
+        bot.setTraceFile(null);
+
+        // What AgileBot holds on to is the heap freed once it is gone. The game and the opponent are kept in both
+        kept = new Object[] {bot, opponent, gs};
+        bot = null;
+        long held = usedHeap();
+        kept = new Object[] {opponent, gs};
+        long freed = held - usedHeap();
+        kept = null;
+
+        BatchMatchRunner.MatchResult r = new BatchMatchRunner.MatchResult();
+        r.tickNanos = Arrays.copyOf(tickNanos, ticks);
+        row.units += units / (double)Math.max(1, ticks);
+        row.meanMillis += r.meanMillis();
+        row.p99Millis += r.quantileMillis(0.99);
+        row.bytesPerCall += bytes / (double)Math.max(1, ticks);
+        row.retainedKB += Math.max(0, freed) / 1024.0;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return Least squares slope of log y against log x
+     */
+    private static double slope(List<double[]> points) {
+        double n = 0, sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (double[] p : points) {
+            if (p[0] <= 0 || p[1] <= 0) continue;
+            double x = Math.log(p[0]);
+            double y = Math.log(p[1]);
+            n++;
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+        }
+        double d = n * sxx - sx * sx;
+        return n < 2 || d == 0 ? Double.NaN : (n * sxy - sx * sy) / d;
+    }
+
+    private static void report(String against, double exponent) {
+        System.out.println(String.format(Locale.ROOT, "mean time ~ %s ^ %.2f%s", against, exponent,
+                exponent > SUPER_LINEAR ? "  SUPER-LINEAR" : ""));
+    }
+
+    /**
+     * @return One mark per doubling of the time above 1 microsecond
+     */
+    private static String bar(double millis) {
+        int marks = (int)Math.max(0, Math.round(Math.log(millis * 1000) / Math.log(2)));
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < marks; i++) sb.append('#');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package tests;
+
+import bot.AgileBot;
+import bot.SpeculativePlanner;
+import java.io.File;
+import java.util.Locale;
+import rts.units.UnitTypeTable;
+
+/**
+ * Checks that AgileBot's speculative planning decides the same as planning on the tick itself.
+ * Plays headless games with speculation on, once without and once with the combat simulation. On every hit the decisions
+ * prepared during the opponent's turn are compared with the ones Decide makes synchronously on the real state, and
+ * the test fails with exit code 1 if any of them differ. Takes the options of BatchMatchRunner for the maps,
+ * opponents and seeds.
+ *
+ * Usage: SpeculationAgreement [-maps a.xml,b.xml] [-opponents ai.RandomBiasedAI] [-seeds 0-3] [-maxcycles n]
+ */
+public class SpeculationAgreement {
+
+    public static void main(String args[]) throws Exception {
+        BatchMatchRunner.Options options = new BatchMatchRunner.Options();
+        options.lastSeed = 3;
+        options.maxCycles = 2000;
+        options.preGameMillis = 100;
+        for (int i = 0; i < args.length; i++) {
+            int used = options.parse(args, i);
+            if (used < 0) throw new IllegalArgumentException("Unknown option " + args[i]);
+            i = used;
+        }
+        options.speculate = true;
+
+        boolean failed = false;
+        System.out.println("game                                                   combat  hits  checked  differ");
+        for (String map : options.maps) {
+            for (String opponent : options.opponents) {
+                for (long seed = options.firstSeed; seed <= options.lastSeed; seed++) {
+                    for (boolean combat : new boolean[] {false, true}) {
+                        UnitTypeTable utt = new UnitTypeTable();
+                        AgileBot bot = options.createBot(utt, new File(map).getName() + "-" + opponent + "-" + seed);
+                        bot.setCombatSimulation(combat);
+                        SpeculativePlanner speculation = bot.getSpeculation();
+                        speculation.setChecking(true);
+                        BatchMatchRunner.playGame(map, utt, bot, BatchMatchRunner.createAI(opponent, utt), (int)(seed % 2), options);
+                        bot.setSpeculativePlanning(false);
+
+                        String game = new File(map).getName() + " vs " + opponent + " seed " + seed;
+                        System.out.println(String.format(Locale.ROOT, "%-54s %-6s %5d  %7d  %6d",
+                                game, combat ? "on" : "off", speculation.getHits(), speculation.getChecked(), speculation.getDisagreements()));
+                        if (speculation.getDisagreements() > 0) failed = true;
+                    }
+                }
+            }
+        }
+        if (failed) {
+            System.out.println("Speculative and synchronous decisions differ");
+            System.exit(1);
+        }
+    }
+}
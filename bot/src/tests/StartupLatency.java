@@ -0,0 +1,154 @@
+package tests;
+
+import ai.core.AI;
+import bot.AgileBot;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+
+/**
+ * Measures how slow AgileBot's first ticks are in a fresh JVM, with and without the warm up in preGameAnalysis,
+ * and with and without a class data sharing archive made by the cds target of build_jar.xml.
+ * Every run is a new JVM, started the same way with only the options of its mode added, which plays the first ticks
+ * of a game and reports back:
+ * the JVM uptime when the first getAction starts, the time of preGameAnalysis, of the first tick, and the mean,
+ * 99th percentile and worst of the first ticks. The runs of every mode are averaged.
+ *
+ * Usage: StartupLatency [-map m.xml | -size n] [-opponent name] [-ticks n] [-pregame ms] [-runs n] [-archive bot.jsa]
+ * The archive is only used if it exists, and must have been made with the same class path.
+ * StartupLatency -child [-warmup] ... plays one run in this JVM and prints its numbers on one line.
+ */
+public class StartupLatency {
+
+    private static final String RESULT = "startup";
+
+    public static void main(String args[]) throws Exception {
+        String map = "../microrts/maps/16x16/basesWorkers16x16.xml";
+        int size = 0;
+        String opponent = "ai.abstraction.WorkerRush";
+        int ticks = 100;
+        long pregame = 1000;
+        int runs = 3;
+        String archive = "bot.jsa";
+        boolean child = false;
+        boolean warmUp = false;
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-map")) map = args[++i];
+            else if (a.equals("-size")) size = Integer.parseInt(args[++i]);
+            else if (a.equals("-opponent")) opponent = args[++i];
+            else if (a.equals("-ticks")) ticks = Integer.parseInt(args[++i]);
+            else if (a.equals("-pregame")) pregame = Long.parseLong(args[++i]);
+            else if (a.equals("-runs")) runs = Integer.parseInt(args[++i]);
+            else if (a.equals("-archive")) archive = args[++i];
+            else if (a.equals("-child")) child = true;
+            else if (a.equals("-warmup")) warmUp = true;
+            else throw new IllegalArgumentException("Unknown option " + a);
+        }
+        if (child) {
+            run(map, size, opponent, ticks, pregame, warmUp);
+            return;
+        }
+
+        // The game options every child gets, and the options of each mode
+        List<String> game = new ArrayList<>(Arrays.asList("-opponent", opponent, "-ticks", "" + ticks, "-pregame", "" + pregame));
+        if (size > 0) game.addAll(Arrays.asList("-size", "" + size));
+        else game.addAll(Arrays.asList("-map", map));
+        boolean cds = new File(archive).isFile();
+        String[][] modes = cds
+                ? new String[][] {{}, {"-warmup"}, {"-XX:SharedArchiveFile=" + archive, "-Xshare:auto"}, {"-XX:SharedArchiveFile=" + archive, "-Xshare:auto", "-warmup"}}
+                : new String[][] {{}, {"-warmup"}};
+        String[] names = {"plain", "warm up", "cds", "cds + warm up"};
+        if (!cds) System.out.println("No archive at " + archive + ", run the cds target of build_jar.xml to compare with class data sharing");
+
+        System.out.println(String.format(Locale.ROOT, "%-14s %10s %11s %10s %10s %10s %10s", "mode", "uptime ms", "pregame ms", "first ms",
+                "mean ms", "p99 ms", "max ms"));
+        for (int m = 0; m < modes.length; m++) {
+            double[] sums = new double[6];
+            for (int r = 0; r < runs; r++) {
+                double[] result = spawn(modes[m], game);
+                for (int k = 0; k < sums.length; k++) sums[k] += result[k];
+            }
+            System.out.println(String.format(Locale.ROOT, "%-14s %10.1f %11.1f %10.3f %10.3f %10.3f %10.3f", names[m],
+                    sums[0] / runs, sums[1] / runs, sums[2] / runs, sums[3] / runs, sums[4] / runs, sums[5] / runs));
+        }
+    }
+
+    /**
+     * Runs one child JVM
+     * @param mode JVM options of the mode, and -warmup for the warm up
+     * @return Uptime, pre-game, first tick, mean, p99 and max milliseconds
+     */
+    private static double[] spawn(String[] mode, List<String> game) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        for (String option : mode) {
+            if (option.startsWith("-X")) command.add(option);
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), StartupLatency.class.getName(), "-child"));
+        for (String option : mode) {
+            if (!option.startsWith("-X")) command.add(option);
+        }
+        command.addAll(game);
+        Process p = new ProcessBuilder(command).redirectErrorStream(true).start();
+        double[] result = null;
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream(), "UTF-8"))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith(RESULT + " ")) {
+                    result = Arrays.stream(line.substring(RESULT.length() + 1).split(" ")).mapToDouble(Double::parseDouble).toArray();
+                } else {
+                    System.out.println("  " + line);
+                }
+            }
+        }
+        if (p.waitFor() != 0 || result == null) throw new IllegalStateException("child JVM failed: " + String.join(" ", command));
+        return result;
+    }
+
+    /**
+     * Plays the first ticks of a game in this JVM and prints the numbers
+     */
+    private static void run(String map, int size, String opponentName, int ticks, long pregame, boolean warmUp) throws Exception {
+        UnitTypeTable utt = new UnitTypeTable();
+        PhysicalGameState pgs = size > 0 ? new MapGenerator(size, size, 0.1, MapGenerator.ResourceLayout.CORNERS, 0, 0).generate(utt)
+                : PhysicalGameState.load(map, utt);
+        GameState gs = new GameState(pgs, utt);
+        AgileBot bot = new AgileBot(utt);
+        bot.setWarmUp(warmUp);
+        AI opponent = BatchMatchRunner.createAI(opponentName, utt);
+
+        long start = System.nanoTime();
+        bot.preGameAnalysis(gs, pregame);
+        double pregameMillis = (System.nanoTime() - start) / 1e6;
+        double uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+
+        long[] tickNanos = new long[ticks];
+        int played = 0;
+        boolean gameover = false;
+        while (!gameover && played < ticks) {
+            long t = System.nanoTime();
+            PlayerAction pa1 = bot.getAction(0, gs);
+            tickNanos[played++] = System.nanoTime() - t;
+            PlayerAction pa2 = opponent.getAction(1, gs);
+            gs.issueSafe(pa1);
+            gs.issueSafe(pa2);
+            gameover = gs.cycle();
+        }
+
+        BatchMatchRunner.MatchResult r = new BatchMatchRunner.MatchResult();
+        r.tickNanos = Arrays.copyOf(tickNanos, played);
+        if (bot.getLastWarmUp() != null) System.out.print(bot.getLastWarmUp().report());
+        System.out.println(String.format(Locale.ROOT, "%s %.1f %.1f %.4f %.4f %.4f %.4f", RESULT, uptime, pregameMillis,
+                tickNanos[0] / 1e6, r.meanMillis(), r.quantileMillis(0.99), r.quantileMillis(1.0)));
+    }
+}
@@ -0,0 +1,297 @@
+package tests;
+
+import bot.AgileBot;
+import bot.TraceRecorder;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.UnitAction;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+/**
+ * Feeds the game states of recorded traces back into AgileBot.getAction, with no opponent and no simulation.
+ * The trace file is memory mapped and decoded tick by tick into a single game state, which is changed in place
+ * like the game does it, so every pass over a trace is the same workload. The actions AgileBot returns are dropped.
+ * Prints the getAction timing of every trace, and writes it to a CSV file with -csv.
+ * Traces are recorded with AgileBot.setTraceFile, or with the -trace option of BatchMatchRunner.
+ *
+ * Usage: TraceReplay [-passes n] [-budget ms] [-profile] [-csv out.csv] trace.trace|folder ...
+ * With -passes, every trace is replayed n times by the same AI, reset in between, and only the last pass is timed.
+ */
+public class TraceReplay {
+
+    /**
+     * A game state whose clock can be set, as the replay jumps straight to the recorded time
+     */
+    private static class ReplayState extends GameState {
+        ReplayState(PhysicalGameState pgs, UnitTypeTable utt) {
+            super(pgs, utt);
+        }
+
+        void setTime(int t) {
+            time = t;
+        }
+    }
+
+    /**
+     * Decodes a memory mapped trace into a game state, one tick at a time
+     */
+    public static class TraceReader {
+        private final ByteBuffer buffer;
+        private final int start;
+        private final UnitTypeTable utt;
+        private final UnitType[] types;
+        private final int player;
+        private final int width;
+        private final int height;
+        private final int[] terrain;
+
+        private ReplayState gs;
+        private Map<Long, Unit> units = new HashMap<>();
+        private List<Unit> removed = new ArrayList<>();
+
+        /**
+         * Reads the header of the trace
+         * @param buffer Whole trace file
+         * @param utt Unit type table the recorded type names are looked up in
+         */
+        public TraceReader(ByteBuffer buffer, UnitTypeTable utt) {
+            this.buffer = buffer;
+            this.utt = utt;
+            if (buffer.getInt() != TraceRecorder.MAGIC) throw new IllegalArgumentException("not an AgileBot trace");
+            int version = buffer.get();
+            if (version != TraceRecorder.VERSION) throw new IllegalArgumentException("trace version " + version + " is not supported");
+            player = readInt();
+            width = readInt();
+            height = readInt();
+            types = new UnitType[readInt()];
+            for (int i = 0; i < types.length; i++) {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                types[i] = utt.getUnitType(new String(name, StandardCharsets.UTF_8));
+                if (types[i] == null) throw new IllegalArgumentException("unknown unit type in trace: " + new String(name, StandardCharsets.UTF_8));
+            }
+            terrain = new int[width * height];
+            for (int c = 0; c < terrain.length; c += 8) {
+                int bits = buffer.get();
+                for (int b = 0; b < 8 && c + b < terrain.length; b++) {
+                    if ((bits & (1 << b)) != 0) terrain[c + b] = PhysicalGameState.TERRAIN_WALL;
+                }
+            }
+            start = buffer.position();
+            rewind();
+        }
+
+        /**
+         * Goes back to the first tick with a new game state
+         */
+        public void rewind() {
+            buffer.position(start);
+            PhysicalGameState pgs = new PhysicalGameState(width, height);
+            pgs.setTerrain(terrain.clone());
+            gs = new ReplayState(pgs, utt);
+            units.clear();
+        }
+
+        /**
+         * @return True if there is another tick to read
+         */
+        public boolean hasNext() {
+            return buffer.hasRemaining();
+        }
+
+        /**
+         * Applies the next tick to the game state
+         * @return The game state, changed in place
+         */
+        public GameState next() {
+            PhysicalGameState pgs = gs.getPhysicalGameState();
+            gs.setTime(readInt());
+            int players = readInt();
+            for (int i = 0; i < players; i++) {
+                int resources = readInt();
+                if (i < pgs.getPlayers().size()) pgs.getPlayer(i).setResources(resources);
+                else pgs.addPlayer(new Player(i, resources));
+            }
+
+            // Units. The removed ones are forgotten at the end, their actions finish below.
+            // They died, and are left with no hit points like in the game, for whoever still holds them
+            removed.clear();
+            for (int n = readInt(); n > 0; n--) {
+                Unit u = units.get(readLong());
+                pgs.removeUnit(u);
+                u.setHitPoints(0);
+                removed.add(u);
+            }
+            for (int n = readInt(); n > 0; n--) {
+                long id = readLong();
+                UnitType type = types[readInt()];
+                int owner = readInt() - 1;
+                int x = readInt();
+                int y = readInt();
+                int hp = readInt();
+                Unit u = new Unit(id, owner, type, x, y, readInt());
+                u.setHitPoints(hp);
+                pgs.addUnit(u);
+                units.put(id, u);
+            }
+            for (int n = readInt(); n > 0; n--) {
+                Unit u = units.get(readLong());
+                int fields = buffer.get();
+                if ((fields & TraceRecorder.CHANGED_X) != 0) u.setX(readInt());
+                if ((fields & TraceRecorder.CHANGED_Y) != 0) u.setY(readInt());
+                if ((fields & TraceRecorder.CHANGED_HP) != 0) u.setHitPoints(readInt());
+                if ((fields & TraceRecorder.CHANGED_RESOURCES) != 0) u.setResources(readInt());
+            }
+
+            // Actions. A replaced one goes to the end, as the game removes the finished one and adds the new one
+            for (int n = readInt(); n > 0; n--) {
+                gs.getUnitActions().remove(units.get(readLong()));
+            }
+            for (int n = readInt(); n > 0; n--) {
+                Unit u = units.get(readLong());
+                int type = readInt();
+                int direction = readInt() - 1;
+                int x = readInt() - 1;
+                int y = readInt() - 1;
+                int produced = readInt() - 1;
+                int time = readInt();
+                UnitAction action;
+                if (type == UnitAction.TYPE_PRODUCE) action = new UnitAction(type, direction, types[produced]);
+                else if (type == UnitAction.TYPE_ATTACK_LOCATION) action = new UnitAction(type, x, y);
+                else action = new UnitAction(type, direction);
+                gs.getUnitActions().remove(u);
+                gs.getUnitActions().put(u, new UnitActionAssignment(u, action, time));
+            }
+            for (Unit u : removed) units.remove(u.getID());
+            return gs;
+        }
+
+        /**
+         * @return Player the traced AI played as
+         */
+        public int getPlayer() {
+            return player;
+        }
+
+        private int readInt() {
+            return (int)readLong();
+        }
+
+        private long readLong() {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = buffer.get();
+                value |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    /**
+     * Maps a whole trace file into memory
+     */
+    public static MappedByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is too large to map");
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public static void main(String args[]) throws Exception {
+        int passes = 1;
+        int budget = -1;
+        boolean profile = false;
+        String csvFile = null;
+        List<File> traces = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String a = args[i];
+            if (a.equals("-passes")) passes = Integer.parseInt(args[++i]);
+            else if (a.equals("-budget")) budget = Integer.parseInt(args[++i]);
+            else if (a.equals("-profile")) profile = true;
+            else if (a.equals("-csv")) csvFile = args[++i];
+            else if (a.startsWith("-")) throw new IllegalArgumentException("Unknown option " + a);
+            else if (new File(a).isDirectory()) {
+                File[] files = new File(a).listFiles((dir, name) -> name.endsWith(".trace"));
+                Arrays.sort(files);
+                traces.addAll(Arrays.asList(files));
+            }
+            else traces.add(new File(a));
+        }
+        if (traces.isEmpty()) {
+            System.out.println("Usage: TraceReplay [-passes n] [-budget ms] [-profile] [-csv out.csv] trace.trace|folder ...");
+            System.exit(1);
+        }
+
+        PrintWriter csv = csvFile == null ? null : new PrintWriter(csvFile, "UTF-8");
+        if (csv != null) csv.println("trace,bytes,ticks,mean_ms,p50_ms,p99_ms,max_ms");
+        System.out.println("trace                                    bytes  ticks  B/tick   mean ms   p50 ms   p99 ms   max ms");
+        try {
+            for (File file : traces) {
+                MappedByteBuffer buffer = map(file);
+                UnitTypeTable utt = new UnitTypeTable();
+                TraceReader reader = new TraceReader(buffer, utt);
+                AgileBot bot = new AgileBot(utt);
+                bot.setTimeBudget(budget);
+                long[] tickNanos = new long[0];
+                for (int pass = 0; pass < passes; pass++) {
+                    bot.reset();
+                    reader.rewind();
+                    // Only the last pass is timed
+                    bot.setProfiling(profile && pass == passes - 1);
+                    tickNanos = replay(reader, bot);
+                }
+                BatchMatchRunner.MatchResult r = new BatchMatchRunner.MatchResult();
+                r.tickNanos = tickNanos;
+                System.out.println(String.format(Locale.ROOT, "%-38s %7d %6d %7.1f %9.4f %8.4f %8.4f %8.4f",
+                        file.getName(), buffer.capacity(), tickNanos.length, buffer.capacity() / (double)Math.max(1, tickNanos.length),
+                        r.meanMillis(), r.quantileMillis(0.5), r.quantileMillis(0.99), r.quantileMillis(1.0)));
+                if (profile) System.out.print(bot.getProfiler().report() + bot.getBudget().report());
+                if (csv != null) {
+                    csv.println(String.format(Locale.ROOT, "%s,%d,%d,%.4f,%.4f,%.4f,%.4f", file.getPath(), buffer.capacity(), tickNanos.length,
+                            r.meanMillis(), r.quantileMillis(0.5), r.quantileMillis(0.99), r.quantileMillis(1.0)));
+                }
+            }
+        } finally {
+            if (csv != null) csv.close();
+        }
+    }
+
+    /**
+     * Calls getAction on every tick of the trace
+     * @return Wall time of every call, in nanoseconds
+     */
+    public static long[] replay(TraceReader reader, AgileBot bot) throws Exception {
+        long[] tickNanos = new long[1024];
+        int ticks = 0;
+        while (reader.hasNext()) {
+            GameState gs = reader.next();
+            long start = System.nanoTime();
+            bot.getAction(reader.getPlayer(), gs);
+            if (ticks == tickNanos.length) tickNanos = Arrays.copyOf(tickNanos, ticks * 2);
+            tickNanos[ticks++] = System.nanoTime() - start;
+        }
+        return Arrays.copyOf(tickNanos, ticks);
+    }
+}